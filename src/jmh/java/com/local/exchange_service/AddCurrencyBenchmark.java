@@ -0,0 +1,53 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a full rebuild of the exchange rates map with the incremental path used when a currency is added
+ * to a map of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddCurrencyBenchmark {
+
+    @Param({"10", "50", "170"})
+    private int currencies;
+
+    private IExchangeRates exchangeRates;
+    private Map<String, IExchangeRates> exchangeRatesMap;
+    private Set<String> extendedCurrencies;
+    private String newCurrency;
+
+    @Setup
+    public void setUp() {
+        List<String> codes = BenchmarkFixtures.currencyCodes(currencies + 1);
+        exchangeRates = BenchmarkFixtures.exchangeRates(currencies + 1);
+        newCurrency = codes.get(currencies);
+        extendedCurrencies = new HashSet<>(codes);
+        exchangeRatesMap = ExchangeRatesService.buildExchangeRatesMap(new HashSet<>(codes.subList(0, currencies)),
+                exchangeRates, BenchmarkFixtures.EXCHANGE_SCALE);
+    }
+
+    @Benchmark
+    public Map<String, IExchangeRates> fullRebuild() {
+        return ExchangeRatesService.buildExchangeRatesMap(extendedCurrencies, exchangeRates,
+                BenchmarkFixtures.EXCHANGE_SCALE);
+    }
+
+    @Benchmark
+    public Map<String, IExchangeRates> incremental() {
+        return ExchangeRatesService.addExchangeRates(exchangeRatesMap, newCurrency, exchangeRates,
+                BenchmarkFixtures.EXCHANGE_SCALE);
+    }
+}
@@ -0,0 +1,61 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic fixtures shared by the benchmarks, so results are comparable between runs and commits.
+ */
+final class BenchmarkFixtures {
+
+    static final long TIMESTAMP = 1731085200L;
+    static final String BASE_CURRENCY = "USD";
+    static final int EXCHANGE_SCALE = 10;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Generates a list of distinct currency codes starting with the base currency.
+     *
+     * @param count The number of currency codes to generate.
+     * @return A list of three letter currency codes.
+     */
+    static List<String> currencyCodes(final int count) {
+        List<String> codes = new ArrayList<>(count);
+        codes.add(BASE_CURRENCY);
+        for (int i = 0; codes.size() < count; i++) {
+            String code = new String(new char[]{
+                    (char) ('A' + i / (26 * 26) % 26), (char) ('A' + i / 26 % 26), (char) ('A' + i % 26)});
+            if (!BASE_CURRENCY.equals(code)) {
+                codes.add(code);
+            }
+        }
+
+        return codes;
+    }
+
+    /**
+     * Generates exchange rates against the base currency for the given number of currencies.
+     *
+     * @param count The number of currencies.
+     * @return The exchange rates with the same values for the same count.
+     */
+    static IExchangeRates exchangeRates(final int count) {
+        Random random = new Random(count);
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        for (String code : currencyCodes(count)) {
+            rates.put(code, BASE_CURRENCY.equals(code) ? BigDecimal.ONE
+                    : BigDecimal.valueOf(1 + random.nextInt(100_000_000), 6));
+        }
+
+        return new ExchangeRates(TIMESTAMP, BASE_CURRENCY, rates);
+    }
+}
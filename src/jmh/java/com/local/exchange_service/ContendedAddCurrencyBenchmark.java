@@ -0,0 +1,60 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the time for several threads to add a pool of currencies concurrently, comparing the snapshot
+ * publication of {@link ExchangeRatesService} with the fair lock it replaced. Each thread adds
+ * {@value #ADDS_PER_THREAD} currencies per iteration, and the state is reset before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = ContendedAddCurrencyBenchmark.ADDS_PER_THREAD)
+@Measurement(iterations = 20, batchSize = ContendedAddCurrencyBenchmark.ADDS_PER_THREAD)
+@Threads(ContendedAddCurrencyBenchmark.THREADS)
+@Fork(1)
+public class ContendedAddCurrencyBenchmark {
+
+    static final int THREADS = 8;
+    static final int ADDS_PER_THREAD = 50;
+    private static final int POOL_SIZE = THREADS * ADDS_PER_THREAD;
+    private static final long UPDATE_TIMEOUT = 10_000;
+
+    private final IExchangeRates exchangeRates = BenchmarkFixtures.exchangeRates(POOL_SIZE);
+    private final List<String> codes = BenchmarkFixtures.currencyCodes(POOL_SIZE);
+    private final AtomicInteger next = new AtomicInteger();
+    private ExchangeRatesService service;
+    private FairLockCurrencies fairLock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        next.set(0);
+        service = new ExchangeRatesService(() -> exchangeRates, response -> {
+        }, UPDATE_TIMEOUT, BenchmarkFixtures.EXCHANGE_SCALE, ExchangeRatesService.RatesMode.EAGER, 16,
+                new ExchangeRatesSnapshotFile(""), new SimpleMeterRegistry());
+        service.fetchExchangeRates();
+        fairLock = new FairLockCurrencies(exchangeRates, UPDATE_TIMEOUT);
+    }
+
+    @Benchmark
+    public Set<String> snapshot() {
+        return service.addCurrency(nextCode());
+    }
+
+    @Benchmark
+    public Set<String> fairLock() {
+        return fairLock.addCurrency(nextCode());
+    }
+
+    private String nextCode() {
+        return codes.get(next.getAndIncrement() % POOL_SIZE);
+    }
+}
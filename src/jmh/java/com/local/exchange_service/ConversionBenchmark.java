@@ -0,0 +1,68 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.model.BulkConversion;
+import com.local.exchange_service.model.Conversion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single and bulk conversion throughput for each exchange rates mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    private static final int CURRENCIES = 170;
+
+    @Param({"EAGER", "LAZY", "COMPACT"})
+    private ExchangeRatesService.RatesMode ratesMode;
+
+    @Param({"1000"})
+    private int bulkSize;
+
+    private ExchangeRatesService exchangeRatesService;
+    private String from;
+    private String to;
+    private BigDecimal amount;
+    private List<BigDecimal> amounts;
+
+    @Setup
+    public void setUp() {
+        exchangeRatesService = new ExchangeRatesService(() -> BenchmarkFixtures.exchangeRates(CURRENCIES),
+                exchangeRates -> {
+                }, 1000, BenchmarkFixtures.EXCHANGE_SCALE, ratesMode, 16, new ExchangeRatesSnapshotFile(""),
+                new SimpleMeterRegistry());
+        exchangeRatesService.fetchExchangeRates();
+        List<String> codes = BenchmarkFixtures.currencyCodes(CURRENCIES);
+        codes.forEach(exchangeRatesService::addCurrency);
+        from = codes.get(10);
+        to = codes.get(100);
+
+        Random random = new Random(bulkSize);
+        amount = BigDecimal.valueOf(123456, 2);
+        amounts = new ArrayList<>(bulkSize);
+        for (int i = 0; i < bulkSize; i++) {
+            amounts.add(BigDecimal.valueOf(random.nextInt(10_000_000), 2));
+        }
+    }
+
+    @Benchmark
+    public Conversion single() {
+        return exchangeRatesService.convert(from, to, amount);
+    }
+
+    @Benchmark
+    public BulkConversion bulk() {
+        return exchangeRatesService.convert(from, to, amounts);
+    }
+}
@@ -0,0 +1,36 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.entities.CurrencyRate;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of the {@link CurrencyRate} entity with a row per currency from exchange rates data,
+ * done for each exchange rates data persisted in the rows layout. Allocation per operation is reported by the gc
+ * profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrencyRateBenchmark {
+
+    @Param({"10", "50", "170"})
+    private int currencies;
+
+    private IExchangeRates exchangeRates;
+
+    @Setup
+    public void setUp() {
+        exchangeRates = BenchmarkFixtures.exchangeRates(currencies);
+    }
+
+    @Benchmark
+    public CurrencyRate construct() {
+        return new CurrencyRate(exchangeRates);
+    }
+}
@@ -0,0 +1,52 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Baseline for {@link ContendedAddCurrencyBenchmark}: adds currencies in eager mode under a fair lock, the way
+ * {@link ExchangeRatesService} did before its state was published as an immutable snapshot.
+ */
+final class FairLockCurrencies {
+
+    private final ReentrantLock updateLock = new ReentrantLock(true);
+    private final IExchangeRates latestResponse;
+    private final long updateLockTimeout;
+    private volatile Set<String> currencies = Set.of();
+    private volatile Map<String, IExchangeRates> exchangeRatesMap = Map.of();
+
+    FairLockCurrencies(final IExchangeRates latestResponse, final long updateLockTimeout) {
+        this.latestResponse = latestResponse;
+        this.updateLockTimeout = updateLockTimeout;
+    }
+
+    Set<String> addCurrency(final String currencyCode) {
+        try {
+            if (updateLock.tryLock(updateLockTimeout, TimeUnit.MILLISECONDS)) {
+                try {
+                    if (!currencies.contains(currencyCode)) {
+                        var exchangeSet = new HashSet<>(currencies);
+                        exchangeSet.add(currencyCode);
+                        this.exchangeRatesMap = ExchangeRatesService.addExchangeRates(exchangeRatesMap, currencyCode,
+                                latestResponse, BenchmarkFixtures.EXCHANGE_SCALE);
+                        this.currencies = Collections.unmodifiableSet(exchangeSet);
+                    }
+
+                    return currencies;
+                } finally {
+                    updateLock.unlock();
+                }
+            } else {
+                throw new RuntimeException("Unable to add currency due to timeout");
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Unable to add currency due to thread interruption");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of reading the exchange rates of a base currency and of validating a currency code for
+ * each exchange rates mode, cycling through all added currencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+
+    private static final int CURRENCIES = 170;
+
+    @Param({"EAGER", "LAZY", "COMPACT"})
+    private ExchangeRatesService.RatesMode ratesMode;
+
+    private ExchangeRatesService exchangeRatesService;
+    private String[] codes;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        String next(final String[] codes) {
+            index = index + 1 == codes.length ? 0 : index + 1;
+            return codes[index];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        exchangeRatesService = new ExchangeRatesService(() -> BenchmarkFixtures.exchangeRates(CURRENCIES),
+                exchangeRates -> {
+                }, 1000, BenchmarkFixtures.EXCHANGE_SCALE, ratesMode, CURRENCIES, new ExchangeRatesSnapshotFile(""),
+                new SimpleMeterRegistry());
+        exchangeRatesService.fetchExchangeRates();
+        List<String> currencyCodes = BenchmarkFixtures.currencyCodes(CURRENCIES);
+        currencyCodes.forEach(exchangeRatesService::addCurrency);
+        codes = currencyCodes.toArray(String[]::new);
+    }
+
+    @Benchmark
+    public IExchangeRates getExchangeRates(final Cursor cursor) {
+        return exchangeRatesService.getExchangeRates(cursor.next(codes));
+    }
+
+    @Benchmark
+    public void validate(final Cursor cursor) {
+        exchangeRatesService.validate(cursor.next(codes));
+    }
+}
@@ -0,0 +1,47 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.CompactExchangeRates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of publishing new exchange rates data for all currencies: the eagerly calculated map against
+ * the views over a compact snapshot. Allocation per operation is reported by the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefreshBenchmark {
+
+    @Param({"10", "50", "170"})
+    private int currencies;
+
+    private IExchangeRates exchangeRates;
+    private Set<String> currencySet;
+
+    @Setup
+    public void setUp() {
+        exchangeRates = BenchmarkFixtures.exchangeRates(currencies);
+        currencySet = new HashSet<>(BenchmarkFixtures.currencyCodes(currencies));
+    }
+
+    @Benchmark
+    public Map<String, IExchangeRates> eager() {
+        return ExchangeRatesService.buildExchangeRatesMap(currencySet, exchangeRates,
+                BenchmarkFixtures.EXCHANGE_SCALE);
+    }
+
+    @Benchmark
+    public Map<String, IExchangeRates> compact() {
+        return ExchangeRatesService.buildCompactExchangeRatesMap(currencySet, CompactExchangeRates.of(exchangeRates),
+                BenchmarkFixtures.EXCHANGE_SCALE);
+    }
+}
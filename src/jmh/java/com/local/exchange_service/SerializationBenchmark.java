@@ -0,0 +1,59 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares serializing the exchange rates of a base currency on every request with returning the bytes cached
+ * by {@link SerializedExchangeRatesCache}. The setup fails if the cached bytes differ from the serialized ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "50", "170"})
+    private int currencies;
+
+    @Param({"EAGER", "COMPACT"})
+    private ExchangeRatesService.RatesMode ratesMode;
+
+    private ObjectMapper objectMapper;
+    private ExchangeRatesService exchangeRatesService;
+    private SerializedExchangeRatesCache serializedExchangeRatesCache;
+    private String baseCurrency;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        exchangeRatesService = new ExchangeRatesService(() -> BenchmarkFixtures.exchangeRates(currencies),
+                exchangeRates -> {
+                }, 1000, BenchmarkFixtures.EXCHANGE_SCALE, ratesMode, 16, new ExchangeRatesSnapshotFile(""),
+                new SimpleMeterRegistry());
+        exchangeRatesService.fetchExchangeRates();
+        BenchmarkFixtures.currencyCodes(currencies).forEach(exchangeRatesService::addCurrency);
+        serializedExchangeRatesCache = new SerializedExchangeRatesCache(exchangeRatesService, objectMapper);
+        baseCurrency = BenchmarkFixtures.currencyCodes(currencies).get(currencies / 2);
+
+        if (!Arrays.equals(serialize(), cached())) {
+            throw new IllegalStateException("Cached exchange rates differ from serialized exchange rates");
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(exchangeRatesService.getExchangeRates(baseCurrency));
+    }
+
+    @Benchmark
+    public byte[] cached() {
+        return serializedExchangeRatesCache.getExchangeRates(baseCurrency).body();
+    }
+}
@@ -0,0 +1,96 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.ExchangeLoggingService;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time until the application is ready with the exchange rates restored from the snapshot file or from
+ * the database. Each invocation starts the application with the same file-based H2 database holding the exchange
+ * rates and the added currencies. The external API is unreachable, so the first update fails in the background
+ * and the exchange rates come only from the restore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final int CURRENCIES = 170;
+
+    @Param({"FILE", "DATABASE"})
+    private String source;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("startup-benchmark");
+        IExchangeRates exchangeRates = BenchmarkFixtures.exchangeRates(CURRENCIES);
+        Set<String> currencies = Set.copyOf(BenchmarkFixtures.currencyCodes(CURRENCIES));
+
+        try (ConfigurableApplicationContext setUpContext = run("")) {
+            ExchangeLoggingService exchangeLoggingService = setUpContext.getBean(ExchangeLoggingService.class);
+            exchangeLoggingService.logCurrencyRate(exchangeRates);
+            if (!exchangeLoggingService.flush(10000)) {
+                throw new IllegalStateException("Exchange rates are not persisted");
+            }
+            exchangeLoggingService.logCurrencies(currencies);
+        }
+        new ExchangeRatesSnapshotFile(snapshotFile().toString())
+                .write(new ExchangeRatesSnapshotFile.Content(1L, exchangeRates, currencies));
+    }
+
+    @Benchmark
+    public void start() {
+        context = run("FILE".equals(source) ? snapshotFile().toString() : "");
+        if (!context.getBean(ExchangeRatesService.class).isInitialized()) {
+            throw new IllegalStateException("Exchange rates are not restored");
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext run(final String snapshotFile) {
+        return new SpringApplicationBuilder(ExchangeServiceApplication.class)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:" + directory.resolve("db").toAbsolutePath(),
+                        "--spring.jpa.show-sql=false",
+                        "--server.port=0",
+                        "--exchange.providers=openexchangerates",
+                        "--external.openexchangerates.baseUrl=http://localhost:1/",
+                        "--exchange.snapshot.file=" + snapshotFile);
+    }
+
+    private Path snapshotFile() {
+        return directory.resolve("exchange-snapshot.bin");
+    }
+}
@@ -0,0 +1,161 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.CompactRatesCodec;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the cost of writing a snapshot of exchange rates as a row per currency with a single row of encoded
+ * rates, using the same JDBC batches Hibernate sends. Each layout is written to its own file-based H2 database,
+ * which is compacted after each iteration, and the database size per snapshot is reported as the
+ * {@code bytesPerSnapshot} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final int CURRENCIES = 170;
+
+    @Param({"ROWS", "COLUMNAR"})
+    private String layout;
+
+    /**
+     * The on-disk size of the database per snapshot written so far, measured after each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class DiskUsage {
+        public long bytesPerSnapshot;
+
+        @TearDown(Level.Iteration)
+        public void measure(StorageBenchmark benchmark) throws IOException, SQLException {
+            bytesPerSnapshot = benchmark.compact();
+        }
+    }
+
+    private final IExchangeRates exchangeRates = BenchmarkFixtures.exchangeRates(CURRENCIES);
+    private final List<String> dictionary = BenchmarkFixtures.currencyCodes(CURRENCIES);
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement insertCurrencyRate;
+    private PreparedStatement insertExchangeRate;
+    private PreparedStatement insertSnapshot;
+    private long snapshots;
+    private long exchangeRateId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("storage-benchmark");
+        connect();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE currency_rate (id BIGINT PRIMARY KEY, timestamp BIGINT NOT NULL, " +
+                    "base_currency VARCHAR(3) NOT NULL)");
+            statement.execute("CREATE TABLE exchange_rate (id BIGINT PRIMARY KEY, currency VARCHAR(3) NOT NULL, " +
+                    "rate NUMERIC(20, 10) NOT NULL, currency_rate_id BIGINT NOT NULL REFERENCES currency_rate (id), " +
+                    "timestamp BIGINT NOT NULL)");
+            statement.execute("CREATE TABLE currency_dictionary (version INT PRIMARY KEY, " +
+                    "currencies VARCHAR(4000) NOT NULL)");
+            statement.execute("CREATE TABLE rate_snapshot (timestamp BIGINT PRIMARY KEY, " +
+                    "base_currency VARCHAR(3) NOT NULL, dictionary_version INT NOT NULL " +
+                    "REFERENCES currency_dictionary (version), rates BLOB NOT NULL)");
+            statement.execute("INSERT INTO currency_dictionary VALUES (1, '" + CompactRatesCodec.join(dictionary) +
+                    "')");
+        }
+        connection.commit();
+    }
+
+    @Setup(Level.Iteration)
+    public void reconnect() throws SQLException {
+        if (connection == null) {
+            connect();
+        }
+    }
+
+    private void connect() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:" + directory.resolve("db").toAbsolutePath());
+        connection.setAutoCommit(false);
+        insertCurrencyRate = connection.prepareStatement("INSERT INTO currency_rate VALUES (?, ?, ?)");
+        insertExchangeRate = connection.prepareStatement("INSERT INTO exchange_rate VALUES (?, ?, ?, ?, ?)");
+        insertSnapshot = connection.prepareStatement("INSERT INTO rate_snapshot VALUES (?, ?, 1, ?)");
+    }
+
+    @Benchmark
+    public void write(DiskUsage diskUsage) throws SQLException {
+        long timestamp = BenchmarkFixtures.TIMESTAMP + snapshots++;
+        if ("COLUMNAR".equals(layout)) {
+            insertSnapshot.setLong(1, timestamp);
+            insertSnapshot.setString(2, exchangeRates.baseCurrency());
+            insertSnapshot.setBytes(3, CompactRatesCodec.encode(dictionary, exchangeRates.rates()));
+            insertSnapshot.executeUpdate();
+        } else {
+            insertCurrencyRate.setLong(1, snapshots);
+            insertCurrencyRate.setLong(2, timestamp);
+            insertCurrencyRate.setString(3, exchangeRates.baseCurrency());
+            insertCurrencyRate.executeUpdate();
+            for (Map.Entry<String, BigDecimal> rate : exchangeRates.rates().entrySet()) {
+                insertExchangeRate.setLong(1, ++exchangeRateId);
+                insertExchangeRate.setString(2, rate.getKey());
+                insertExchangeRate.setBigDecimal(3, rate.getValue());
+                insertExchangeRate.setLong(4, snapshots);
+                insertExchangeRate.setLong(5, timestamp);
+                insertExchangeRate.addBatch();
+            }
+            insertExchangeRate.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Compacts and closes the database, so its files hold only the written snapshots, and measures their size.
+     *
+     * @return The size of the database files per snapshot written so far.
+     */
+    long compact() throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN COMPACT");
+        }
+        connection.close();
+        connection = null;
+
+        long size = 0;
+        for (Path file : files()) {
+            size += Files.size(file);
+        }
+        return snapshots == 0 ? 0 : size / snapshots;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(files::add);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,155 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Load test of the exchange rates push: measures the time from adding a currency until every one of thousands of
+ * concurrent server-sent events subscribers received the update. The application runs with an in-memory database
+ * and exchange rates restored from a snapshot file; the subscribers are asynchronous JDK {@link HttpClient} requests
+ * over separate connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StreamBenchmark {
+
+    private static final int CURRENCIES = 170;
+    private static final int INITIAL_CURRENCIES = 20;
+
+    @Param({"1000", "4000"})
+    private int subscribers;
+
+    @Param({"8"})
+    private int threads;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private ExchangeRatesService exchangeRatesService;
+    private HttpClient httpClient;
+    private ExecutorService clientExecutor;
+    private final List<CompletableFuture<?>> responses = new ArrayList<>();
+    private Iterator<String> addedCurrencies;
+    private volatile long targetGeneration;
+    private volatile CountDownLatch received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("stream-benchmark");
+        IExchangeRates exchangeRates = BenchmarkFixtures.exchangeRates(CURRENCIES);
+        List<String> currencyCodes = BenchmarkFixtures.currencyCodes(CURRENCIES);
+        Path snapshotFile = directory.resolve("exchange-snapshot.bin");
+        new ExchangeRatesSnapshotFile(snapshotFile.toString()).write(new ExchangeRatesSnapshotFile.Content(1L,
+                exchangeRates, Set.copyOf(currencyCodes.subList(0, INITIAL_CURRENCIES))));
+        addedCurrencies = currencyCodes.subList(INITIAL_CURRENCIES, CURRENCIES).iterator();
+
+        context = new SpringApplicationBuilder(ExchangeServiceApplication.class)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:stream-benchmark",
+                        "--spring.jpa.show-sql=false",
+                        "--server.port=0",
+                        "--server.tomcat.max-connections=" + (subscribers + 100),
+                        "--exchange.providers=openexchangerates",
+                        "--external.openexchangerates.baseUrl=http://localhost:1/",
+                        "--exchange.snapshot.file=" + snapshotFile,
+                        "--exchange.stream.max.subscribers=" + subscribers,
+                        "--exchange.stream.threads=" + threads,
+                        "--exchange.stream.timeout=600000");
+        exchangeRatesService = context.getBean(ExchangeRatesService.class);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        clientExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                        + "/exchange-rates/stream?bases=" + BenchmarkFixtures.BASE_CURRENCY))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+
+        targetGeneration = exchangeRatesService.getGeneration();
+        received = new CountDownLatch(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            responses.add(httpClient.sendAsync(request,
+                    HttpResponse.BodyHandlers.fromLineSubscriber(new EventSubscriber())));
+        }
+        if (!received.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Subscribers did not receive the exchange rates");
+        }
+    }
+
+    @Benchmark
+    public void push() throws InterruptedException {
+        received = new CountDownLatch(subscribers);
+        targetGeneration = exchangeRatesService.getGeneration() + 1;
+        exchangeRatesService.addCurrency(addedCurrencies.next());
+        if (!received.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Subscribers did not receive the update");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        responses.forEach(response -> response.cancel(true));
+        context.close();
+        clientExecutor.shutdownNow();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Counts down the latch once per target generation when an event of that generation or a later one arrives.
+     */
+    private final class EventSubscriber implements Flow.Subscriber<String> {
+        private long countedGeneration = -1;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("id:")) {
+                return;
+            }
+
+            long generation = Long.parseLong(line.substring("id:".length()));
+            long target = targetGeneration;
+            if (generation >= target && countedGeneration < target) {
+                countedGeneration = target;
+                received.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.ExchangeLoggingService;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Load test comparing request handling on the bounded Tomcat pool of platform threads with request handling on
+ * virtual threads. More concurrent clients than Tomcat threads request the exchange rates of a random base currency,
+ * served from memory, and the exchange rates at a random point in time, read from a file-based H2 database. Run with
+ * both benchmark modes to get the throughput and the p99 latency of each thread mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(200)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+    private static final int CURRENCIES = 170;
+    private static final int SNAPSHOTS = 240;
+    private static final long SNAPSHOT_INTERVAL = 3600;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"50"})
+    private int tomcatThreads;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private List<String> currencyCodes;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("virtual-threads-benchmark");
+        IExchangeRates exchangeRates = BenchmarkFixtures.exchangeRates(CURRENCIES);
+        currencyCodes = BenchmarkFixtures.currencyCodes(CURRENCIES);
+        Path snapshotFile = directory.resolve("exchange-snapshot.bin");
+        new ExchangeRatesSnapshotFile(snapshotFile.toString()).write(new ExchangeRatesSnapshotFile.Content(1L,
+                exchangeRates, Set.copyOf(currencyCodes)));
+
+        context = new SpringApplicationBuilder(ExchangeServiceApplication.class)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:" + directory.resolve("db").toAbsolutePath(),
+                        "--spring.jpa.show-sql=false",
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + tomcatThreads,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--exchange.providers=openexchangerates",
+                        "--external.openexchangerates.baseUrl=http://localhost:1/",
+                        "--exchange.snapshot.file=" + snapshotFile);
+        ExchangeLoggingService exchangeLoggingService = context.getBean(ExchangeLoggingService.class);
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            exchangeLoggingService.logCurrencyRate(new ExchangeRates(
+                    BenchmarkFixtures.TIMESTAMP + i * SNAPSHOT_INTERVAL, exchangeRates.baseCurrency(),
+                    exchangeRates.rates()));
+        }
+        if (!exchangeLoggingService.flush(60000)) {
+            throw new IllegalStateException("Exchange rates are not persisted");
+        }
+
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    @Benchmark
+    public int exchangeRates() throws IOException, InterruptedException {
+        return get("/exchange-rates?base=" + randomCurrency());
+    }
+
+    @Benchmark
+    public int history() throws IOException, InterruptedException {
+        long at = BenchmarkFixtures.TIMESTAMP
+                + ThreadLocalRandom.current().nextLong(SNAPSHOTS * SNAPSHOT_INTERVAL);
+        return get("/exchange-rates/history?base=" + randomCurrency() + "&at=" + at);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        httpClient.close();
+        context.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private String randomCurrency() {
+        return currencyCodes.get(ThreadLocalRandom.current().nextInt(currencyCodes.size()));
+    }
+
+    private int get(final String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected response status: " + response.statusCode());
+        }
+
+        return response.body().length;
+    }
+}
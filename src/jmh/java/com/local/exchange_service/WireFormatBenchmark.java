@@ -0,0 +1,92 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.local.exchange_service.SerializedExchangeRatesCache.Encoding;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import com.local.exchange_service.model.SerializedExchangeRates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encodings of {@code GET /exchange-rates}: the time to encode the exchange rates of a base currency,
+ * done once per generation by {@link SerializedExchangeRatesCache}, and the time a client needs to decode them.
+ * The payload size of each encoding is reported as the {@code payloadBytes} secondary metric of {@link #encode},
+ * and the setup fails if a decoded payload differs from the exchange rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"10", "170"})
+    private int currencies;
+
+    @Param({"JSON", "CBOR", "COMPACT"})
+    private Encoding encoding;
+
+    private ObjectMapper objectMapper;
+    private ObjectMapper cborMapper;
+    private SerializedExchangeRatesCache serializedExchangeRatesCache;
+    private IExchangeRates exchangeRates;
+    private byte[] payload;
+
+    /**
+     * The size of the encoded exchange rates, measured after each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+
+        @TearDown(Level.Iteration)
+        public void measure(WireFormatBenchmark benchmark) {
+            payloadBytes = benchmark.payload.length;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        cborMapper = objectMapper.copyWith(new CBORFactory());
+        ExchangeRatesService exchangeRatesService = new ExchangeRatesService(
+                () -> BenchmarkFixtures.exchangeRates(currencies), rates -> {
+                }, 1000, BenchmarkFixtures.EXCHANGE_SCALE, ExchangeRatesService.RatesMode.EAGER, 16,
+                new ExchangeRatesSnapshotFile(""), new SimpleMeterRegistry());
+        exchangeRatesService.fetchExchangeRates();
+        serializedExchangeRatesCache = new SerializedExchangeRatesCache(exchangeRatesService, objectMapper);
+        // cross rates with the full exchange scale, as served for most base currencies
+        exchangeRates = exchangeRatesService.getExchangeRates(
+                BenchmarkFixtures.currencyCodes(currencies).get(currencies / 2));
+        payload = serializedExchangeRatesCache.serialize(exchangeRates, encoding).body();
+
+        Map<String, BigDecimal> decoded = decode().rates();
+        if (decoded.size() != exchangeRates.rates().size() || !exchangeRates.rates().entrySet().stream()
+                .allMatch(rate -> rate.getValue().compareTo(decoded.get(rate.getKey())) == 0)) {
+            throw new IllegalStateException("Decoded exchange rates differ from encoded exchange rates");
+        }
+    }
+
+    @Benchmark
+    public SerializedExchangeRates encode(PayloadSize payloadSize) {
+        return serializedExchangeRatesCache.serialize(exchangeRates, encoding);
+    }
+
+    @Benchmark
+    public IExchangeRates decode() throws IOException {
+        return switch (encoding) {
+            case JSON -> objectMapper.readValue(payload, ExchangeRates.class);
+            case CBOR -> cborMapper.readValue(payload, ExchangeRates.class);
+            case COMPACT -> ExchangeRatesWireCodec.decode(payload);
+        };
+    }
+}
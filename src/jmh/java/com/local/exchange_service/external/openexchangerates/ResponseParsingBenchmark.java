@@ -0,0 +1,59 @@
+package com.local.exchange_service.external.openexchangerates;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a recorded latest exchange rates response with the streaming parser used by the
+ * {@link OpenExchangeRatesApiService.ClientMode#HTTP_CLIENT} mode with binding it to {@link ExchangeRatesResponse}
+ * the way {@code RestTemplate} does in the {@link OpenExchangeRatesApiService.ClientMode#REST_TEMPLATE} mode.
+ * The setup fails if both return different exchange rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final String PAYLOAD = "/openexchangerates-latest.json";
+
+    private ObjectMapper objectMapper;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        // unknown fields are ignored like by the object mapper of Spring Boot
+        objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        try (InputStream inputStream = ResponseParsingBenchmark.class.getResourceAsStream(PAYLOAD)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Recorded response is not found: " + PAYLOAD);
+            }
+            payload = inputStream.readAllBytes();
+        }
+
+        IExchangeRates streamed = streaming();
+        IExchangeRates bound = databind();
+        if (streamed.timestamp() != bound.timestamp() || !streamed.rates().equals(bound.rates())) {
+            throw new IllegalStateException("Parsed exchange rates differ from bound exchange rates");
+        }
+    }
+
+    @Benchmark
+    public IExchangeRates streaming() throws IOException {
+        return OpenExchangeRatesApiService.parseExchangeRates(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public IExchangeRates databind() throws IOException {
+        return objectMapper.readValue(payload, ExchangeRatesResponse.class);
+    }
+}
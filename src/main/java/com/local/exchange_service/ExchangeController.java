@@ -1,27 +1,77 @@
 package com.local.exchange_service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.BulkConversion;
+import com.local.exchange_service.model.BulkConversionRequest;
+import com.local.exchange_service.model.Conversion;
 import com.local.exchange_service.model.CurrencyRequest;
+import com.local.exchange_service.model.ExchangeRates;
+import com.local.exchange_service.model.ExchangeRatesError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * REST controller for currencies and exchange rates.
+ * Responses carry validators, so conditional requests are answered with 304 Not Modified without writing a body.
+ * <p>
+ * Metrics: {@code exchange.rates.requests} timer of exchange rates requests tagged by base currency. Only added
+ * currencies get their own tag, other base currencies are tagged {@code other}, and the timers are registered once,
+ * so recording a request does not allocate.
+ */
 @RestController
 public class ExchangeController {
 
     private final ExchangeRatesService exchangeRatesService;
+    private final SerializedExchangeRatesCache serializedExchangeRatesCache;
+    private final ObjectMapper objectMapper;
+    private final ExchangeRatesUpdateScheduler updateScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final Timer otherRequestTimer;
 
     @Autowired
-    public ExchangeController(ExchangeRatesService exchangeRatesService) {
+    public ExchangeController(ExchangeRatesService exchangeRatesService,
+                              SerializedExchangeRatesCache serializedExchangeRatesCache,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              ExchangeRatesUpdateScheduler updateScheduler) {
         this.exchangeRatesService = exchangeRatesService;
+        this.serializedExchangeRatesCache = serializedExchangeRatesCache;
+        this.objectMapper = objectMapper;
+        this.updateScheduler = updateScheduler;
+        this.meterRegistry = meterRegistry;
+        this.otherRequestTimer = requestTimer("other");
     }
 
+    /**
+     * The set of currencies may change at any time, so clients have to revalidate it on each use.
+     * The entity tag is weak because the iteration order of equal sets may differ.
+     */
     @GetMapping("/currencies")
-    public Set<String> getCurrencies() {
-        return exchangeRatesService.getCurrencies();
+    public ResponseEntity<Set<String>> getCurrencies() {
+        var currencies = exchangeRatesService.getCurrencies();
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag("W/\"" + currencies.size() + "-" + Integer.toHexString(currencies.hashCode()) + "\"")
+                .body(currencies);
     }
 
     @PostMapping("/currencies")
@@ -30,8 +80,126 @@ public class ExchangeController {
         return ResponseEntity.status(HttpStatus.CREATED).body(currencies);
     }
 
-    @GetMapping("/exchange-rates")
-    public IExchangeRates getExchangeRates(@RequestParam(value = "base", defaultValue = "USD") String base) {
-        return exchangeRatesService.getExchangeRates(base);
+    /**
+     * Exchange rates may be cached until the next scheduled update of exchange rates data.
+     * The body is JSON unless CBOR or the compact binary layout of {@link ExchangeRatesWireCodec} is accepted.
+     */
+    @GetMapping(value = "/exchange-rates",
+            produces = {MediaType.APPLICATION_JSON_VALUE, "application/cbor", ExchangeRatesWireCodec.MEDIA_TYPE})
+    public ResponseEntity<byte[]> getExchangeRates(@RequestParam(value = "base", defaultValue = "USD") String base,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                                   String accept) {
+        long start = System.nanoTime();
+        try {
+            var encoding = SerializedExchangeRatesCache.Encoding.of(accept == null
+                    ? List.of()
+                    : MediaType.parseMediaTypes(accept));
+            var exchangeRates = serializedExchangeRatesCache.getExchangeRates(base, encoding);
+            return ResponseEntity.ok()
+                    .contentType(encoding.getMediaType())
+                    .contentLength(exchangeRates.body().length)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .cacheControl(CacheControl.maxAge(secondsUntilNextUpdate(), TimeUnit.SECONDS))
+                    .eTag(exchangeRates.eTag())
+                    .lastModified(TimeUnit.SECONDS.toMillis(exchangeRates.timestamp()))
+                    .body(exchangeRates.body());
+        } finally {
+            baseRequestTimer(base).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Exchange rates for several base currencies, all taken from the same exchange rates data and streamed as a JSON
+     * array in the requested order. A base currency failing validation gets an entry with the error instead of
+     * failing the whole batch. If symbols are given, the rates are limited to them, and an entry gets an error naming
+     * the symbols that are not among its rates instead of leaving them out silently.
+     */
+    @GetMapping(value = "/exchange-rates/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getExchangeRatesBatch(
+            @RequestParam("bases") List<String> bases,
+            @RequestParam(value = "symbols", required = false) Set<String> symbols) {
+        var exchangeRatesSnapshot = exchangeRatesService.getExchangeRatesSnapshot();
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                for (String base : bases) {
+                    Object entry;
+                    try {
+                        IExchangeRates exchangeRates = exchangeRatesSnapshot.apply(base);
+                        entry = symbols == null ? exchangeRates : selectRates(exchangeRates, symbols);
+                    } catch (RuntimeException e) {
+                        entry = new ExchangeRatesError(base, e.getMessage());
+                    }
+                    generator.writeObject(entry);
+                }
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @GetMapping("/convert")
+    public Conversion convert(@RequestParam("from") String from,
+                              @RequestParam("to") String to,
+                              @RequestParam("amount") BigDecimal amount) {
+        return exchangeRatesService.convert(from, to, amount);
+    }
+
+    @PostMapping("/convert")
+    public BulkConversion convert(@RequestBody BulkConversionRequest conversionRequest) {
+        return exchangeRatesService.convert(conversionRequest.from(), conversionRequest.to(),
+                conversionRequest.amounts());
+    }
+
+    /**
+     * Limits exchange rates to the given symbols.
+     *
+     * @throws RuntimeException if a symbol is not among the exchange rates, since it is not added or not supported.
+     */
+    private static IExchangeRates selectRates(final IExchangeRates exchangeRates, final Set<String> symbols) {
+        Map<String, BigDecimal> rates = new HashMap<>();
+        exchangeRates.rates().forEach((currency, rate) -> {
+            if (symbols.contains(currency)) {
+                rates.put(currency, rate);
+            }
+        });
+        if (rates.size() < symbols.size()) {
+            throw new RuntimeException("Currency codes are not added to exchange service: " + String.join(", ",
+                    symbols.stream().filter(symbol -> !rates.containsKey(symbol)).sorted().toList()));
+        }
+
+        return new ExchangeRates(exchangeRates.timestamp(), exchangeRates.baseCurrency(), rates);
+    }
+
+    /**
+     * Retrieves the request timer of a base currency, registering it on the first request if the currency is added.
+     * The number of tags is bounded by the added currencies, since arbitrary base currencies share one timer.
+     */
+    private Timer baseRequestTimer(final String base) {
+        Timer timer = requestTimers.get(base);
+        if (timer != null) {
+            return timer;
+        }
+
+        return exchangeRatesService.getCurrencies().contains(base)
+                ? requestTimers.computeIfAbsent(base, this::requestTimer)
+                : otherRequestTimer;
+    }
+
+    private Timer requestTimer(final String base) {
+        return Timer.builder("exchange.rates.requests")
+                .description("Requests for the exchange rates of a base currency")
+                .tag("base", base)
+                .register(meterRegistry);
+    }
+
+    private long secondsUntilNextUpdate() {
+        return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(updateScheduler.getNextUpdateTime()
+                - System.currentTimeMillis()));
     }
 }
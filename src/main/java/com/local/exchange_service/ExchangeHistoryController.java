@@ -0,0 +1,96 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.AggregationPeriod;
+import com.local.exchange_service.model.RateAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * REST controller for historical exchange rates. Timestamps are in seconds since the epoch, like the timestamps
+ * of exchange rates data.
+ */
+@RestController
+public class ExchangeHistoryController {
+
+    private final ExchangeRatesHistoryService exchangeRatesHistoryService;
+    private final ExchangeRatesAggregationService exchangeRatesAggregationService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ExchangeHistoryController(ExchangeRatesHistoryService exchangeRatesHistoryService,
+                                     ExchangeRatesAggregationService exchangeRatesAggregationService,
+                                     ObjectMapper objectMapper) {
+        this.exchangeRatesHistoryService = exchangeRatesHistoryService;
+        this.exchangeRatesAggregationService = exchangeRatesAggregationService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Exchange rates persisted between two timestamps, streamed as a JSON array in timestamp order while they are
+     * read from the database.
+     */
+    @GetMapping(value = "/exchange-rates/history", params = {"from", "to"},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getExchangeRatesHistory(
+            @RequestParam("base") String base,
+            @RequestParam(value = "symbols", required = false) Set<String> symbols,
+            @RequestParam("from") long from,
+            @RequestParam("to") long to) {
+        exchangeRatesHistoryService.validate(base, from, to);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                exchangeRatesHistoryService.forEachExchangeRates(base, symbols, from, to, exchangeRates -> {
+                    try {
+                        generator.writeObject(exchangeRates);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Exchange rates in effect at a point in time.
+     */
+    @GetMapping(value = "/exchange-rates/history", params = "at")
+    public IExchangeRates getExchangeRatesAt(@RequestParam("base") String base,
+                                             @RequestParam(value = "symbols", required = false) Set<String> symbols,
+                                             @RequestParam("at") long at) {
+        return exchangeRatesHistoryService.getExchangeRatesAt(base, symbols, at);
+    }
+
+    /**
+     * Open, high, low, close and average exchange rates per day or month, ordered by bucket and currency.
+     */
+    @GetMapping("/exchange-rates/aggregates")
+    public List<RateAggregate> getAggregates(@RequestParam("base") String base,
+                                             @RequestParam(value = "symbols", required = false) Set<String> symbols,
+                                             @RequestParam(value = "period", defaultValue = "DAY")
+                                             AggregationPeriod period,
+                                             @RequestParam("from") long from,
+                                             @RequestParam("to") long to) {
+        return exchangeRatesAggregationService.getAggregates(base, symbols, period, from, to);
+    }
+}
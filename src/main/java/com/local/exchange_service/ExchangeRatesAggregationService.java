@@ -0,0 +1,97 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.RateRollupStore;
+import com.local.exchange_service.db.entities.RateRollup;
+import com.local.exchange_service.db.entities.RateRollupId;
+import com.local.exchange_service.model.AggregationPeriod;
+import com.local.exchange_service.model.RateAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Service class for open, high, low, close and average exchange rates per day or month.
+ * Aggregates against the rolled up base currencies are read from the rollups. Aggregates against other base
+ * currencies are calculated from the persisted snapshots of the requested time range.
+ */
+@Service
+public class ExchangeRatesAggregationService {
+
+    private final RateRollupStore rateRollupStore;
+    private final ExchangeRatesHistoryService exchangeRatesHistoryService;
+    private final int exchangeScale;
+
+    /**
+     * Rollup calculated in memory from persisted snapshots.
+     */
+    private static final class SnapshotRollup extends RateRollup {
+        private SnapshotRollup(RateRollupId id, long timestamp, BigDecimal rate) {
+            super(id, timestamp, rate);
+        }
+    }
+
+    /**
+     * Constructor for the ExchangeRatesAggregationService.
+     *
+     * @param rateRollupStore             The store of daily and monthly rollups.
+     * @param exchangeRatesHistoryService The service reading persisted snapshots.
+     * @param exchangeScale               The scale (precision) for exchange rate calculations.
+     */
+    @Autowired
+    public ExchangeRatesAggregationService(RateRollupStore rateRollupStore,
+                                           ExchangeRatesHistoryService exchangeRatesHistoryService,
+                                           @Value("${exchange.scale}") int exchangeScale) {
+        this.rateRollupStore = rateRollupStore;
+        this.exchangeRatesHistoryService = exchangeRatesHistoryService;
+        this.exchangeScale = exchangeScale;
+    }
+
+    /**
+     * Retrieves the aggregated exchange rates against a base currency within a time range.
+     *
+     * @param base    The base currency code.
+     * @param symbols The currency codes to include, or null to include all currencies.
+     * @param period  The aggregation period.
+     * @param from    The first timestamp in seconds since the epoch; its whole bucket is included.
+     * @param to      The last timestamp in seconds since the epoch, inclusive.
+     * @return The aggregates ordered by bucket and currency.
+     * @throws RuntimeException if the query is invalid.
+     */
+    public List<RateAggregate> getAggregates(final String base,
+                                             final Set<String> symbols,
+                                             final AggregationPeriod period,
+                                             final long from,
+                                             final long to) {
+        exchangeRatesHistoryService.validate(base, from, to);
+        if (period == null) {
+            throw new RuntimeException("Aggregation period is required");
+        }
+
+        if (rateRollupStore.isRolledUp(base)) {
+            return rateRollupStore.find(base, symbols, period, from, to);
+        }
+
+        Map<RateRollupId, SnapshotRollup> rollups = new HashMap<>();
+        exchangeRatesHistoryService.forEachExchangeRates(base, symbols, period.bucketStart(from), to,
+                exchangeRates -> {
+                    long bucketStart = period.bucketStart(exchangeRates.timestamp());
+                    exchangeRates.rates().forEach((currency, rate) -> {
+                        var id = new RateRollupId(bucketStart, base, currency);
+                        SnapshotRollup rollup = rollups.get(id);
+                        if (rollup == null) {
+                            rollups.put(id, new SnapshotRollup(id, exchangeRates.timestamp(), rate));
+                        } else {
+                            rollup.add(exchangeRates.timestamp(), rate);
+                        }
+                    });
+                });
+
+        return rollups.values().stream()
+                .map(rollup -> RateRollupStore.toAggregate(period, rollup, exchangeScale))
+                .sorted(Comparator.comparingLong(RateAggregate::bucketStart).thenComparing(RateAggregate::currency))
+                .toList();
+    }
+}
@@ -0,0 +1,240 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.ExchangeRatesNotifier;
+import com.local.exchange_service.interfaces.IExchangeLoggingService;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Coordinates the nodes of a cluster sharing the PostgreSQL database, so only one of them calls the external API.
+ * <p>
+ * Each node keeps a dedicated database connection that listens on the {@link ExchangeRatesNotifier#CHANNEL} channel
+ * and tries to take the session-level advisory lock {@code exchange.cluster.lock.key}. The node holding the lock is
+ * the leader: {@link ExchangeRatesUpdateScheduler} fetches exchange rates only on it, and they are persisted and
+ * announced with {@code NOTIFY} as usual. The other nodes read the latest persisted exchange rates data or the
+ * persisted added currencies on each notification and publish them without calling the external API. Currencies
+ * can be added on any node, since they are persisted and announced the same way. The leader skips the notifications
+ * of exchange rates data, which it published itself before persisting it: reading the persisted copy, rounded to
+ * the storage scale, back would publish it as another generation.
+ * <p>
+ * The lock is released with the session, so when the leader stops or loses its connection another node takes the
+ * lock within the poll interval. After connecting, and again after becoming the leader, a node reads the persisted
+ * state once, so notifications missed while it was disconnected or sent by the previous leader are caught up.
+ * <p>
+ * Unless {@code exchange.cluster.enabled} is set, the node is the only one and always the leader.
+ */
+@Component
+public class ExchangeRatesCluster {
+
+    private static final Logger logger = Logger.getLogger(ExchangeRatesCluster.class.getName());
+
+    private final DataSource dataSource;
+    private final ExchangeRatesService exchangeRatesService;
+    private final IExchangeLoggingService exchangeLoggingService;
+    private final boolean enabled;
+    private final long lockKey;
+    private final long pollInterval;
+    private final long reconnectDelay;
+    private final boolean virtualThreads;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean leader;
+    private volatile Thread listener;
+
+    /**
+     * Constructor for the ExchangeRatesCluster.
+     *
+     * @param dataSource             The data source of the shared PostgreSQL database.
+     * @param exchangeRatesService   The service publishing exchange rates received from the leader.
+     * @param exchangeLoggingService The service reading persisted exchange rates and currencies.
+     * @param enabled                Whether the node is part of a cluster.
+     * @param lockKey                The key of the advisory lock held by the leader.
+     * @param pollInterval           The interval in milliseconds of waiting for notifications and trying to take
+     *                               the lock.
+     * @param reconnectDelay         The delay in milliseconds before reconnecting after a database error.
+     * @param virtualThreads         Whether the listener is a virtual thread.
+     */
+    @Autowired
+    public ExchangeRatesCluster(DataSource dataSource,
+                                ExchangeRatesService exchangeRatesService,
+                                IExchangeLoggingService exchangeLoggingService,
+                                @Value("${exchange.cluster.enabled}") boolean enabled,
+                                @Value("${exchange.cluster.lock.key}") long lockKey,
+                                @Value("${exchange.cluster.poll.interval}") long pollInterval,
+                                @Value("${exchange.cluster.reconnect.delay}") long reconnectDelay,
+                                @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.dataSource = dataSource;
+        this.exchangeRatesService = exchangeRatesService;
+        this.exchangeLoggingService = exchangeLoggingService;
+        this.enabled = enabled;
+        this.lockKey = lockKey;
+        this.pollInterval = pollInterval;
+        this.reconnectDelay = reconnectDelay;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Checks if this node fetches exchange rates from the external API.
+     *
+     * @return True if this node holds the lock, or if the node is not part of a cluster.
+     */
+    public boolean isLeader() {
+        return !enabled || leader;
+    }
+
+    /**
+     * Retrieves the interval in which a change of the leader is noticed.
+     *
+     * @return The interval in milliseconds.
+     */
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Starts listening for notifications and competing for the lock when the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+
+        listener = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                .name("exchange-cluster-listener")
+                .start(this::listen);
+    }
+
+    /**
+     * Stops listening and releases the lock, so another node becomes the leader.
+     */
+    @PreDestroy
+    public void stop() {
+        running.set(false);
+        Thread stopped = listener;
+        if (stopped == null) {
+            return;
+        }
+
+        try {
+            stopped.join(pollInterval + TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running.get()) {
+            try (Connection connection = dataSource.getConnection()) {
+                try {
+                    poll(connection);
+                } finally {
+                    leader = false;
+                    release(connection);
+                }
+            } catch (SQLException | RuntimeException e) {
+                logger.warning("Cluster listener failed, reconnecting in " + reconnectDelay +
+                        " ms, error message: " + e.getMessage());
+                sleep(reconnectDelay);
+            }
+        }
+    }
+
+    /**
+     * Listens for notifications on the connection and tries to take the lock until the node stops.
+     *
+     * @param connection The dedicated connection holding the lock.
+     * @throws SQLException if the connection fails.
+     */
+    private void poll(final Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + ExchangeRatesNotifier.CHANNEL);
+        }
+        receive(true, true);
+
+        while (running.get()) {
+            if (!leader) {
+                leader = tryLock(connection);
+                if (leader) {
+                    logger.info("Became the leader of the exchange rates cluster");
+                    receive(true, false);
+                }
+            }
+
+            PGNotification[] notifications = pgConnection.getNotifications((int) pollInterval);
+            if (notifications != null && notifications.length > 0) {
+                boolean exchangeRates = false;
+                boolean currencies = false;
+                for (PGNotification notification : notifications) {
+                    exchangeRates |= !leader && ExchangeRatesNotifier.RATES.equals(notification.getParameter());
+                    currencies |= ExchangeRatesNotifier.CURRENCIES.equals(notification.getParameter());
+                }
+                receive(exchangeRates, currencies);
+            } else if (leader && !connection.isValid((int) TimeUnit.MILLISECONDS.toSeconds(pollInterval) + 1)) {
+                throw new SQLException("Connection holding the lock is not valid");
+            }
+        }
+    }
+
+    /**
+     * Publishes the persisted exchange rates data and added currencies. Currencies are read again after exchange
+     * rates data is received, since they are skipped while the service is not initialized.
+     *
+     * @param exchangeRates Whether exchange rates data is persisted.
+     * @param currencies    Whether added currencies are persisted.
+     */
+    private void receive(final boolean exchangeRates, final boolean currencies) {
+        boolean received = exchangeRates && exchangeLoggingService.findLatestExchangeRates()
+                .map(exchangeRatesService::receiveExchangeRates)
+                .orElse(false);
+        if (currencies || received) {
+            exchangeRatesService.receiveCurrencies(exchangeLoggingService.findCurrencies());
+        }
+    }
+
+    private boolean tryLock(final Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Releases the lock and stops listening before the connection is returned to the pool, since both belong to
+     * the session and would outlive it otherwise.
+     */
+    private static void release(final Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("UNLISTEN *");
+            statement.execute("SELECT pg_advisory_unlock_all()");
+        } catch (SQLException e) {
+            // the connection is broken, and the session with the lock is closed by the server
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.CurrencyRateRepository;
+import com.local.exchange_service.db.ExchangeLoggingService.StorageMode;
+import com.local.exchange_service.db.ExchangeRateRepository;
+import com.local.exchange_service.db.ExchangeRateRow;
+import com.local.exchange_service.db.RateSnapshotStore;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Service class for querying the exchange rates persisted by the logging service.
+ * Persisted exchange rates data is read with streaming projections in the configured storage mode, and the exchange
+ * rates against the requested base currency are calculated in the same way as for the latest exchange rates.
+ */
+@Service
+public class ExchangeRatesHistoryService {
+
+    private final CurrencyRateRepository currencyRateRepository;
+    private final ExchangeRateRepository exchangeRateRepository;
+    private final RateSnapshotStore rateSnapshotStore;
+    private final StorageMode storageMode;
+    private final int exchangeScale;
+
+    /**
+     * Constructor for the ExchangeRatesHistoryService.
+     *
+     * @param currencyRateRepository The repository of exchange rates data stored with a row per currency.
+     * @param exchangeRateRepository The repository of rates stored with a row per currency.
+     * @param rateSnapshotStore      The store of exchange rates data in the compact columnar format.
+     * @param storageMode            Defines how exchange rates are stored.
+     * @param exchangeScale          The scale (precision) for exchange rate calculations.
+     */
+    @Autowired
+    public ExchangeRatesHistoryService(CurrencyRateRepository currencyRateRepository,
+                                       ExchangeRateRepository exchangeRateRepository,
+                                       RateSnapshotStore rateSnapshotStore,
+                                       @Value("${exchange.logging.storage}") StorageMode storageMode,
+                                       @Value("${exchange.scale}") int exchangeScale) {
+        this.currencyRateRepository = currencyRateRepository;
+        this.exchangeRateRepository = exchangeRateRepository;
+        this.rateSnapshotStore = rateSnapshotStore;
+        this.storageMode = storageMode;
+        this.exchangeScale = exchangeScale;
+    }
+
+    /**
+     * Validates a query of historical exchange rates, so it can be rejected before the response is started.
+     *
+     * @param base The base currency code.
+     * @param from The first timestamp in seconds since the epoch, inclusive.
+     * @param to   The last timestamp in seconds since the epoch, inclusive.
+     * @throws RuntimeException if the base currency is missing or the time range is invalid.
+     */
+    public void validate(final String base, final long from, final long to) {
+        if (base == null || base.isBlank()) {
+            throw new RuntimeException("Base currency is required");
+        }
+        if (from > to) {
+            throw new RuntimeException("Time range is invalid");
+        }
+    }
+
+    /**
+     * Reads the exchange rates persisted between two timestamps in timestamp order, one snapshot at a time.
+     * Snapshots without the base currency are skipped.
+     *
+     * @param base     The base currency code.
+     * @param symbols  The currency codes to include, or null to include all currencies.
+     * @param from     The first timestamp in seconds since the epoch, inclusive.
+     * @param to       The last timestamp in seconds since the epoch, inclusive.
+     * @param consumer The consumer of the exchange rates against the base currency.
+     * @throws RuntimeException if the query is invalid.
+     */
+    @Transactional(readOnly = true)
+    public void forEachExchangeRates(final String base,
+                                     final Set<String> symbols,
+                                     final long from,
+                                     final long to,
+                                     final Consumer<IExchangeRates> consumer) {
+        validate(base, from, to);
+
+        try (Stream<IExchangeRates> snapshots = streamSnapshots(base, symbols, from, to)) {
+            snapshots.map(snapshot -> toBase(snapshot, base, symbols))
+                    .filter(Objects::nonNull)
+                    .forEach(consumer);
+        }
+    }
+
+    /**
+     * Retrieves the exchange rates in effect at a point in time: the latest persisted at or before it.
+     *
+     * @param base    The base currency code.
+     * @param symbols The currency codes to include, or null to include all currencies.
+     * @param at      The timestamp in seconds since the epoch.
+     * @return The exchange rates against the base currency.
+     * @throws RuntimeException if no exchange rates are persisted before the timestamp or the base currency is
+     * not supported by them.
+     */
+    @Transactional(readOnly = true)
+    public IExchangeRates getExchangeRatesAt(final String base, final Set<String> symbols, final long at) {
+        validate(base, at, at);
+
+        Optional<IExchangeRates> snapshot;
+        if (storageMode == StorageMode.COLUMNAR) {
+            snapshot = rateSnapshotStore.findLatest(at);
+        } else {
+            snapshot = currencyRateRepository.findLatestTimestamp(at).flatMap(timestamp -> {
+                try (Stream<IExchangeRates> snapshots = streamSnapshots(base, symbols, timestamp, timestamp)) {
+                    return snapshots.reduce((first, second) -> second);
+                }
+            });
+        }
+
+        IExchangeRates exchangeRates = toBase(snapshot
+                .orElseThrow(() -> new RuntimeException("Exchange rates are unavailable")), base, symbols);
+        if (exchangeRates == null) {
+            throw new RuntimeException("Currency code is not supported");
+        }
+
+        return exchangeRates;
+    }
+
+    private Stream<IExchangeRates> streamSnapshots(final String base,
+                                                   final Set<String> symbols,
+                                                   final long from,
+                                                   final long to) {
+        if (storageMode == StorageMode.COLUMNAR) {
+            return rateSnapshotStore.streamBetween(from, to);
+        }
+
+        Stream<ExchangeRateRow> rows;
+        if (symbols == null) {
+            rows = exchangeRateRepository.streamRates(from, to);
+        } else {
+            Set<String> currencies = new HashSet<>(symbols);
+            currencies.add(base);
+            rows = exchangeRateRepository.streamRates(from, to, currencies);
+        }
+
+        Iterator<IExchangeRates> snapshots = new SnapshotIterator(rows.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(snapshots, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+
+    /**
+     * Calculates the exchange rates of a snapshot against a base currency.
+     *
+     * @return The exchange rates, or null if the base currency is missing in the snapshot.
+     */
+    private IExchangeRates toBase(final IExchangeRates snapshot, final String base, final Set<String> symbols) {
+        Map<String, BigDecimal> latestRates = snapshot.rates();
+        BigDecimal baseCurrencyRate = latestRates.get(base);
+        if (baseCurrencyRate == null) {
+            return null;
+        }
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        latestRates.forEach((currency, rate) -> {
+            if (symbols == null || symbols.contains(currency)) {
+                rates.put(currency, ExchangeRatesService.calculateRate(rate, baseCurrencyRate, exchangeScale));
+            }
+        });
+
+        return new ExchangeRates(snapshot.timestamp(), base, rates);
+    }
+
+    /**
+     * Groups rows ordered by timestamp and {@code currency_rate} id into snapshots. If several snapshots have the
+     * same timestamp, only the latest one is returned, as in the columnar storage.
+     */
+    private static final class SnapshotIterator implements Iterator<IExchangeRates> {
+
+        private final Iterator<ExchangeRateRow> rows;
+        private ExchangeRateRow next;
+
+        private SnapshotIterator(Iterator<ExchangeRateRow> rows) {
+            this.rows = rows;
+            this.next = rows.hasNext() ? rows.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public IExchangeRates next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            ExchangeRateRow first;
+            Map<String, BigDecimal> rates;
+            do {
+                first = next;
+                rates = new HashMap<>();
+                while (next != null && next.getCurrencyRateId().equals(first.getCurrencyRateId())) {
+                    rates.put(next.getCurrency(), next.getRate());
+                    next = rows.hasNext() ? rows.next() : null;
+                }
+            } while (next != null && next.getSnapshotTimestamp().equals(first.getSnapshotTimestamp()));
+
+            return new ExchangeRates(first.getSnapshotTimestamp(), first.getBaseCurrency(), rates);
+        }
+    }
+}
@@ -3,54 +3,199 @@ package com.local.exchange_service;
 import com.local.exchange_service.interfaces.IExchangeApiService;
 import com.local.exchange_service.interfaces.IExchangeLoggingService;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.BulkConversion;
+import com.local.exchange_service.model.CompactExchangeRates;
+import com.local.exchange_service.model.Conversion;
 import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.retry.annotation.Retryable;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Service class for managing exchange rates.
  * This service interacts with an external API to fetch exchange rates and maintains an internal map of exchange rates
  * for supported currencies. It provides functionality to add new currencies, fetch exchange rates, and log the exchange
  * rates for auditing or other purposes.
+ * <p>
+ * The state of the service is an immutable {@link Snapshot} published with compare-and-set, so readers never block
+ * and always see exchange rates data, currencies and exchange rates that belong together. Currencies added
+ * concurrently are published together with a single update.
+ * <p>
+ * In {@link RatesMode#EAGER} mode the exchange rates of every added currency are calculated on each update.
+ * In {@link RatesMode#LAZY} mode only the set of added currencies is updated, and the exchange rates of a base currency
+ * are calculated when requested for the first time after an update and kept in a size-bounded LRU cache.
+ * In {@link RatesMode#COMPACT} mode the latest exchange rates data is kept as a {@link CompactExchangeRates} snapshot
+ * and the exchange rates of every added currency are views over it, calculated on demand.
+ * <p>
+ * Exchange rates data with the same timestamp and rates as the published one is skipped without an update. When only
+ * some rates change, in {@link RatesMode#EAGER} mode only the rows and columns of the changed currencies are
+ * recalculated.
+ * <p>
+ * On startup the latest exchange rates data and the added currencies are restored before the application is ready,
+ * from the {@link ExchangeRatesSnapshotFile} written on each update or from the database, so requests are served
+ * right away and the external API is called by the scheduled update in the background.
+ * <p>
+ * Metrics: {@code exchange.upstream.fetch} timer of external API calls tagged by outcome, {@code exchange.rates.build}
+ * timer of publishing new exchange rates data, {@code exchange.rates.age} gauge of the published exchange rates data
+ * age in seconds, {@code exchange.currency.add.wait} timer of waiting until an added currency is published and
+ * {@code exchange.currency.add.timeout} counter of additions that timed out. The read path records no metrics.
  */
 @Service
 public class ExchangeRatesService {
 
+    private static final Logger logger = Logger.getLogger(ExchangeRatesService.class.getName());
+
     private final IExchangeApiService exchangeApi;
     private final IExchangeLoggingService exchangeLoggingService;
-    private final long updateLockTimeout;
+    private final ExchangeRatesSnapshotFile snapshotFile;
+    private final long updateTimeout;
     private final int exchangeScale;
-    private final ReentrantLock updateLock = new ReentrantLock(true);
-    private volatile Map<String, IExchangeRates> exchangeRatesMap = new HashMap<>();
-    private volatile IExchangeRates latestResponse;
+    private final RatesMode ratesMode;
+    private final Map<RatesKey, IExchangeRates> ratesCache;
+    private final ReentrantLock ratesCacheLock = new ReentrantLock();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final Queue<PendingCurrency> pendingCurrencies = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean addingCurrencies = new AtomicBoolean();
+    private final ReentrantLock snapshotFileLock = new ReentrantLock();
+    private long writtenGeneration;
+    private volatile long lastNotModifiedTime;
+    private final List<Runnable> publishListeners = new CopyOnWriteArrayList<>();
+    private final Timer fetchTimer;
+    private final Timer fetchErrorTimer;
+    private final Timer buildTimer;
+    private final Timer addWaitTimer;
+    private final Counter addTimeoutCounter;
+
+    /**
+     * Defines when the exchange rates of added currencies are calculated.
+     */
+    public enum RatesMode {
+        /**
+         * Exchange rates of all added currencies are calculated on each update.
+         */
+        EAGER,
+        /**
+         * Exchange rates of a currency are calculated on the first request after each update and cached.
+         */
+        LAZY,
+        /**
+         * Exchange rates of all added currencies are views over a compact snapshot, calculated on each request.
+         */
+        COMPACT
+    }
+
+    /**
+     * Immutable state of the service.
+     *
+     * @param generation       The generation, incremented on each update of exchange rates data or currencies.
+     * @param exchangeRates    The latest exchange rates data, null if the service is not initialized.
+     * @param compactRates     The compact snapshot of the latest exchange rates data, only in
+     *                         {@link RatesMode#COMPACT} mode.
+     * @param currencies       The set of added currencies.
+     * @param exchangeRatesMap The exchange rates of added currencies, empty in {@link RatesMode#LAZY} mode.
+     * @param updateTime       The time of the last update of exchange rates data in milliseconds since the epoch.
+     */
+    record Snapshot(long generation,
+                    IExchangeRates exchangeRates,
+                    CompactExchangeRates compactRates,
+                    Set<String> currencies,
+                    Map<String, IExchangeRates> exchangeRatesMap,
+                    long updateTime) {
+
+        static final Snapshot EMPTY = new Snapshot(0, null, null, Set.of(), Map.of(), 0);
+    }
+
+    /**
+     * Key of the lazily calculated exchange rates: the base currency within a generation of exchange rates data.
+     */
+    private record RatesKey(long generation, String baseCurrency) {
+    }
+
+    /**
+     * Exchange rate between two currencies with the timestamp of the exchange rates data it is taken from.
+     */
+    private record ConversionRate(long timestamp, BigDecimal rate) {
+    }
+
+    /**
+     * Currency waiting to be added, with the set of currencies published after it is added.
+     */
+    private record PendingCurrency(String currencyCode, CompletableFuture<Set<String>> result) {
+    }
 
     /**
      * Constructor for the ExchangeRatesService.
      *
      * @param exchangeApi             The external API service for fetching exchange rates.
      * @param exchangeLoggingService  The service for logging exchange rates.
-     * @param updateLockTimeout       Timeout for acquiring a lock when updating exchange rates.
+     * @param updateTimeout           Timeout for waiting until an added currency is published.
      * @param exchangeScale           The scale (precision) for exchange rate calculations.
+     * @param ratesMode               Defines when the exchange rates of added currencies are calculated.
+     * @param ratesCacheSize          Maximum number of base currencies cached in {@link RatesMode#LAZY} mode.
+     * @param snapshotFile            The local file the latest snapshot is written to and restored from.
+     * @param meterRegistry           The registry of the update metrics.
      */
     @Autowired
     public ExchangeRatesService(IExchangeApiService exchangeApi,
                                 IExchangeLoggingService exchangeLoggingService,
-                                @Value("${exchange.update.timeout}") long updateLockTimeout,
-                                @Value("${exchange.scale}") int exchangeScale) {
+                                @Value("${exchange.update.timeout}") long updateTimeout,
+                                @Value("${exchange.scale}") int exchangeScale,
+                                @Value("${exchange.rates.mode}") RatesMode ratesMode,
+                                @Value("${exchange.rates.cache.size}") int ratesCacheSize,
+                                ExchangeRatesSnapshotFile snapshotFile,
+                                MeterRegistry meterRegistry) {
         this.exchangeApi = exchangeApi;
         this.exchangeLoggingService = exchangeLoggingService;
-        this.updateLockTimeout = updateLockTimeout;
+        this.snapshotFile = snapshotFile;
+        this.updateTimeout = updateTimeout;
         this.exchangeScale = exchangeScale;
+        this.ratesMode = ratesMode;
+        this.ratesCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RatesKey, IExchangeRates> eldest) {
+                return size() > ratesCacheSize;
+            }
+        };
+        this.fetchTimer = fetchTimer(meterRegistry, "success");
+        this.fetchErrorTimer = fetchTimer(meterRegistry, "error");
+        this.buildTimer = Timer.builder("exchange.rates.build")
+                .description("Time to build and publish the exchange rates of added currencies from new data")
+                .register(meterRegistry);
+        this.addWaitTimer = Timer.builder("exchange.currency.add.wait")
+                .description("Time waiting until an added currency is published")
+                .register(meterRegistry);
+        this.addTimeoutCounter = Counter.builder("exchange.currency.add.timeout")
+                .description("Added currencies not published within the update timeout")
+                .register(meterRegistry);
+        Gauge.builder("exchange.rates.age", this, ExchangeRatesService::getExchangeRatesAge)
+                .description("Age of the published exchange rates data")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static Timer fetchTimer(final MeterRegistry meterRegistry, final String outcome) {
+        return Timer.builder("exchange.upstream.fetch")
+                .description("Latency of fetching exchange rates data from the external API")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     /**
@@ -59,12 +204,13 @@ public class ExchangeRatesService {
      * @return A set of currency codes.
      */
     public Set<String> getCurrencies() {
-        return exchangeRatesMap.keySet();
+        return snapshot.get().currencies();
     }
 
     /**
      * Adds a new currency to the exchange rates service.
-     * The currency is added only if it is supported by the external API.
+     * The currency is added only if it is supported by the external API. Currencies added concurrently are
+     * published with a single update by one of the calling threads, while the others wait for it.
      *
      * @param currencyCode The currency code to add.
      * @return A set of all currencies, including the newly added one.
@@ -73,23 +219,79 @@ public class ExchangeRatesService {
     public Set<String> addCurrency(final String currencyCode) {
         validate(currencyCode);
 
+        Set<String> currencies = getCurrencies();
+        if (currencies.contains(currencyCode)) {
+            return currencies;
+        }
+
+        var pendingCurrency = new PendingCurrency(currencyCode, new CompletableFuture<>());
+        pendingCurrencies.add(pendingCurrency);
+        addPendingCurrencies();
+
+        long start = System.nanoTime();
         try {
-            if (updateLock.tryLock(updateLockTimeout, TimeUnit.MILLISECONDS)) {
-                try {
-                    var exchangeSet = new HashSet<>(exchangeRatesMap.keySet());
-                    if (exchangeSet.add(currencyCode)) {
-                        this.exchangeRatesMap = buildExchangeRatesMap(exchangeSet, latestResponse, exchangeScale);
-                    }
+            return pendingCurrency.result().get(updateTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            addTimeoutCounter.increment();
+            throw new RuntimeException("Unable to add currency due to timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Unable to add currency due to thread interruption");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } finally {
+            addWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 
-                    return exchangeSet;
-                } finally {
-                    updateLock.unlock();
+    /**
+     * Adds all pending currencies with a single update. Only one thread adds currencies at a time; a thread that
+     * finds another one adding leaves its currency pending, and the adding thread picks it up before it stops.
+     */
+    private void addPendingCurrencies() {
+        while (!pendingCurrencies.isEmpty() && addingCurrencies.compareAndSet(false, true)) {
+            List<PendingCurrency> added = new ArrayList<>();
+            try {
+                PendingCurrency pendingCurrency;
+                while ((pendingCurrency = pendingCurrencies.poll()) != null) {
+                    added.add(pendingCurrency);
                 }
-            } else {
-                throw new RuntimeException("Unable to add currency due to timeout");
+
+                List<String> currencyCodes = added.stream().map(PendingCurrency::currencyCode).toList();
+                Set<String> currencies = publish(current -> withCurrencies(current, currencyCodes)).currencies();
+                logCurrencies(currencyCodes.stream().filter(currencies::contains).collect(Collectors.toSet()));
+                for (PendingCurrency addedCurrency : added) {
+                    if (currencies.contains(addedCurrency.currencyCode())) {
+                        addedCurrency.result().complete(currencies);
+                    } else {
+                        addedCurrency.result().completeExceptionally(
+                                new RuntimeException("Currency code is not supported"));
+                    }
+                }
+            } catch (RuntimeException e) {
+                added.forEach(addedCurrency -> addedCurrency.result().completeExceptionally(e));
+            } finally {
+                addingCurrencies.set(false);
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Unable to add currency due to thread interruption");
+            writeSnapshotFile();
+        }
+    }
+
+    /**
+     * Persists added currencies. A failure is logged and does not fail adding them, since they are published
+     * already; they are only missing after a restart.
+     *
+     * @param currencyCodes The added currency codes.
+     */
+    private void logCurrencies(final Set<String> currencyCodes) {
+        if (currencyCodes.isEmpty()) {
+            return;
+        }
+
+        try {
+            exchangeLoggingService.logCurrencies(currencyCodes);
+        } catch (RuntimeException e) {
+            logger.warning("Unable to log added currencies " + currencyCodes + " error message: " + e.getMessage());
         }
     }
 
@@ -101,38 +303,506 @@ public class ExchangeRatesService {
      * @throws RuntimeException if the currency is not supported or not available.
      */
     public IExchangeRates getExchangeRates(final String currencyCode) {
-        validate(currencyCode);
+        return getExchangeRatesSnapshot().apply(currencyCode);
+    }
 
-        IExchangeRates rates = exchangeRatesMap.get(currencyCode);
-        if (rates == null) {
+    /**
+     * Captures the current exchange rates, so exchange rates for several currencies can be retrieved consistently
+     * even if an update happens in the meantime.
+     *
+     * @return A function retrieving the exchange rates for a specific currency from the captured state. It throws
+     * RuntimeException if the currency is not supported or not available.
+     */
+    public Function<String, IExchangeRates> getExchangeRatesSnapshot() {
+        Snapshot current = snapshot.get();
+
+        return currencyCode -> {
+            validate(currencyCode, current.exchangeRates());
+
+            IExchangeRates rates = ratesMode == RatesMode.LAZY
+                    ? getLazyExchangeRates(currencyCode, current)
+                    : current.exchangeRatesMap().get(currencyCode);
+            if (rates == null) {
+                throw new RuntimeException("Currency code is not added to exchange service");
+            }
+
+            return rates;
+        };
+    }
+
+    /**
+     * Converts an amount from one currency to another.
+     *
+     * @param from   The currency code of the amount.
+     * @param to     The currency code to convert the amount to.
+     * @param amount The amount to convert.
+     * @return The conversion with the result rounded half up to the exchange scale.
+     * @throws RuntimeException if a currency is not supported or not available.
+     */
+    public Conversion convert(final String from, final String to, final BigDecimal amount) {
+        if (amount == null) {
+            throw new RuntimeException("Amount is required");
+        }
+
+        ConversionRate conversionRate = getConversionRate(from, to);
+        return new Conversion(conversionRate.timestamp(), from, to, conversionRate.rate(), amount,
+                convertAmount(amount, conversionRate.rate(), exchangeScale));
+    }
+
+    /**
+     * Converts amounts from one currency to another, all with the same exchange rate.
+     *
+     * @param from    The currency code of the amounts.
+     * @param to      The currency code to convert the amounts to.
+     * @param amounts The amounts to convert.
+     * @return The conversion with results in the order of amounts, rounded half up to the exchange scale.
+     * @throws RuntimeException if a currency is not supported or not available.
+     */
+    public BulkConversion convert(final String from, final String to, final List<BigDecimal> amounts) {
+        if (amounts == null) {
+            throw new RuntimeException("Amounts are required");
+        }
+
+        ConversionRate conversionRate = getConversionRate(from, to);
+        List<BigDecimal> results = new ArrayList<>(amounts.size());
+        for (BigDecimal amount : amounts) {
+            if (amount == null) {
+                throw new RuntimeException("Amounts are required");
+            }
+            results.add(convertAmount(amount, conversionRate.rate(), exchangeScale));
+        }
+
+        return new BulkConversion(conversionRate.timestamp(), from, to, conversionRate.rate(), results);
+    }
+
+    /**
+     * Retrieves the exchange rate of a currency against a base currency without building the exchange rates
+     * of the base currency. Already calculated exchange rates are used when present.
+     *
+     * @param baseCurrency The base currency code.
+     * @param currencyCode The currency code to get the exchange rate for.
+     * @return The exchange rate with the timestamp of the exchange rates data.
+     * @throws RuntimeException if a currency is not supported or not available.
+     */
+    private ConversionRate getConversionRate(final String baseCurrency, final String currencyCode) {
+        Snapshot current = snapshot.get();
+        IExchangeRates exchangeRates = current.exchangeRates();
+
+        validate(baseCurrency, exchangeRates);
+        validate(currencyCode, exchangeRates);
+        if (!current.currencies().contains(baseCurrency) || !current.currencies().contains(currencyCode)) {
             throw new RuntimeException("Currency code is not added to exchange service");
         }
 
+        return switch (ratesMode) {
+            case EAGER -> {
+                IExchangeRates rates = current.exchangeRatesMap().get(baseCurrency);
+                yield new ConversionRate(rates.timestamp(), rates.rates().get(currencyCode));
+            }
+            case COMPACT -> {
+                CompactExchangeRates compactRates = current.compactRates();
+                yield new ConversionRate(compactRates.timestamp(), compactRates.crossRate(
+                        compactRates.indexOf(currencyCode), compactRates.indexOf(baseCurrency), exchangeScale));
+            }
+            case LAZY -> {
+                IExchangeRates rates = getCachedRates(new RatesKey(current.generation(), baseCurrency));
+                yield rates != null ? new ConversionRate(rates.timestamp(), rates.rates().get(currencyCode))
+                        : new ConversionRate(exchangeRates.timestamp(), calculateRate(
+                                exchangeRates.rates().get(currencyCode), exchangeRates.rates().get(baseCurrency),
+                                exchangeScale));
+            }
+        };
+    }
+
+    /**
+     * Retrieves the exchange rates for a specific currency from the cache, calculating them from the given
+     * snapshot on a cache miss.
+     *
+     * @param currencyCode The currency code to fetch exchange rates for.
+     * @param current      The snapshot to calculate exchange rates from.
+     * @return The exchange rates for the given currency, or null if the currency is not added.
+     */
+    private IExchangeRates getLazyExchangeRates(final String currencyCode, final Snapshot current) {
+        if (!current.currencies().contains(currencyCode)) {
+            return null;
+        }
+
+        var key = new RatesKey(current.generation(), currencyCode);
+        IExchangeRates rates = getCachedRates(key);
+        if (rates == null) {
+            IExchangeRates exchangeRates = current.exchangeRates();
+            rates = new ExchangeRates(exchangeRates.timestamp(), currencyCode,
+                    buildExchangeRates(currencyCode, current.currencies(), exchangeRates, exchangeScale));
+            ratesCacheLock.lock();
+            try {
+                ratesCache.put(key, rates);
+            } finally {
+                ratesCacheLock.unlock();
+            }
+        }
+
         return rates;
     }
 
     /**
-     * Periodically fetches the latest exchange rates from the external API.
-     * This method is annotated with @Retryable to retry up to 3 times in case of failure.
-     * The schedule for this method is defined in the configuration property "update.exchange.scheduled.rate".
+     * Retrieves cached exchange rates. The access-ordered cache is guarded by a {@link ReentrantLock} rather than a
+     * monitor, so contended request threads do not pin the carrier when running on virtual threads.
+     *
+     * @param key The generation and the base currency of the exchange rates.
+     * @return The cached exchange rates, or null if they are not cached.
      */
-    @Retryable(value = RuntimeException.class, maxAttempts = 3)
-    @Scheduled(fixedRateString = "${update.exchange.scheduled.rate}")
-    protected void fetchExchangeRates() {
-        var response = exchangeApi.getExchangeRates();
+    private IExchangeRates getCachedRates(final RatesKey key) {
+        ratesCacheLock.lock();
+        try {
+            return ratesCache.get(key);
+        } finally {
+            ratesCacheLock.unlock();
+        }
+    }
 
+    /**
+     * Retrieves the generation of the exchange rates, which changes each time exchange rates data or the set of
+     * currencies is updated.
+     *
+     * @return The generation of the exchange rates.
+     */
+    public long getGeneration() {
+        return snapshot.get().generation();
+    }
+
+    /**
+     * Retrieves the time of the last update of exchange rates data from the external API, or of the last
+     * confirmation by the external API that it is not modified.
+     *
+     * @return The time of the last update in milliseconds since the epoch, or 0 if no update happened yet.
+     */
+    public long getLastUpdateTime() {
+        return Math.max(snapshot.get().updateTime(), lastNotModifiedTime);
+    }
+
+    /**
+     * Retrieves the time of the published exchange rates data, which for restored exchange rates data is the
+     * earliest time it can have been fetched from the external API.
+     *
+     * @return The timestamp in milliseconds since the epoch, or 0 if there is no exchange rates data yet.
+     */
+    long getExchangeRatesTime() {
+        IExchangeRates exchangeRates = snapshot.get().exchangeRates();
+        return exchangeRates == null ? 0 : TimeUnit.SECONDS.toMillis(exchangeRates.timestamp());
+    }
+
+    /**
+     * Calculates the age of the published exchange rates data from its timestamp.
+     *
+     * @return The age in seconds, or NaN if there is no exchange rates data yet.
+     */
+    double getExchangeRatesAge() {
+        IExchangeRates exchangeRates = snapshot.get().exchangeRates();
+        return exchangeRates == null ? Double.NaN
+                : System.currentTimeMillis() / 1000.0 - exchangeRates.timestamp();
+    }
+
+    /**
+     * Fetches the latest exchange rates from the external API and publishes them.
+     * This method is called by {@link ExchangeRatesUpdateScheduler}, which adapts the interval to the upstream quota
+     * and backs off on errors. If the external API returns the published exchange rates data as not modified,
+     * or exchange rates data with the same timestamp and rates, the rebuild, the snapshot file write and the logging
+     * are skipped.
+     *
+     * @return True if new exchange rates data is published; false if it is not modified.
+     * @throws RuntimeException if the exchange rates data is older than the published one or misses an added
+     *                          currency.
+     */
+    protected boolean fetchExchangeRates() {
+        long start = System.nanoTime();
+        IExchangeRates previous = snapshot.get().exchangeRates();
+        IExchangeRates response;
         try {
-            updateLock.lock();
+            response = exchangeApi.getExchangeRates(previous);
+        } catch (RuntimeException e) {
+            fetchErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        fetchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (previous != null && response.timestamp() < previous.timestamp()) {
+            throw new RuntimeException("Exchange rates data is older than the published exchange rates data");
+        }
+
+        if (!publishExchangeRates(response)) {
+            lastNotModifiedTime = System.currentTimeMillis();
+            return false;
+        }
+
+        exchangeLoggingService.logCurrencyRate(response);
+        return true;
+    }
+
+    /**
+     * Publishes exchange rates data fetched and persisted by another node of the cluster, without calling the
+     * external API or logging them again. Exchange rates data older than the published one is skipped.
+     *
+     * @param exchangeRates The exchange rates data.
+     * @return True if the exchange rates data is published; false if it is not newer than the published one.
+     */
+    public boolean receiveExchangeRates(final IExchangeRates exchangeRates) {
+        IExchangeRates previous = snapshot.get().exchangeRates();
+        if (previous != null && exchangeRates.timestamp() < previous.timestamp()) {
+            return false;
+        }
+
+        return publishExchangeRates(exchangeRates);
+    }
+
+    /**
+     * Publishes currencies added and persisted by another node of the cluster, without logging them again.
+     * Currencies already added or not supported are skipped, and nothing is published before the service is
+     * initialized.
+     *
+     * @param currencyCodes The currency codes added in the cluster.
+     */
+    public void receiveCurrencies(final Set<String> currencyCodes) {
+        List<String> codes = List.copyOf(currencyCodes);
+        publish(current -> current.exchangeRates() == null ? current : withCurrencies(current, codes));
+        writeSnapshotFile();
+    }
+
+    /**
+     * Publishes new exchange rates data and writes the snapshot file, unless it is the published exchange rates
+     * data or has the same timestamp and rates.
+     *
+     * @param exchangeRates The exchange rates data.
+     * @return True if the exchange rates data is published; false if it is unchanged.
+     */
+    private boolean publishExchangeRates(final IExchangeRates exchangeRates) {
+        IExchangeRates previous = snapshot.get().exchangeRates();
+        if (exchangeRates == previous || isUnchanged(previous, exchangeRates)) {
+            return false;
+        }
+
+        var compactRates = ratesMode == RatesMode.COMPACT ? CompactExchangeRates.of(exchangeRates) : null;
 
-            this.latestResponse = response;
-            if (!CollectionUtils.isEmpty(exchangeRatesMap.keySet())) { // check is current currencies is not empty
-                this.exchangeRatesMap = buildExchangeRatesMap(exchangeRatesMap.keySet(), latestResponse, exchangeScale);
+        buildTimer.record(() -> publish(current -> withExchangeRates(current, exchangeRates, compactRates)));
+        writeSnapshotFile();
+        return true;
+    }
+
+    /**
+     * Restores the exchange rates data and the added currencies from the snapshot file, or from the latest
+     * persisted exchange rates data and the persisted added currencies if the file is missing or corrupted.
+     * Added currencies not supported by the restored exchange rates data are skipped. If exchange rates data is
+     * fetched from the external API in the meantime, it is kept and only the currencies are restored. The time of
+     * the last update stays 0, since the restored exchange rates data is not fresh from the external API.
+     * A failure is logged, and the service is initialized by the first scheduled update instead.
+     */
+    @PostConstruct
+    protected void restoreExchangeRates() {
+        String source = "snapshot file";
+        try {
+            Optional<ExchangeRatesSnapshotFile.Content> content = readSnapshotFile();
+            if (content.isEmpty()) {
+                source = "database";
+                content = exchangeLoggingService.findLatestExchangeRates().map(exchangeRates ->
+                        new ExchangeRatesSnapshotFile.Content(0, exchangeRates,
+                                exchangeLoggingService.findCurrencies()));
             }
+            if (content.isEmpty()) {
+                return;
+            }
+
+            Snapshot restored = restore(content.get());
+            if (restored.generation() == content.get().generation()) {
+                // the file already has the restored snapshot
+                markSnapshotFileWritten(restored.generation());
+            }
+            logger.info("Restored exchange rates with timestamp " + restored.exchangeRates().timestamp() +
+                    " and " + restored.currencies().size() + " currencies from the " + source);
+        } catch (RuntimeException e) {
+            logger.warning("Unable to restore exchange rates from the " + source + " error message: " +
+                    e.getMessage());
+        }
+
+        writeSnapshotFile();
+    }
+
+    /**
+     * Publishes restored exchange rates data and currencies. The generation continues from the restored one.
+     *
+     * @param content The restored exchange rates data, currencies and generation.
+     * @return The published snapshot.
+     */
+    private Snapshot restore(final ExchangeRatesSnapshotFile.Content content) {
+        IExchangeRates exchangeRates = content.exchangeRates();
+        List<String> currencyCodes = List.copyOf(content.currencies());
+        var compactRates = ratesMode == RatesMode.COMPACT ? CompactExchangeRates.of(exchangeRates) : null;
+
+        return publish(current -> current.exchangeRates() != null
+                ? withCurrencies(current, currencyCodes)
+                : withRestoredExchangeRates(current, content.generation(), exchangeRates, compactRates,
+                        currencyCodes));
+    }
+
+    private Optional<ExchangeRatesSnapshotFile.Content> readSnapshotFile() {
+        try {
+            return snapshotFile.read();
+        } catch (IOException e) {
+            logger.warning("Unable to read snapshot file error message: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void markSnapshotFileWritten(final long generation) {
+        snapshotFileLock.lock();
+        try {
+            writtenGeneration = Math.max(writtenGeneration, generation);
         } finally {
-            updateLock.unlock();
+            snapshotFileLock.unlock();
         }
+    }
 
-        exchangeLoggingService.logCurrencyRate(response);
+    /**
+     * Writes the current snapshot to the snapshot file if it is newer than the last written one. Writes are
+     * serialized, and each one writes the snapshot current at that moment, so the file never goes back to an older
+     * generation. A failure is logged, and the file is written again with the next update.
+     */
+    private void writeSnapshotFile() {
+        if (!snapshotFile.isEnabled()) {
+            return;
+        }
+
+        snapshotFileLock.lock();
+        try {
+            Snapshot current = snapshot.get();
+            if (current.exchangeRates() != null && current.generation() > writtenGeneration) {
+                snapshotFile.write(new ExchangeRatesSnapshotFile.Content(current.generation(),
+                        current.exchangeRates(), current.currencies()));
+                writtenGeneration = current.generation();
+            }
+        } catch (IOException e) {
+            logger.warning("Unable to write snapshot file error message: " + e.getMessage());
+        } finally {
+            snapshotFileLock.unlock();
+        }
+    }
+
+    /**
+     * Registers a listener called each time a new generation of exchange rates data or currencies is published.
+     * The listener is called on the publishing thread, so it has to return quickly and must not throw.
+     *
+     * @param listener The listener to call.
+     */
+    public void addPublishListener(final Runnable listener) {
+        publishListeners.add(listener);
+    }
+
+    /**
+     * Publishes a new snapshot built from the current one, retrying if another update is published in the meantime.
+     * Publish listeners are called after a new snapshot is published.
+     *
+     * @param update The function building a new snapshot from the current one; returns the current snapshot
+     *               if nothing changes.
+     * @return The published snapshot.
+     */
+    private Snapshot publish(final UnaryOperator<Snapshot> update) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            Snapshot next = update.apply(current);
+            if (next == current) {
+                return next;
+            }
+            if (snapshot.compareAndSet(current, next)) {
+                publishListeners.forEach(Runnable::run);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Builds a snapshot with new exchange rates data, recalculating the exchange rates of added currencies.
+     * In {@link RatesMode#EAGER} mode only the rows and columns of changed currencies are recalculated if less than
+     * half of the added currencies changed.
+     *
+     * @param current       The current snapshot.
+     * @param exchangeRates The new exchange rates data.
+     * @param compactRates  The compact snapshot of the new exchange rates data in {@link RatesMode#COMPACT} mode.
+     * @return The new snapshot.
+     * @throws RuntimeException if the new exchange rates data misses an added currency.
+     */
+    private Snapshot withExchangeRates(final Snapshot current,
+                                       final IExchangeRates exchangeRates,
+                                       final CompactExchangeRates compactRates) {
+        Set<String> currencies = current.currencies();
+        if (!exchangeRates.rates().keySet().containsAll(currencies)) {
+            throw new RuntimeException("Exchange rates data misses added currencies: " + String.join(", ",
+                    currencies.stream().filter(currency -> !exchangeRates.rates().containsKey(currency)).sorted()
+                            .toList()));
+        }
+        Map<String, IExchangeRates> exchangeRatesMap = current.exchangeRatesMap();
+        // check is current currencies is not empty, in lazy mode exchange rates are calculated on request
+        if (ratesMode == RatesMode.EAGER && !currencies.isEmpty()) {
+            Set<String> changedCurrencies = changedCurrencies(current.exchangeRates(), exchangeRates);
+            exchangeRatesMap = changedCurrencies != null
+                    && 2 * changedCurrencies.stream().filter(currencies::contains).count() < currencies.size()
+                    ? updateExchangeRates(exchangeRatesMap, changedCurrencies, exchangeRates, exchangeScale)
+                    : buildExchangeRatesMap(currencies, exchangeRates, exchangeScale);
+        } else if (ratesMode == RatesMode.COMPACT && !currencies.isEmpty()) {
+            exchangeRatesMap = buildCompactExchangeRatesMap(currencies, compactRates, exchangeScale);
+        }
+
+        return new Snapshot(current.generation() + 1, exchangeRates, compactRates, currencies, exchangeRatesMap,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Builds a snapshot of the service not initialized yet from restored exchange rates data and currencies.
+     *
+     * @param current       The current snapshot, without exchange rates data.
+     * @param generation    The restored generation, 0 if unknown.
+     * @param exchangeRates The restored exchange rates data.
+     * @param compactRates  The compact snapshot of the restored exchange rates data in {@link RatesMode#COMPACT}
+     *                      mode.
+     * @param currencyCodes The restored currency codes.
+     * @return The new snapshot.
+     */
+    private Snapshot withRestoredExchangeRates(final Snapshot current,
+                                               final long generation,
+                                               final IExchangeRates exchangeRates,
+                                               final CompactExchangeRates compactRates,
+                                               final List<String> currencyCodes) {
+        Snapshot restored = withCurrencies(withExchangeRates(current, exchangeRates, compactRates), currencyCodes);
+
+        return new Snapshot(Math.max(current.generation() + 1, generation), exchangeRates, compactRates,
+                restored.currencies(), restored.exchangeRatesMap(), 0);
+    }
+
+    /**
+     * Builds a snapshot with added currencies. Currencies already added or not supported by the current exchange
+     * rates data are skipped.
+     *
+     * @param current       The current snapshot.
+     * @param currencyCodes The currency codes to add.
+     * @return The new snapshot, or the current one if no currency is added.
+     */
+    private Snapshot withCurrencies(final Snapshot current, final List<String> currencyCodes) {
+        var exchangeSet = new HashSet<>(current.currencies());
+        Map<String, IExchangeRates> exchangeRatesMap = current.exchangeRatesMap();
+        for (String currencyCode : currencyCodes) {
+            if (current.exchangeRates().rates().containsKey(currencyCode) && exchangeSet.add(currencyCode)
+                    && ratesMode == RatesMode.EAGER) {
+                exchangeRatesMap = addExchangeRates(exchangeRatesMap, currencyCode, current.exchangeRates(),
+                        exchangeScale);
+            }
+        }
+
+        if (exchangeSet.size() == current.currencies().size()) {
+            return current;
+        }
+        if (ratesMode == RatesMode.COMPACT) {
+            exchangeRatesMap = buildCompactExchangeRatesMap(exchangeSet, current.compactRates(), exchangeScale);
+        }
+
+        return new Snapshot(current.generation() + 1, current.exchangeRates(), current.compactRates(),
+                Collections.unmodifiableSet(exchangeSet), exchangeRatesMap, current.updateTime());
     }
 
     /**
@@ -141,7 +811,7 @@ public class ExchangeRatesService {
      * @return True if the service is initialized with valid exchange rates; false otherwise.
      */
     protected boolean isInitialized() {
-        return latestResponse != null;
+        return snapshot.get().exchangeRates() != null;
     }
 
     /**
@@ -151,11 +821,22 @@ public class ExchangeRatesService {
      * @throws RuntimeException if the service is not initialized or the currency is not supported.
      */
     protected void validate(final String currencyCode) {
-        if (!isInitialized()) {
+        validate(currencyCode, snapshot.get().exchangeRates());
+    }
+
+    /**
+     * Validates if the currency code is supported by the given exchange rates data.
+     *
+     * @param currencyCode  The currency code to validate.
+     * @param exchangeRates The exchange rates data, null if the service is not initialized.
+     * @throws RuntimeException if the service is not initialized or the currency is not supported.
+     */
+    private static void validate(final String currencyCode, final IExchangeRates exchangeRates) {
+        if (exchangeRates == null) {
             throw new RuntimeException("Exchange rates service is not initialized yet");
         }
 
-        Map<String, BigDecimal> rates = latestResponse.rates();
+        Map<String, BigDecimal> rates = exchangeRates.rates();
         if (rates == null || rates.isEmpty()) {
             throw new RuntimeException("Exchange rates are unavailable");
         }
@@ -173,16 +854,183 @@ public class ExchangeRatesService {
      * @param exchangeScale   The scale (precision) for exchange rate calculations.
      * @return A map where the keys are currency codes and the values are the corresponding exchange rates.
      */
-    private static Map<String, IExchangeRates> buildExchangeRatesMap(final Set<String> currencies,
-                                                                     final IExchangeRates exchangeRates,
-                                                                     final int exchangeScale) {
+    static Map<String, IExchangeRates> buildExchangeRatesMap(final Set<String> currencies,
+                                                             final IExchangeRates exchangeRates,
+                                                             final int exchangeScale) {
         Map<String, IExchangeRates> resultExchangeRatesMap = new HashMap<>();
         long timestamp = exchangeRates.timestamp();
         currencies.stream().forEach(currency -> resultExchangeRatesMap.put(currency,
                 new ExchangeRates(timestamp, currency, buildExchangeRates(currency,
                         currencies, exchangeRates, exchangeScale))));
 
-        return resultExchangeRatesMap;
+        return Collections.unmodifiableMap(resultExchangeRatesMap);
+    }
+
+    /**
+     * Builds a new map of exchange rates by adding a single currency to an existing one.
+     * Only the row of the new currency and its column in the existing rows are calculated, so the cost is 2N
+     * divisions instead of N^2 for a full rebuild. Already calculated rates are reused as is.
+     * The existing map must be built from the same exchange rates data.
+     *
+     * @param exchangeRatesMap The current map of exchange rates, which is left unchanged.
+     * @param newCurrency      The currency to add; must not be present in the current map.
+     * @param exchangeRates    The latest exchange rates data.
+     * @param exchangeScale    The scale (precision) for exchange rate calculations.
+     * @return A new map where the keys are currency codes and the values are the corresponding exchange rates.
+     */
+    static Map<String, IExchangeRates> addExchangeRates(final Map<String, IExchangeRates> exchangeRatesMap,
+                                                        final String newCurrency,
+                                                        final IExchangeRates exchangeRates,
+                                                        final int exchangeScale) {
+        Map<String, IExchangeRates> resultExchangeRatesMap = new HashMap<>();
+        Map<String, BigDecimal> newCurrencyRates = new HashMap<>();
+        Map<String, BigDecimal> latestRates = exchangeRates.rates();
+        long timestamp = exchangeRates.timestamp();
+        BigDecimal newCurrencyRate = latestRates.get(newCurrency);
+
+        exchangeRatesMap.forEach((currency, currencyExchangeRates) -> {
+            BigDecimal currencyRate = latestRates.get(currency);
+            Map<String, BigDecimal> rates = new HashMap<>(currencyExchangeRates.rates());
+            rates.put(newCurrency, calculateRate(newCurrencyRate, currencyRate, exchangeScale));
+            resultExchangeRatesMap.put(currency, new ExchangeRates(timestamp, currency, rates));
+            newCurrencyRates.put(currency, calculateRate(currencyRate, newCurrencyRate, exchangeScale));
+        });
+        newCurrencyRates.put(newCurrency, calculateRate(newCurrencyRate, newCurrencyRate, exchangeScale));
+        resultExchangeRatesMap.put(newCurrency, new ExchangeRates(timestamp, newCurrency, newCurrencyRates));
+
+        return Collections.unmodifiableMap(resultExchangeRatesMap);
+    }
+
+    /**
+     * Builds a new map of exchange rates from an existing one for new exchange rates data where only some rates
+     * changed. The rows of changed currencies are recalculated, and in the other rows only the columns of changed
+     * currencies, so the cost is about 2kN divisions for k changed currencies instead of N^2 for a full rebuild.
+     * The existing map must be built from exchange rates data that differs from the new one only in the rates of
+     * the changed currencies.
+     *
+     * @param exchangeRatesMap  The current map of exchange rates, which is left unchanged.
+     * @param changedCurrencies The currencies whose rates changed.
+     * @param exchangeRates     The new exchange rates data.
+     * @param exchangeScale     The scale (precision) for exchange rate calculations.
+     * @return A new map where the keys are currency codes and the values are the corresponding exchange rates.
+     */
+    static Map<String, IExchangeRates> updateExchangeRates(final Map<String, IExchangeRates> exchangeRatesMap,
+                                                           final Set<String> changedCurrencies,
+                                                           final IExchangeRates exchangeRates,
+                                                           final int exchangeScale) {
+        Map<String, IExchangeRates> resultExchangeRatesMap = new HashMap<>();
+        Map<String, BigDecimal> latestRates = exchangeRates.rates();
+        long timestamp = exchangeRates.timestamp();
+        Set<String> currencies = exchangeRatesMap.keySet();
+        List<String> changedColumns = changedCurrencies.stream().filter(currencies::contains).toList();
+
+        exchangeRatesMap.forEach((currency, currencyExchangeRates) -> {
+            Map<String, BigDecimal> rates;
+            if (changedCurrencies.contains(currency)) {
+                rates = buildExchangeRates(currency, currencies, exchangeRates, exchangeScale);
+            } else {
+                BigDecimal currencyRate = latestRates.get(currency);
+                rates = new HashMap<>(currencyExchangeRates.rates());
+                for (String changedCurrency : changedColumns) {
+                    rates.put(changedCurrency, calculateRate(latestRates.get(changedCurrency), currencyRate,
+                            exchangeScale));
+                }
+            }
+            resultExchangeRatesMap.put(currency, new ExchangeRates(timestamp, currency, rates));
+        });
+
+        return Collections.unmodifiableMap(resultExchangeRatesMap);
+    }
+
+    /**
+     * Finds the currencies whose rates differ between two exchange rates data. Rates are compared by value, so
+     * rates that differ only in scale are equal.
+     *
+     * @param previous      The previous exchange rates data, null if there is none.
+     * @param exchangeRates The new exchange rates data.
+     * @return The changed currencies, or null if there is no previous exchange rates data, or the base currency
+     * or the set of currencies differ.
+     */
+    static Set<String> changedCurrencies(final IExchangeRates previous, final IExchangeRates exchangeRates) {
+        if (previous == null || !Objects.equals(previous.baseCurrency(), exchangeRates.baseCurrency())) {
+            return null;
+        }
+
+        Map<String, BigDecimal> previousRates = previous.rates();
+        Map<String, BigDecimal> latestRates = exchangeRates.rates();
+        if (previousRates == null || latestRates == null || previousRates.size() != latestRates.size()) {
+            return null;
+        }
+
+        Set<String> changedCurrencies = new HashSet<>();
+        for (Map.Entry<String, BigDecimal> rate : latestRates.entrySet()) {
+            BigDecimal previousRate = previousRates.get(rate.getKey());
+            if (previousRate == null) {
+                return null;
+            }
+            if (previousRate.compareTo(rate.getValue()) != 0) {
+                changedCurrencies.add(rate.getKey());
+            }
+        }
+
+        return changedCurrencies;
+    }
+
+    /**
+     * Checks if new exchange rates data is the same as the previous one: the same timestamp, base currency and
+     * rates. Rates are compared rounded to {@link IExchangeLoggingService#STORAGE_SCALE}, so exchange rates data
+     * restored or received from the database equals the fetched exchange rates data it was logged from.
+     *
+     * @param previous      The previous exchange rates data, null if there is none.
+     * @param exchangeRates The new exchange rates data.
+     * @return True if the exchange rates data is unchanged; false otherwise.
+     */
+    static boolean isUnchanged(final IExchangeRates previous, final IExchangeRates exchangeRates) {
+        if (previous == null || previous.timestamp() != exchangeRates.timestamp()
+                || !Objects.equals(previous.baseCurrency(), exchangeRates.baseCurrency())) {
+            return false;
+        }
+
+        Map<String, BigDecimal> previousRates = previous.rates();
+        Map<String, BigDecimal> latestRates = exchangeRates.rates();
+        if (previousRates == null || latestRates == null || previousRates.size() != latestRates.size()) {
+            return false;
+        }
+
+        for (Map.Entry<String, BigDecimal> rate : latestRates.entrySet()) {
+            BigDecimal previousRate = previousRates.get(rate.getKey());
+            if (previousRate == null || storageRate(previousRate).compareTo(storageRate(rate.getValue())) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static BigDecimal storageRate(final BigDecimal rate) {
+        return rate.setScale(IExchangeLoggingService.STORAGE_SCALE, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Builds a map of exchange rates for the specified currencies as views over a compact snapshot.
+     * No exchange rates are calculated here, so the cost is O(N) instead of O(N^2).
+     *
+     * @param currencies      A set of currencies for which exchange rates are to be built.
+     * @param compactRates    The compact snapshot of the latest exchange rates data.
+     * @param exchangeScale   The scale (precision) for exchange rate calculations.
+     * @return A map where the keys are currency codes and the values are the corresponding exchange rates.
+     */
+    static Map<String, IExchangeRates> buildCompactExchangeRatesMap(final Set<String> currencies,
+                                                                    final CompactExchangeRates compactRates,
+                                                                    final int exchangeScale) {
+        Map<String, IExchangeRates> resultExchangeRatesMap = new HashMap<>();
+        int[] currencyIndices = compactRates.indicesOf(currencies);
+        for (int index : currencyIndices) {
+            resultExchangeRatesMap.put(compactRates.currency(index),
+                    compactRates.row(index, currencyIndices, exchangeScale));
+        }
+
+        return Collections.unmodifiableMap(resultExchangeRatesMap);
     }
 
     /**
@@ -201,12 +1049,35 @@ public class ExchangeRatesService {
         Map<String, BigDecimal> rates = new HashMap<>();
         Map<String, BigDecimal> latestRates = exchangeRates.rates();
         BigDecimal baseCurrencyRate = latestRates.get(baseCurrency);
-        currencies.stream().forEach(currency -> {
-            var currencyRate = latestRates.get(currency);
-            BigDecimal value = currencyRate.divide(baseCurrencyRate, exchangeScale, RoundingMode.HALF_UP);
-            rates.put(currency, value.stripTrailingZeros());
-        });
+        currencies.stream().forEach(currency -> rates.put(currency,
+                calculateRate(latestRates.get(currency), baseCurrencyRate, exchangeScale)));
 
         return rates;
     }
+
+    /**
+     * Converts an amount with an exchange rate.
+     *
+     * @param amount        The amount to convert.
+     * @param rate          The exchange rate.
+     * @param exchangeScale The scale (precision) for exchange rate calculations.
+     * @return The converted amount rounded half up to the given scale, without trailing zeros.
+     */
+    static BigDecimal convertAmount(final BigDecimal amount, final BigDecimal rate, final int exchangeScale) {
+        return amount.multiply(rate).setScale(exchangeScale, RoundingMode.HALF_UP).stripTrailingZeros();
+    }
+
+    /**
+     * Calculates the exchange rate of a currency against a base currency, both given against a common currency.
+     *
+     * @param currencyRate     The rate of the currency.
+     * @param baseCurrencyRate The rate of the base currency.
+     * @param exchangeScale    The scale (precision) for exchange rate calculations.
+     * @return The exchange rate rounded half up to the given scale, without trailing zeros.
+     */
+    static BigDecimal calculateRate(final BigDecimal currencyRate,
+                                    final BigDecimal baseCurrencyRate,
+                                    final int exchangeScale) {
+        return currencyRate.divide(baseCurrencyRate, exchangeScale, RoundingMode.HALF_UP).stripTrailingZeros();
+    }
 }
@@ -0,0 +1,221 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Local file with the latest exchange rates data, the added currencies and the generation of the exchange rates
+ * service, so the service can be restored on startup without reading the database.
+ * <p>
+ * The file is written to a temporary file and renamed atomically, so a reader sees either the previous or the new
+ * content. It is read through a memory mapping. Format, big-endian:
+ * <pre>
+ * int magic, short version, long generation, long timestamp, string baseCurrency,
+ * int rateCount, rateCount * (string currency, int scale, short length, byte[length] unscaledValue),
+ * int currencyCount, currencyCount * string currency, int crc32c
+ * </pre>
+ * where a string is a short length followed by UTF-8 bytes, and the CRC32C covers all preceding bytes.
+ */
+@Component
+public class ExchangeRatesSnapshotFile {
+
+    static final int MAGIC = 0x45585253;
+    static final short VERSION = 1;
+    private static final int MIN_SIZE = Integer.BYTES + Short.BYTES + 2 * Long.BYTES + Short.BYTES
+            + 2 * Integer.BYTES + Integer.BYTES;
+    private static final long MAX_SIZE = 16 * 1024 * 1024;
+
+    private final Path path;
+
+    /**
+     * Content of the file.
+     *
+     * @param generation    The generation of the exchange rates service.
+     * @param exchangeRates The latest exchange rates data.
+     * @param currencies    The set of added currencies.
+     */
+    public record Content(long generation, IExchangeRates exchangeRates, Set<String> currencies) {
+    }
+
+    /**
+     * Constructor for the ExchangeRatesSnapshotFile.
+     *
+     * @param file The path of the file, or an empty string to disable it.
+     */
+    @Autowired
+    public ExchangeRatesSnapshotFile(@Value("${exchange.snapshot.file}") String file) {
+        this.path = file == null || file.isBlank() ? null : Path.of(file);
+    }
+
+    /**
+     * Checks if the file is configured.
+     *
+     * @return True if exchange rates are written to and restored from the file; false otherwise.
+     */
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Reads the file.
+     *
+     * @return The content, or an empty optional if the file is disabled or does not exist.
+     * @throws IOException if the file cannot be read, is corrupted or has an unsupported version.
+     */
+    public Optional<Content> read() throws IOException {
+        if (path == null) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MIN_SIZE || size > MAX_SIZE) {
+                throw new IOException("Snapshot file is corrupted");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int checksumOffset = (int) size - Integer.BYTES;
+            var crc = new CRC32C();
+            crc.update(buffer.slice(0, checksumOffset));
+            if ((int) crc.getValue() != buffer.getInt(checksumOffset)) {
+                throw new IOException("Snapshot file is corrupted");
+            }
+
+            return Optional.of(decode(buffer.limit(checksumOffset)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Snapshot file is corrupted", e);
+        }
+    }
+
+    /**
+     * Writes the file, replacing the previous content atomically. Does nothing if the file is disabled.
+     *
+     * @param content The content to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(final Content content) throws IOException {
+        if (path == null) {
+            return;
+        }
+
+        byte[] bytes = encode(content);
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static byte[] encode(final Content content) throws IOException {
+        IExchangeRates exchangeRates = content.exchangeRates();
+        var bytes = new ByteArrayOutputStream(64 + 32 * exchangeRates.rates().size());
+        var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(content.generation());
+        out.writeLong(exchangeRates.timestamp());
+        writeString(out, exchangeRates.baseCurrency());
+
+        out.writeInt(exchangeRates.rates().size());
+        for (Map.Entry<String, BigDecimal> rate : exchangeRates.rates().entrySet()) {
+            byte[] unscaledValue = rate.getValue().unscaledValue().toByteArray();
+            writeString(out, rate.getKey());
+            out.writeInt(rate.getValue().scale());
+            out.writeShort(unscaledValue.length);
+            out.write(unscaledValue);
+        }
+
+        out.writeInt(content.currencies().size());
+        for (String currency : content.currencies()) {
+            writeString(out, currency);
+        }
+        out.flush();
+
+        var crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        return bytes.toByteArray();
+    }
+
+    private static Content decode(final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Snapshot file is corrupted");
+        }
+        if (buffer.getShort() != VERSION) {
+            throw new IOException("Snapshot file version is not supported");
+        }
+
+        long generation = buffer.getLong();
+        long timestamp = buffer.getLong();
+        String baseCurrency = readString(buffer);
+
+        int rateCount = buffer.getInt();
+        Map<String, BigDecimal> rates = new HashMap<>();
+        for (int i = 0; i < rateCount; i++) {
+            String currency = readString(buffer);
+            int scale = buffer.getInt();
+            byte[] unscaledValue = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(unscaledValue);
+            rates.put(currency, new BigDecimal(new BigInteger(unscaledValue), scale));
+        }
+
+        int currencyCount = buffer.getInt();
+        Set<String> currencies = new HashSet<>();
+        for (int i = 0; i < currencyCount; i++) {
+            currencies.add(readString(buffer));
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IOException("Snapshot file is corrupted");
+        }
+
+        return new Content(generation, new ExchangeRates(timestamp, baseCurrency, rates),
+                Collections.unmodifiableSet(currencies));
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
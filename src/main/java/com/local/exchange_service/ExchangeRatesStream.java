@@ -0,0 +1,465 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Pushes exchange rates to subscribers as server-sent events each time {@link ExchangeRatesService} publishes a new
+ * generation of exchange rates data or currencies.
+ * <p>
+ * A subscriber gets a {@code rates} event with the exchange rates of each subscribed base currency right away, and then
+ * a {@code delta} event with only the changed rates on each update. The event id is the generation. Events are encoded
+ * once per base currency and generation, and the same bytes are sent to all subscribers.
+ * <p>
+ * Events are sent by a bounded pool of threads, one subscriber at a time per thread. Updates for a subscriber that is
+ * still sending are conflated: only the latest exchange rates are sent once it catches up, as a {@code rates} event if
+ * it missed the generation a delta is based on. Conflated updates are counted by the {@code exchange.stream.conflated}
+ * counter, and subscribers by the {@code exchange.stream.subscribers} gauge.
+ * <p>
+ * A send that does not finish within the send timeout, such as to a client that stopped reading, completes the
+ * subscription with an error. The thread blocked in the send is replaced by an extra thread in the pool until the
+ * send returns, so a few stalled clients do not hold up the others. Timed out sends are counted by the
+ * {@code exchange.stream.send.timeouts} counter.
+ * <p>
+ * When {@code spring.threads.virtual.enabled} is set, events are sent by a virtual thread per subscriber instead of the
+ * bounded pool, so a slow subscriber blocks only its own thread.
+ */
+@Component
+public class ExchangeRatesStream {
+
+    private static final Logger logger = Logger.getLogger(ExchangeRatesStream.class.getName());
+
+    private static final MediaType EVENT_STREAM = MediaType.TEXT_EVENT_STREAM;
+
+    // marks an update without changed rates, nothing is sent to subscribers of the previous generation
+    private static final byte[] NO_CHANGE = new byte[0];
+
+    // states of the send of a subscriber checked by the watchdog
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int STALLED = 2;
+
+    private final ExchangeRatesService exchangeRatesService;
+    private final ObjectMapper objectMapper;
+    private final int maxSubscribers;
+    private final int threads;
+    private final long sendTimeout;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<String, Frame> frames = new ConcurrentHashMap<>();
+    private final AtomicBoolean broadcastScheduled = new AtomicBoolean();
+    private final ExecutorService dispatcher;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService watchdog;
+    private final ExecutorService closers;
+    private final Counter conflatedCounter;
+    private final Counter timeoutCounter;
+    private final ReentrantLock sendersLock = new ReentrantLock();
+    private int stalledSenders;
+
+    /**
+     * Encoded events of the exchange rates of a base currency in a generation.
+     *
+     * @param generation         The generation.
+     * @param previousGeneration The generation the delta is based on, -1 if there is no delta.
+     * @param exchangeRates      The exchange rates.
+     * @param rates              The {@code rates} event with all exchange rates.
+     * @param delta              The {@code delta} event with the changed exchange rates, null if there is no delta.
+     */
+    private record Frame(long generation,
+                         long previousGeneration,
+                         IExchangeRates exchangeRates,
+                         byte[] rates,
+                         byte[] delta) {
+    }
+
+    /**
+     * Exchange rates captured together with their generation.
+     */
+    private record CurrentRates(long generation, Function<String, IExchangeRates> exchangeRates) {
+    }
+
+    /**
+     * Subscriber with the latest update waiting to be sent. The sent generations are accessed only by the thread
+     * holding the sending flag. The send state and deadline of the event being sent are checked by the watchdog.
+     */
+    private static final class Subscriber {
+        private final Set<String> bases;
+        private final ResponseBodyEmitter emitter;
+        private final AtomicReference<Map<String, Frame>> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final Map<String, Long> sentGenerations = new HashMap<>();
+        private final AtomicInteger sendState = new AtomicInteger(IDLE);
+        private volatile long sendDeadline;
+
+        private Subscriber(Set<String> bases, ResponseBodyEmitter emitter) {
+            this.bases = bases;
+            this.emitter = emitter;
+        }
+    }
+
+    /**
+     * Constructor for the ExchangeRatesStream.
+     *
+     * @param exchangeRatesService The service publishing exchange rates.
+     * @param objectMapper         The object mapper used to serialize events.
+     * @param meterRegistry        The registry of the stream metrics.
+     * @param maxSubscribers       The maximum number of subscribers.
+     * @param threads              The number of platform threads sending events.
+     * @param sendTimeout          The maximum time in milliseconds to send an event to a subscriber.
+     * @param virtualThreads       Whether events are sent by virtual threads.
+     */
+    @Autowired
+    public ExchangeRatesStream(ExchangeRatesService exchangeRatesService,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${exchange.stream.max.subscribers}") int maxSubscribers,
+                               @Value("${exchange.stream.threads}") int threads,
+                               @Value("${exchange.stream.send.timeout}") long sendTimeout,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (sendTimeout <= 0) {
+            throw new IllegalArgumentException("Send timeout must be positive");
+        }
+
+        this.exchangeRatesService = exchangeRatesService;
+        this.objectMapper = objectMapper;
+        this.maxSubscribers = maxSubscribers;
+        this.threads = threads;
+        this.sendTimeout = TimeUnit.MILLISECONDS.toNanos(sendTimeout);
+        this.dispatcher = Executors.newSingleThreadExecutor(threads("exchange-stream-dispatcher", virtualThreads));
+        this.senders = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(threads("exchange-stream-sender", true))
+                : new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                threads("exchange-stream-sender", false));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(threads("exchange-stream-watchdog", false));
+        this.closers = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(threads("exchange-stream-closer", true))
+                : Executors.newCachedThreadPool(threads("exchange-stream-closer", false));
+        long period = Math.max(1, sendTimeout / 2);
+        watchdog.scheduleWithFixedDelay(this::expireStalledSends, period, period, TimeUnit.MILLISECONDS);
+        this.conflatedCounter = Counter.builder("exchange.stream.conflated")
+                .description("Updates replaced by a newer one before they were sent to a slow subscriber")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("exchange.stream.send.timeouts")
+                .description("Subscriptions completed because an event was not sent within the send timeout")
+                .register(meterRegistry);
+        Gauge.builder("exchange.stream.subscribers", subscribers, Set::size)
+                .description("Subscribers to exchange rates updates")
+                .register(meterRegistry);
+        exchangeRatesService.addPublishListener(this::scheduleBroadcast);
+    }
+
+    /**
+     * Subscribes to exchange rates updates. The exchange rates of the base currencies are sent right away. The
+     * subscriber is registered before the exchange rates are captured, so a generation published in between is sent
+     * by the next broadcast.
+     *
+     * @param bases   The base currency codes.
+     * @param emitter The emitter of the response events are written to.
+     * @throws RuntimeException if a base currency is not supported or not added, or there are too many subscribers.
+     */
+    public void subscribe(final Set<String> bases, final ResponseBodyEmitter emitter) {
+        if (bases == null || bases.isEmpty()) {
+            throw new RuntimeException("Base currency is required");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RuntimeException("Too many subscribers");
+        }
+
+        var subscriber = new Subscriber(Set.copyOf(bases), emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        Map<String, Frame> initial = new HashMap<>();
+        try {
+            CurrentRates current = currentRates();
+            for (String base : bases) {
+                initial.put(base, frame(base, current));
+            }
+        } catch (RuntimeException e) {
+            subscribers.remove(subscriber);
+            throw e;
+        }
+        offer(subscriber, initial);
+    }
+
+    /**
+     * Completes all subscriptions, so clients reconnect to another instance.
+     */
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        watchdog.shutdownNow();
+        closers.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private void scheduleBroadcast() {
+        if (subscribers.isEmpty() || !broadcastScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            dispatcher.execute(this::broadcast);
+        } catch (RejectedExecutionException e) {
+            broadcastScheduled.set(false);
+        }
+    }
+
+    /**
+     * Encodes the events of the latest generation for all subscribed base currencies and offers them to every
+     * subscriber. Publications during a broadcast are covered by the next one.
+     */
+    private void broadcast() {
+        broadcastScheduled.set(false);
+        CurrentRates current = currentRates();
+
+        Set<String> bases = new HashSet<>();
+        subscribers.forEach(subscriber -> bases.addAll(subscriber.bases));
+        Map<String, Frame> update = new HashMap<>();
+        for (String base : bases) {
+            try {
+                update.put(base, frame(base, current));
+            } catch (RuntimeException e) {
+                logger.warning("Unable to push exchange rates for " + base + " error message: " + e.getMessage());
+            }
+        }
+
+        subscribers.forEach(subscriber -> offer(subscriber, update));
+    }
+
+    private CurrentRates currentRates() {
+        while (true) {
+            long generation = exchangeRatesService.getGeneration();
+            var exchangeRates = exchangeRatesService.getExchangeRatesSnapshot();
+            if (generation == exchangeRatesService.getGeneration()) {
+                return new CurrentRates(generation, exchangeRates);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the events of a base currency for a generation, encoding them if they are not encoded yet. The events
+     * are encoded outside the map and stored only if no other thread stored events of the base currency meanwhile,
+     * so the encoding does not hold a lock of the map.
+     *
+     * @param base    The base currency code.
+     * @param current The exchange rates of the generation.
+     * @return The events, or the events of a newer generation if they are encoded already.
+     * @throws RuntimeException if the base currency is not supported or not added.
+     */
+    private Frame frame(final String base, final CurrentRates current) {
+        while (true) {
+            Frame previous = frames.get(base);
+            if (previous != null && previous.generation() >= current.generation()) {
+                return previous;
+            }
+
+            Frame frame = encode(base, current, previous);
+            if (previous == null ? frames.putIfAbsent(base, frame) == null : frames.replace(base, previous, frame)) {
+                return frame;
+            }
+        }
+    }
+
+    private Frame encode(final String base, final CurrentRates current, final Frame previous) {
+        IExchangeRates exchangeRates = current.exchangeRates().apply(base);
+        byte[] rates = event(current.generation(), "rates", exchangeRates);
+        if (previous == null) {
+            return new Frame(current.generation(), -1, exchangeRates, rates, null);
+        }
+
+        Map<String, BigDecimal> previousRates = previous.exchangeRates().rates();
+        Map<String, BigDecimal> changedRates = new HashMap<>();
+        exchangeRates.rates().forEach((currency, rate) -> {
+            BigDecimal previousRate = previousRates.get(currency);
+            if (previousRate == null || previousRate.compareTo(rate) != 0) {
+                changedRates.put(currency, rate);
+            }
+        });
+        byte[] delta = changedRates.isEmpty()
+                && exchangeRates.timestamp() == previous.exchangeRates().timestamp() ? NO_CHANGE
+                : event(current.generation(), "delta", new ExchangeRates(exchangeRates.timestamp(), base, changedRates));
+
+        return new Frame(current.generation(), previous.generation(), exchangeRates, rates, delta);
+    }
+
+    /**
+     * Encodes a server-sent event. The JSON data is written on a single line.
+     */
+    private byte[] event(final long generation, final String name, final IExchangeRates exchangeRates) {
+        try {
+            var event = new ByteArrayOutputStream(256 + 32 * exchangeRates.rates().size());
+            event.write(("id:" + generation + "\nevent:" + name + "\ndata:").getBytes(StandardCharsets.UTF_8));
+            event.write(objectMapper.writeValueAsBytes(exchangeRates));
+            event.write("\n\n".getBytes(StandardCharsets.UTF_8));
+            return event.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to serialize exchange rates", e);
+        }
+    }
+
+    private void offer(final Subscriber subscriber, final Map<String, Frame> update) {
+        if (subscriber.pending.getAndAccumulate(update, ExchangeRatesStream::merge) != null) {
+            conflatedCounter.increment();
+        }
+        if (subscriber.sending.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> send(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.sending.set(false);
+            }
+        }
+    }
+
+    private static Map<String, Frame> merge(final Map<String, Frame> pending, final Map<String, Frame> update) {
+        if (pending == null) {
+            return update;
+        }
+
+        Map<String, Frame> merged = new HashMap<>(pending);
+        update.forEach((base, frame) -> merged.merge(base, frame,
+                (pendingFrame, updateFrame) -> updateFrame.generation() >= pendingFrame.generation()
+                        ? updateFrame : pendingFrame));
+        return merged;
+    }
+
+    /**
+     * Sends the pending updates of a subscriber until there are none. A delta is sent only if the subscriber got the
+     * generation it is based on; otherwise all exchange rates are sent.
+     */
+    private void send(final Subscriber subscriber) {
+        try {
+            do {
+                Map<String, Frame> update;
+                while ((update = subscriber.pending.getAndSet(null)) != null) {
+                    for (String base : subscriber.bases) {
+                        Frame frame = update.get(base);
+                        Long sentGeneration = subscriber.sentGenerations.get(base);
+                        if (frame == null || sentGeneration != null && sentGeneration >= frame.generation()) {
+                            continue;
+                        }
+
+                        byte[] event = frame.delta() != null && sentGeneration != null
+                                && sentGeneration == frame.previousGeneration() ? frame.delta() : frame.rates();
+                        if (event.length > 0) {
+                            sendEvent(subscriber, event);
+                        }
+                        subscriber.sentGenerations.put(base, frame.generation());
+                    }
+                }
+                subscriber.sending.set(false);
+            } while (subscriber.pending.get() != null && subscriber.sending.compareAndSet(false, true));
+        } catch (IOException | RuntimeException e) {
+            subscribers.remove(subscriber);
+            try {
+                subscriber.emitter.completeWithError(e);
+            } catch (RuntimeException ignored) {
+                // the response is completed already
+            }
+        }
+    }
+
+    /**
+     * Sends an event to a subscriber under the send deadline checked by the watchdog.
+     *
+     * @throws RuntimeException if the send timed out, the subscription is completed by the watchdog already.
+     */
+    private void sendEvent(final Subscriber subscriber, final byte[] event) throws IOException {
+        subscriber.sendDeadline = System.nanoTime() + sendTimeout;
+        subscriber.sendState.set(SENDING);
+        try {
+            subscriber.emitter.send(event, EVENT_STREAM);
+        } finally {
+            if (!subscriber.sendState.compareAndSet(SENDING, IDLE)) {
+                resizeSenders(-1);
+            }
+        }
+        if (subscriber.sendState.get() != IDLE) {
+            throw new RuntimeException("Sending exchange rates timed out");
+        }
+    }
+
+    /**
+     * Completes the subscriptions with a send running past its deadline, and adds a thread to the pool for each
+     * sender blocked in such a send. The emitter completes only once the blocked send releases it, so it is completed
+     * on a closer thread and the watchdog keeps checking the other subscribers.
+     */
+    private void expireStalledSends() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.sendState.get() != SENDING || now - subscriber.sendDeadline < 0
+                    || !subscriber.sendState.compareAndSet(SENDING, STALLED)) {
+                continue;
+            }
+
+            resizeSenders(1);
+            timeoutCounter.increment();
+            subscribers.remove(subscriber);
+            logger.warning("Sending exchange rates timed out, subscription completed");
+            try {
+                closers.execute(() -> {
+                    try {
+                        subscriber.emitter.completeWithError(new RuntimeException("Sending exchange rates timed out"));
+                    } catch (RuntimeException ignored) {
+                        // the response is completed already
+                    }
+                });
+            } catch (RejectedExecutionException ignored) {
+                // the stream is shut down
+            }
+        }
+    }
+
+    /**
+     * Changes the number of stalled senders, keeping the pool size at the configured number of threads plus the
+     * senders blocked in a timed out send. Virtual threads are not pooled.
+     */
+    private void resizeSenders(final int change) {
+        sendersLock.lock();
+        try {
+            stalledSenders += change;
+            if (senders instanceof ThreadPoolExecutor pool) {
+                int size = threads + stalledSenders;
+                if (size > pool.getMaximumPoolSize()) {
+                    pool.setMaximumPoolSize(size);
+                    pool.setCorePoolSize(size);
+                } else {
+                    pool.setCorePoolSize(size);
+                    pool.setMaximumPoolSize(size);
+                }
+            }
+        } finally {
+            sendersLock.unlock();
+        }
+    }
+
+    private static ThreadFactory threads(final String name, final boolean virtual) {
+        return (virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon()).name(name + "-", 1).factory();
+    }
+}
@@ -0,0 +1,308 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.UpstreamRequestStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Schedules updates of exchange rates data from the external API within its monthly request quota.
+ * <p>
+ * Requests to the external API are counted per calendar month in UTC by {@link UpstreamRequestStore}, so the count
+ * survives restarts and is shared by the nodes of a cluster. After an update the next one is scheduled
+ * after the update rate, or later if the remaining requests spread evenly until the end of the month need a longer
+ * interval. When the quota is exhausted the next update is scheduled at the start of the next month. After a failed
+ * update the next one is scheduled with exponential backoff and jitter, but not later than the regular interval.
+ * <p>
+ * Metrics: {@code exchange.upstream.requests} counter, {@code exchange.upstream.quota.remaining} and
+ * {@code exchange.update.interval} gauges, {@code exchange.update.skipped} counter of updates with exchange rates
+ * data not modified and {@code exchange.update.failed} counter of failed updates.
+ * <p>
+ * In a cluster only the leader elected by {@link ExchangeRatesCluster} updates and counts requests; the other nodes
+ * check for the leadership every poll interval. A node that becomes the leader, including a single node on
+ * startup, reads the stored count and waits until the interval after the last update received from the previous
+ * leader, or after the timestamp of the restored exchange rates data, has passed.
+ * <p>
+ * The updates run on the {@link TaskScheduler} of the application, which uses virtual threads when
+ * {@code spring.threads.virtual.enabled} is set.
+ */
+@Component
+public class ExchangeRatesUpdateScheduler {
+
+    private static final Logger logger = Logger.getLogger(ExchangeRatesUpdateScheduler.class.getName());
+
+    private final ExchangeRatesService exchangeRatesService;
+    private final ExchangeRatesCluster cluster;
+    private final UpstreamRequestStore requestStore;
+    private final TaskScheduler taskScheduler;
+    private final Clock clock;
+    private final long updateRate;
+    private final int quota;
+    private final long initialBackoff;
+    private final Counter requestCounter;
+    private final Counter skippedCounter;
+    private final Counter failedCounter;
+    private volatile YearMonth month;
+    private volatile int requests;
+    private volatile long interval;
+    private volatile long nextUpdateTime;
+    private int failures;
+    private volatile boolean leader;
+    private final ReentrantLock scheduleLock = new ReentrantLock();
+    private ScheduledFuture<?> scheduledUpdate;
+    private boolean stopped;
+
+    /**
+     * Constructor for the ExchangeRatesUpdateScheduler.
+     *
+     * @param exchangeRatesService The service updating the exchange rates data.
+     * @param cluster              The cluster electing the node that updates the exchange rates data.
+     * @param requestStore         The storage of the monthly count of requests to the external API.
+     * @param taskScheduler        The scheduler running the updates.
+     * @param meterRegistry        The registry of the update metrics.
+     * @param updateRate           The minimum interval between updates in milliseconds.
+     * @param quota                The maximum number of requests to the external API per month.
+     * @param initialBackoff       The backoff after the first failed update in milliseconds, doubled on each
+     *                             subsequent failure.
+     */
+    @Autowired
+    public ExchangeRatesUpdateScheduler(ExchangeRatesService exchangeRatesService,
+                                        ExchangeRatesCluster cluster,
+                                        UpstreamRequestStore requestStore,
+                                        TaskScheduler taskScheduler,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${update.exchange.scheduled.rate}") long updateRate,
+                                        @Value("${exchange.update.quota}") int quota,
+                                        @Value("${exchange.update.backoff.initial}") long initialBackoff) {
+        this(exchangeRatesService, cluster, requestStore, taskScheduler, meterRegistry, Clock.systemUTC(), updateRate,
+                quota, initialBackoff);
+    }
+
+    ExchangeRatesUpdateScheduler(ExchangeRatesService exchangeRatesService,
+                                 ExchangeRatesCluster cluster,
+                                 UpstreamRequestStore requestStore,
+                                 TaskScheduler taskScheduler,
+                                 MeterRegistry meterRegistry,
+                                 Clock clock,
+                                 long updateRate,
+                                 int quota,
+                                 long initialBackoff) {
+        if (updateRate <= 0 || quota <= 0 || initialBackoff <= 0) {
+            throw new IllegalArgumentException("Update rate, quota and backoff must be positive");
+        }
+
+        this.exchangeRatesService = exchangeRatesService;
+        this.cluster = cluster;
+        this.requestStore = requestStore;
+        this.taskScheduler = taskScheduler;
+        this.clock = clock;
+        this.updateRate = updateRate;
+        this.quota = quota;
+        this.initialBackoff = initialBackoff;
+        this.month = YearMonth.now(clock.withZone(ZoneOffset.UTC));
+        this.interval = updateRate;
+        this.requestCounter = Counter.builder("exchange.upstream.requests")
+                .description("Requests to the external exchange rates API")
+                .register(meterRegistry);
+        this.skippedCounter = Counter.builder("exchange.update.skipped")
+                .description("Updates skipped because exchange rates data is not modified")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("exchange.update.failed")
+                .description("Failed updates of exchange rates data")
+                .register(meterRegistry);
+        Gauge.builder("exchange.upstream.quota.remaining", this,
+                        scheduler -> scheduler.remaining(YearMonth.now(scheduler.clock.withZone(ZoneOffset.UTC))))
+                .description("Requests to the external exchange rates API remaining this month")
+                .register(meterRegistry);
+        Gauge.builder("exchange.update.interval", this, scheduler -> scheduler.interval)
+                .description("Current interval between updates in milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedules the first update when the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        schedule(0);
+    }
+
+    /**
+     * Cancels the scheduled update.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduleLock.lock();
+        try {
+            stopped = true;
+            if (scheduledUpdate != null) {
+                scheduledUpdate.cancel(false);
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    /**
+     * Updates the exchange rates data and schedules the next update.
+     */
+    void update() {
+        Instant now = clock.instant();
+        if (!cluster.isLeader()) {
+            leader = false;
+            schedule(cluster.getPollInterval());
+            return;
+        }
+        if (!leader) {
+            leader = true;
+            loadRequests(now);
+            interval = interval(now);
+            long lastUpdateTime = Math.max(exchangeRatesService.getLastUpdateTime(),
+                    exchangeRatesService.getExchangeRatesTime());
+            long sinceLastUpdate = now.toEpochMilli() - lastUpdateTime;
+            if (sinceLastUpdate < interval) {
+                schedule(interval - sinceLastUpdate);
+                return;
+            }
+        }
+
+        long delay;
+        try {
+            countRequest(now);
+            if (!exchangeRatesService.fetchExchangeRates()) {
+                skippedCounter.increment();
+            }
+            failures = 0;
+            delay = interval(now);
+        } catch (RuntimeException e) {
+            failures++;
+            failedCounter.increment();
+            delay = remaining(month(now)) > 0 ? Math.min(interval(now), backoff(failures)) : interval(now);
+            logger.warning("Unable to update exchange rates, failures: " + failures +
+                    ", next update in " + delay + " ms, error message: " + e.getMessage());
+        }
+
+        interval = delay;
+        schedule(delay);
+    }
+
+    /**
+     * Estimates the time of the next update of exchange rates data, until which responses may be cached. On the
+     * leader this is the scheduled update, after the backoff if the last update failed; on the other nodes it is the
+     * current interval after the last update received from the leader.
+     *
+     * @return The time of the next update in milliseconds since the epoch.
+     */
+    public long getNextUpdateTime() {
+        return leader ? nextUpdateTime : exchangeRatesService.getLastUpdateTime() + interval;
+    }
+
+    /**
+     * Calculates the interval until the next update, spreading the remaining requests until the end of the month.
+     *
+     * @param now The current time.
+     * @return The interval in milliseconds.
+     */
+    long interval(final Instant now) {
+        YearMonth current = month(now);
+        long untilNextMonth = Duration.between(now, current.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC)
+                .toInstant()).toMillis();
+        int remaining = remaining(current);
+        if (remaining <= 0) {
+            return untilNextMonth;
+        }
+
+        return Math.max(updateRate, untilNextMonth / remaining);
+    }
+
+    /**
+     * Calculates the backoff after failed updates with equal jitter: a random value between half and the whole of
+     * the exponential backoff.
+     *
+     * @param failures The number of consecutive failed updates.
+     * @return The backoff in milliseconds.
+     */
+    long backoff(final int failures) {
+        long exponential = initialBackoff << Math.min(failures - 1, 20);
+        return exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1);
+    }
+
+    /**
+     * Retrieves the number of requests to the external API remaining in a month.
+     *
+     * @param current The month.
+     * @return The number of remaining requests.
+     */
+    int remaining(final YearMonth current) {
+        return current.equals(month) ? Math.max(0, quota - requests) : quota;
+    }
+
+    /**
+     * Reads the stored count of requests in the current month. A failure is logged, and the count of this node is
+     * kept.
+     */
+    private void loadRequests(final Instant now) {
+        YearMonth current = month(now);
+        try {
+            requests = requestStore.find(current);
+            month = current;
+        } catch (RuntimeException e) {
+            logger.warning("Unable to read the count of requests to the external API, error message: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Counts a request in the stored count. A failure is logged and the request is counted by this node only, so
+     * the update is not blocked by the database.
+     */
+    private void countRequest(final Instant now) {
+        YearMonth current = month(now);
+        if (!current.equals(month)) {
+            requests = 0;
+            month = current;
+        }
+        requestCounter.increment();
+        try {
+            requests = Math.max(requests + 1, requestStore.increment(current));
+        } catch (RuntimeException e) {
+            requests++;
+            logger.warning("Unable to store the count of requests to the external API, error message: " +
+                    e.getMessage());
+        }
+    }
+
+    private void schedule(final long delay) {
+        scheduleLock.lock();
+        try {
+            if (!stopped) {
+                Instant next = clock.instant().plusMillis(delay);
+                nextUpdateTime = next.toEpochMilli();
+                scheduledUpdate = taskScheduler.schedule(this::update, next);
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    private static YearMonth month(final Instant instant) {
+        return YearMonth.from(instant.atZone(ZoneOffset.UTC));
+    }
+}
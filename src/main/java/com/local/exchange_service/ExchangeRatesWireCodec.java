@@ -0,0 +1,129 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the exchange rates of a base currency for the
+ * {@value #MEDIA_TYPE} representation of {@code GET /exchange-rates}.
+ * <p>
+ * Currency codes are written once as a dictionary in alphabetical order, followed by the rates in the same order as
+ * fixed-point values, a scale and a long unscaled value each, so a client decodes them without parsing text. Rates
+ * with more than 18 significant digits are rounded to 18. Format, big-endian:
+ * <pre>
+ * byte version, long timestamp, string baseCurrency, short count, count * string currency,
+ * count * (byte scale, long unscaledValue)
+ * </pre>
+ * where a string is a short length followed by UTF-8 bytes.
+ */
+public final class ExchangeRatesWireCodec {
+
+    /**
+     * The media type of the encoded exchange rates.
+     */
+    public static final String MEDIA_TYPE = "application/vnd.exchange-rates.compact";
+
+    static final byte VERSION = 1;
+    private static final MathContext PRECISION = new MathContext(18, RoundingMode.HALF_UP);
+
+    private ExchangeRatesWireCodec() {
+    }
+
+    /**
+     * Encodes the exchange rates of a base currency.
+     *
+     * @param exchangeRates The exchange rates to encode.
+     * @return The encoded exchange rates.
+     * @throws RuntimeException if a rate does not fit into the format.
+     */
+    public static byte[] encode(final IExchangeRates exchangeRates) {
+        List<Map.Entry<String, BigDecimal>> rates = exchangeRates.rates().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + rates.size() * 14);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(VERSION);
+            output.writeLong(exchangeRates.timestamp());
+            writeString(output, exchangeRates.baseCurrency());
+            output.writeShort(rates.size());
+            for (Map.Entry<String, BigDecimal> rate : rates) {
+                writeString(output, rate.getKey());
+            }
+            for (Map.Entry<String, BigDecimal> rate : rates) {
+                BigDecimal value = rate.getValue();
+                if (value.unscaledValue().bitLength() >= Long.SIZE) {
+                    value = value.round(PRECISION);
+                }
+                if (value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) {
+                    throw new RuntimeException("Rate of " + rate.getKey() + " is out of range of the compact format");
+                }
+                output.writeByte(value.scale());
+                output.writeLong(value.unscaledValue().longValue());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to encode exchange rates", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes exchange rates encoded by {@link #encode(IExchangeRates)}.
+     *
+     * @param encoded The encoded exchange rates.
+     * @return The decoded exchange rates.
+     * @throws RuntimeException if the encoded exchange rates are malformed or of an unsupported version.
+     */
+    public static IExchangeRates decode(final byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        try {
+            if (buffer.get() != VERSION) {
+                throw new RuntimeException("Unsupported version of encoded exchange rates");
+            }
+            long timestamp = buffer.getLong();
+            String baseCurrency = readString(buffer);
+            int count = Short.toUnsignedInt(buffer.getShort());
+            String[] currencies = new String[count];
+            for (int i = 0; i < count; i++) {
+                currencies[i] = readString(buffer);
+            }
+            Map<String, BigDecimal> rates = HashMap.newHashMap(count);
+            for (String currency : currencies) {
+                int scale = buffer.get();
+                rates.put(currency, BigDecimal.valueOf(buffer.getLong(), scale));
+            }
+            if (buffer.hasRemaining()) {
+                throw new RuntimeException("Encoded exchange rates have trailing bytes");
+            }
+
+            return new ExchangeRates(timestamp, baseCurrency, rates);
+        } catch (BufferUnderflowException e) {
+            throw new RuntimeException("Encoded exchange rates are truncated", e);
+        }
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
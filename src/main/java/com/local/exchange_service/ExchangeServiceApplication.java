@@ -1,15 +1,15 @@
 package com.local.exchange_service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
 @EnableScheduling
-@EnableRetry
 public class ExchangeServiceApplication {
 
 	public static void main(String[] args) {
@@ -17,8 +17,12 @@ public class ExchangeServiceApplication {
 	}
 
 	@Bean
-	public RestTemplate restTemplate() {
-		return new RestTemplate();
+	public RestTemplate restTemplate(@Value("${external.openexchangerates.connectTimeout:5000}") int connectTimeout,
+									 @Value("${external.openexchangerates.readTimeout:10000}") int readTimeout) {
+		var requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(connectTimeout);
+		requestFactory.setReadTimeout(readTimeout);
+		return new RestTemplate(requestFactory);
 	}
 
 }
@@ -0,0 +1,45 @@
+package com.local.exchange_service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.util.Set;
+
+/**
+ * REST controller pushing exchange rates updates as server-sent events.
+ */
+@RestController
+public class ExchangeStreamController {
+
+    private final ExchangeRatesStream exchangeRatesStream;
+    private final long timeout;
+
+    @Autowired
+    public ExchangeStreamController(ExchangeRatesStream exchangeRatesStream,
+                                    @Value("${exchange.stream.timeout}") long timeout) {
+        this.exchangeRatesStream = exchangeRatesStream;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Exchange rates of the base currencies right away, then the changed rates on each update. The subscription is
+     * closed after the timeout, and the client reconnects.
+     */
+    @GetMapping(value = "/exchange-rates/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> streamExchangeRates(@RequestParam("bases") Set<String> bases) {
+        var emitter = new ResponseBodyEmitter(timeout);
+        exchangeRatesStream.subscribe(bases, emitter);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .cacheControl(CacheControl.noStore())
+                .body(emitter);
+    }
+}
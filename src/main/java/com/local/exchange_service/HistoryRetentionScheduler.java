@@ -0,0 +1,112 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.HistoryRetentionService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Schedules the retention of the exchange rates history by {@link HistoryRetentionService} every
+ * {@code exchange.retention.interval} milliseconds, starting when the application is ready.
+ * <p>
+ * In a cluster only the leader elected by {@link ExchangeRatesCluster} runs the retention, so partitions are not
+ * created and dropped by several nodes at once; the other nodes check for the leadership every poll interval.
+ */
+@Component
+public class HistoryRetentionScheduler {
+
+    private static final Logger logger = Logger.getLogger(HistoryRetentionScheduler.class.getName());
+
+    private final HistoryRetentionService historyRetentionService;
+    private final ExchangeRatesCluster cluster;
+    private final TaskScheduler taskScheduler;
+    private final long interval;
+    private final ReentrantLock scheduleLock = new ReentrantLock();
+    private ScheduledFuture<?> scheduledRun;
+    private boolean stopped;
+
+    /**
+     * Constructor for the HistoryRetentionScheduler.
+     *
+     * @param historyRetentionService The service deleting the old exchange rates history.
+     * @param cluster                 The cluster electing the node that runs the retention.
+     * @param taskScheduler           The scheduler running the retention.
+     * @param interval                The interval between runs in milliseconds.
+     */
+    @Autowired
+    public HistoryRetentionScheduler(HistoryRetentionService historyRetentionService,
+                                     ExchangeRatesCluster cluster,
+                                     TaskScheduler taskScheduler,
+                                     @Value("${exchange.retention.interval}") long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Retention interval must be positive");
+        }
+
+        this.historyRetentionService = historyRetentionService;
+        this.cluster = cluster;
+        this.taskScheduler = taskScheduler;
+        this.interval = interval;
+    }
+
+    /**
+     * Schedules the first run when the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        schedule(0);
+    }
+
+    /**
+     * Cancels the scheduled run.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduleLock.lock();
+        try {
+            stopped = true;
+            if (scheduledRun != null) {
+                scheduledRun.cancel(false);
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    /**
+     * Runs the retention on the leader and schedules the next run.
+     */
+    void run() {
+        if (!cluster.isLeader()) {
+            schedule(cluster.getPollInterval());
+            return;
+        }
+
+        try {
+            historyRetentionService.run();
+        } catch (RuntimeException e) {
+            logger.warning("Unable to run the retention of exchange rates history, next run in " + interval +
+                    " ms, error message: " + e.getMessage());
+        }
+        schedule(interval);
+    }
+
+    private void schedule(final long delay) {
+        scheduleLock.lock();
+        try {
+            if (!stopped) {
+                scheduledRun = taskScheduler.schedule(this::run, Instant.now().plusMillis(delay));
+            }
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.SerializedExchangeRates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Cache of exchange rates serialized to response bodies in each {@link Encoding}.
+ * The exchange rates of a base currency are serialized on the first request for an encoding within a generation of
+ * exchange rates data, and the same bytes are returned until {@link ExchangeRatesService} publishes a new
+ * generation.
+ */
+@Component
+public class SerializedExchangeRatesCache {
+
+    private final ExchangeRatesService exchangeRatesService;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    private volatile Generation current = new Generation(-1);
+
+    /**
+     * Defines how exchange rates are encoded in a response body.
+     */
+    public enum Encoding {
+        /**
+         * JSON object, the default.
+         */
+        JSON(MediaType.APPLICATION_JSON),
+        /**
+         * The same object as JSON in CBOR, with the rates as decimal fractions.
+         */
+        CBOR(MediaType.parseMediaType("application/cbor")),
+        /**
+         * The binary layout of {@link ExchangeRatesWireCodec}.
+         */
+        COMPACT(MediaType.parseMediaType(ExchangeRatesWireCodec.MEDIA_TYPE));
+
+        private final MediaType mediaType;
+
+        Encoding(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * Retrieves the media type of the encoded response body.
+         *
+         * @return The media type.
+         */
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Selects the encoding of a request by its accepted media types: the one named by the accepted media type
+         * with the highest quality, or {@link #JSON} if only wildcards or no media types are accepted.
+         *
+         * @param accepted The media types of the {@code Accept} header.
+         * @return The encoding of the response body.
+         */
+        public static Encoding of(final List<MediaType> accepted) {
+            List<MediaType> byQuality = new ArrayList<>(accepted);
+            byQuality.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+            for (MediaType mediaType : byQuality) {
+                for (Encoding encoding : values()) {
+                    if (mediaType.getQualityValue() > 0 && mediaType.equalsTypeAndSubtype(encoding.mediaType)) {
+                        return encoding;
+                    }
+                }
+            }
+
+            return JSON;
+        }
+    }
+
+    /**
+     * Serialized exchange rates of a single generation of exchange rates data.
+     */
+    private static final class Generation {
+        private final long generation;
+        private final Map<Encoding, Map<String, SerializedExchangeRates>> exchangeRates = new EnumMap<>(Encoding.class);
+
+        private Generation(long generation) {
+            this.generation = generation;
+            for (Encoding encoding : Encoding.values()) {
+                exchangeRates.put(encoding, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Constructor for the SerializedExchangeRatesCache.
+     *
+     * @param exchangeRatesService The service providing exchange rates.
+     * @param objectMapper         The object mapper used to serialize JSON response bodies; CBOR response bodies
+     *                             are serialized with a copy of its configuration.
+     */
+    @Autowired
+    public SerializedExchangeRatesCache(ExchangeRatesService exchangeRatesService, ObjectMapper objectMapper) {
+        this.exchangeRatesService = exchangeRatesService;
+        this.objectMapper = objectMapper;
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    /**
+     * Retrieves the exchange rates for a specific currency serialized to JSON.
+     *
+     * @param currencyCode The currency code to fetch exchange rates for.
+     * @return The serialized exchange rates for the given currency.
+     * @throws RuntimeException if the currency is not supported or not available.
+     */
+    public SerializedExchangeRates getExchangeRates(final String currencyCode) {
+        return getExchangeRates(currencyCode, Encoding.JSON);
+    }
+
+    /**
+     * Retrieves the serialized exchange rates for a specific currency.
+     *
+     * @param currencyCode The currency code to fetch exchange rates for.
+     * @param encoding     The encoding of the serialized exchange rates.
+     * @return The serialized exchange rates for the given currency.
+     * @throws RuntimeException if the currency is not supported or not available.
+     */
+    public SerializedExchangeRates getExchangeRates(final String currencyCode, final Encoding encoding) {
+        long generation = exchangeRatesService.getGeneration();
+        Generation cached = current;
+        if (cached.generation == generation) {
+            SerializedExchangeRates serialized = cached.exchangeRates.get(encoding).get(currencyCode);
+            if (serialized != null) {
+                return serialized;
+            }
+        }
+
+        SerializedExchangeRates serialized = serialize(exchangeRatesService.getExchangeRates(currencyCode), encoding);
+        // cache only if the exchange rates are not changed in the meantime
+        if (exchangeRatesService.getGeneration() == generation) {
+            if (cached.generation != generation) {
+                cached = new Generation(generation);
+                current = cached;
+            }
+            cached.exchangeRates.get(encoding).put(currencyCode, serialized);
+        }
+
+        return serialized;
+    }
+
+    /**
+     * Serializes the exchange rates and derives a strong entity tag from the timestamp and the content.
+     *
+     * @param exchangeRates The exchange rates to serialize.
+     * @param encoding      The encoding of the serialized exchange rates.
+     * @return The serialized exchange rates.
+     */
+    SerializedExchangeRates serialize(final IExchangeRates exchangeRates, final Encoding encoding) {
+        try {
+            byte[] body = switch (encoding) {
+                case JSON -> objectMapper.writeValueAsBytes(exchangeRates);
+                case CBOR -> cborMapper.writeValueAsBytes(exchangeRates);
+                case COMPACT -> ExchangeRatesWireCodec.encode(exchangeRates);
+            };
+            CRC32 checksum = new CRC32();
+            checksum.update(body);
+            String eTag = "\"" + Long.toHexString(exchangeRates.timestamp()) + "-"
+                    + Long.toHexString(checksum.getValue()) + "\"";
+
+            return new SerializedExchangeRates(exchangeRates.timestamp(), eTag, body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unable to serialize exchange rates", e);
+        }
+    }
+}
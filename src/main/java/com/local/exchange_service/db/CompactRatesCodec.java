@@ -0,0 +1,127 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.interfaces.IExchangeLoggingService;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Encoding of exchange rates into the compact columnar format of {@code rate_snapshot}.
+ * The rates are stored as big-endian fixed-point longs with {@value #SCALE} decimal places, the same precision as
+ * {@code exchange_rate.rate}, ordered by the currencies of a versioned dictionary. Currencies of the dictionary
+ * that are missing in a snapshot are stored as {@link Long#MIN_VALUE}.
+ */
+public final class CompactRatesCodec {
+
+    /**
+     * Number of decimal places of the stored rates.
+     */
+    public static final int SCALE = IExchangeLoggingService.STORAGE_SCALE;
+
+    private static final long MISSING = Long.MIN_VALUE;
+    private static final String SEPARATOR = ",";
+
+    private CompactRatesCodec() {
+    }
+
+    /**
+     * Encodes exchange rates in the order of a dictionary.
+     *
+     * @param dictionary The currencies of the dictionary; must contain every currency of the rates.
+     * @param rates      The rates to encode.
+     * @return The encoded rates, 8 bytes per currency of the dictionary.
+     * @throws RuntimeException if a currency is missing in the dictionary or a rate does not fit into the format.
+     */
+    public static byte[] encode(final List<String> dictionary, final Map<String, BigDecimal> rates) {
+        ByteBuffer buffer = ByteBuffer.allocate(dictionary.size() * Long.BYTES);
+        int encoded = 0;
+        for (String currency : dictionary) {
+            BigDecimal rate = rates.get(currency);
+            if (rate == null) {
+                buffer.putLong(MISSING);
+                continue;
+            }
+
+            try {
+                buffer.putLong(rate.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+            } catch (ArithmeticException e) {
+                throw new RuntimeException("Rate of " + currency + " is out of range of the compact format");
+            }
+            encoded++;
+        }
+
+        if (encoded != rates.size()) {
+            throw new RuntimeException("Currency code is missing in the dictionary");
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Decodes exchange rates encoded in the order of a dictionary.
+     *
+     * @param dictionary The currencies of the dictionary the rates were encoded with.
+     * @param encoded    The encoded rates.
+     * @return A map where the keys are currency codes and the values are the rates with {@value #SCALE} decimal
+     * places.
+     */
+    public static Map<String, BigDecimal> decode(final List<String> dictionary, final byte[] encoded) {
+        if (encoded.length != dictionary.size() * Long.BYTES) {
+            throw new RuntimeException("Encoded rates do not match the dictionary");
+        }
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        for (String currency : dictionary) {
+            long value = buffer.getLong();
+            if (value != MISSING) {
+                rates.put(currency, BigDecimal.valueOf(value, SCALE));
+            }
+        }
+
+        return rates;
+    }
+
+    /**
+     * Extends a dictionary with new currencies. Existing currencies keep their positions, and the extended
+     * dictionary is stored with a new version.
+     *
+     * @param dictionary The currencies of the current dictionary.
+     * @param currencies The currencies that must be present in the dictionary.
+     * @return The same dictionary if it contains all currencies; otherwise a new dictionary with the new currencies
+     * appended in alphabetical order.
+     */
+    public static List<String> extend(final List<String> dictionary, final Collection<String> currencies) {
+        Set<String> known = new HashSet<>(dictionary);
+        List<String> added = currencies.stream().filter(currency -> !known.contains(currency)).sorted().toList();
+        if (added.isEmpty()) {
+            return dictionary;
+        }
+
+        List<String> extended = new ArrayList<>(dictionary);
+        extended.addAll(added);
+        return Collections.unmodifiableList(extended);
+    }
+
+    /**
+     * Joins the currencies of a dictionary into its stored form.
+     *
+     * @param dictionary The currencies of the dictionary.
+     * @return The comma separated currency codes.
+     */
+    public static String join(final List<String> dictionary) {
+        return String.join(SEPARATOR, dictionary);
+    }
+
+    /**
+     * Splits the stored form of a dictionary into its currencies.
+     *
+     * @param currencies The comma separated currency codes.
+     * @return The currencies of the dictionary.
+     */
+    public static List<String> split(final String currencies) {
+        return currencies.isEmpty() ? List.of() : List.of(currencies.split(SEPARATOR));
+    }
+}
@@ -0,0 +1,11 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.CurrencyDictionary;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface CurrencyDictionaryRepository extends JpaRepository<CurrencyDictionary, Integer> {
+
+    Optional<CurrencyDictionary> findTopByOrderByVersionDesc();
+}
@@ -2,6 +2,15 @@ package com.local.exchange_service.db;
 
 import com.local.exchange_service.db.entities.CurrencyRate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface CurrencyRateRepository extends JpaRepository<CurrencyRate, Long> {
+
+    @Query("select max(cr.timestamp) from CurrencyRate cr where cr.timestamp <= :at")
+    Optional<Long> findLatestTimestamp(@Param("at") long at);
+
+    Optional<CurrencyRate> findTopByOrderByTimestampDescIdDesc();
 }
@@ -0,0 +1,6 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.DailyRateRollup;
+
+public interface DailyRateRollupRepository extends RateRollupRepository<DailyRateRollup> {
+}
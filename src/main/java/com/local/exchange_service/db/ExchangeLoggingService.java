@@ -1,42 +1,327 @@
 package com.local.exchange_service.db;
 
 import com.local.exchange_service.db.entities.CurrencyRate;
+import com.local.exchange_service.db.entities.TrackedCurrency;
 import com.local.exchange_service.interfaces.IExchangeLoggingService;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Service class responsible for logging currency exchange rates.
+ * Exchange rates are put into a bounded queue and persisted in batches by a single writer thread, so the caller
+ * does not wait for the database. When the queue is full the caller waits up to the offer timeout, and the exchange
+ * rates are dropped if the queue is still full. Queued exchange rates are persisted before the service is destroyed.
+ * <p>
+ * In {@link StorageMode#ROWS} mode exchange rates are stored as a {@link CurrencyRate} with a row per currency.
+ * In {@link StorageMode#COLUMNAR} mode they are stored by {@link RateSnapshotStore} as a single row per timestamp.
+ * In both modes the {@link RateRollupStore} rollups are updated in the same transaction.
+ * <p>
+ * Added currencies are persisted synchronously as {@link TrackedCurrency} rows, and together with the latest
+ * persisted exchange rates they are read back to restore the exchange service on startup. In the clustered mode
+ * both are announced to the other nodes by {@link ExchangeRatesNotifier} in the persisting transaction.
+ * <p>
+ * Metrics: {@code exchange.logging.queue.size} gauge, {@code exchange.logging.enqueue} timer of queueing exchange
+ * rates including the wait for free space, {@code exchange.logging.flush} timer of batch writes,
+ * {@code exchange.logging.dropped} and {@code exchange.logging.failed} counters of exchange rates not persisted.
+ * <p>
+ * The writer is a virtual thread when {@code spring.threads.virtual.enabled} is set.
  */
 @Service
 public class ExchangeLoggingService implements IExchangeLoggingService {
 
-    private CurrencyRateRepository currencyRateRepository;
+    private static final Logger logger = Logger.getLogger(ExchangeLoggingService.class.getName());
+
+    private final CurrencyRateRepository currencyRateRepository;
+    private final RateSnapshotStore rateSnapshotStore;
+    private final StorageMode storageMode;
+    private final RateRollupStore rateRollupStore;
+    private final TrackedCurrencyRepository trackedCurrencyRepository;
+    private final ExchangeRatesNotifier notifier;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<IExchangeRates> queue;
+    private final long offerTimeout;
+    private final int batchSize;
+    private final long shutdownTimeout;
+    private final Timer enqueueTimer;
+    private final Timer flushTimer;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long submitted;
+    private long processed;
+
+    /**
+     * Defines how exchange rates are stored.
+     */
+    public enum StorageMode {
+        /**
+         * A row per currency in {@code exchange_rate}, referencing a row in {@code currency_rate}.
+         */
+        ROWS,
+        /**
+         * A single row per timestamp in {@code rate_snapshot} with the rates in a compact encoded column.
+         */
+        COLUMNAR
+    }
 
     /**
-     * Constructor to initialize the service with the {@link CurrencyRateRepository}.
+     * Constructor to initialize the service with the {@link CurrencyRateRepository} and start the writer thread.
      *
-     * @param currencyRateRepository The repository responsible for persisting exchange rates.
+     * @param currencyRateRepository    The repository responsible for persisting exchange rates.
+     * @param rateSnapshotStore         The store of exchange rates in the compact columnar format.
+     * @param storageMode               Defines how exchange rates are stored.
+     * @param rateRollupStore           The store of daily and monthly rollups.
+     * @param trackedCurrencyRepository The repository of currencies added to the exchange service.
+     * @param notifier                  The notifier of the other nodes of the cluster.
+     * @param transactionManager        The transaction manager used to persist each batch in a transaction.
+     * @param meterRegistry             The registry of the persistence metrics.
+     * @param queueCapacity             Maximum number of exchange rates waiting to be persisted.
+     * @param offerTimeout              Timeout in milliseconds for waiting for free space in a full queue.
+     * @param batchSize                 Maximum number of exchange rates persisted in a single transaction.
+     * @param shutdownTimeout           Timeout in milliseconds for persisting queued exchange rates on shutdown.
+     * @param virtualThreads            Whether the writer is a virtual thread.
      */
     @Autowired
-    public ExchangeLoggingService(CurrencyRateRepository currencyRateRepository) {
+    public ExchangeLoggingService(CurrencyRateRepository currencyRateRepository,
+                                  RateSnapshotStore rateSnapshotStore,
+                                  @Value("${exchange.logging.storage}") StorageMode storageMode,
+                                  RateRollupStore rateRollupStore,
+                                  TrackedCurrencyRepository trackedCurrencyRepository,
+                                  ExchangeRatesNotifier notifier,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${exchange.logging.queue.capacity}") int queueCapacity,
+                                  @Value("${exchange.logging.offer.timeout}") long offerTimeout,
+                                  @Value("${exchange.logging.batch.size}") int batchSize,
+                                  @Value("${exchange.logging.shutdown.timeout}") long shutdownTimeout,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.currencyRateRepository = currencyRateRepository;
+        this.rateSnapshotStore = rateSnapshotStore;
+        this.storageMode = storageMode;
+        this.rateRollupStore = rateRollupStore;
+        this.trackedCurrencyRepository = trackedCurrencyRepository;
+        this.notifier = notifier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.offerTimeout = offerTimeout;
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.enqueueTimer = Timer.builder("exchange.logging.enqueue")
+                .description("Time to queue exchange rates to be persisted")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("exchange.logging.flush")
+                .description("Time to persist a batch of exchange rates")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("exchange.logging.dropped")
+                .description("Exchange rates dropped because the queue was full")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("exchange.logging.failed")
+                .description("Exchange rates not persisted due to a database error")
+                .register(meterRegistry);
+        Gauge.builder("exchange.logging.queue.size", queue, BlockingQueue::size)
+                .description("Exchange rates waiting to be persisted")
+                .register(meterRegistry);
+
+        this.writer = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                .name("exchange-logging-writer")
+                .start(this::write);
     }
 
     /**
-     * Logs the provided exchange rates to the database.
-     * This method creates a new {@link CurrencyRate} entity from the provided {@link IExchangeRates}
-     * and saves it to the {@link CurrencyRateRepository}.
-     * The operation is performed within a transaction to ensure consistency.
+     * Queues the provided exchange rates to be logged to the database.
+     * The exchange rates are persisted asynchronously in the configured storage mode, in a batch with other
+     * queued exchange rates.
      *
      * @param exchangeRates The exchange rates to log. This object should contain the exchange rates
      *                      to be persisted in the database.
-     * @throws RuntimeException If there is an issue saving the exchange rates to the repository.
      */
-    @Transactional
     public void logCurrencyRate(final IExchangeRates exchangeRates) {
-        currencyRateRepository.save(new CurrencyRate(exchangeRates));
+        flushLock.lock();
+        try {
+            submitted++;
+        } finally {
+            flushLock.unlock();
+        }
+
+        boolean queued = false;
+        long start = System.nanoTime();
+        try {
+            queued = running && queue.offer(exchangeRates, offerTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        enqueueTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (!queued) {
+            droppedCounter.increment();
+            logger.warning("Unable to log exchange rates with timestamp " + exchangeRates.timestamp() +
+                    " due to full queue");
+            markProcessed(1);
+        }
+    }
+
+    /**
+     * Persists the currencies added to the exchange service. Unlike exchange rates, they are persisted before
+     * the call returns, since they are not fetched again from the external API.
+     *
+     * @param currencies The currency codes to add to the persisted set of currencies.
+     */
+    @Override
+    public void logCurrencies(final Set<String> currencies) {
+        transactionTemplate.executeWithoutResult(status -> {
+            trackedCurrencyRepository.saveAll(currencies.stream().map(TrackedCurrency::new).toList());
+            notifier.notifyCurrencies();
+        });
+    }
+
+    /**
+     * Finds the latest persisted exchange rates data in the configured storage mode. Exchange rates still queued
+     * are not included.
+     *
+     * @return The latest exchange rates, or an empty optional if nothing is persisted.
+     */
+    @Override
+    public Optional<IExchangeRates> findLatestExchangeRates() {
+        return transactionTemplate.execute(status -> storageMode == StorageMode.COLUMNAR
+                ? rateSnapshotStore.findLatest(Long.MAX_VALUE)
+                : currencyRateRepository.findTopByOrderByTimestampDescIdDesc().map(currencyRate -> {
+                    Map<String, BigDecimal> rates = new HashMap<>();
+                    currencyRate.getRates().forEach((currency, rate) -> rates.put(currency, rate.getRate()));
+                    return new ExchangeRates(currencyRate.getTimestamp(), currencyRate.getBaseCurrency(), rates);
+                }));
+    }
+
+    /**
+     * Finds the persisted currencies added to the exchange service.
+     *
+     * @return The set of currency codes.
+     */
+    @Override
+    public Set<String> findCurrencies() {
+        return trackedCurrencyRepository.findAll().stream()
+                .map(TrackedCurrency::getCode)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Waits until all exchange rates queued before the call are persisted or dropped.
+     *
+     * @param timeout Timeout in milliseconds.
+     * @return True if all of them are processed; false if the timeout elapsed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean flush(final long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        flushLock.lock();
+        try {
+            long target = submitted;
+            while (processed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                flushed.awaitNanos(remaining);
+            }
+
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting exchange rates and waits until the queued ones are persisted.
+     */
+    @PreDestroy
+    public void close() {
+        running = false;
+        try {
+            writer.join(shutdownTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writer.isAlive()) {
+            logger.severe("Unable to log " + queue.size() + " queued exchange rates due to shutdown timeout");
+        }
+    }
+
+    /**
+     * Takes batches of queued exchange rates and persists them until the service is closed and the queue is empty.
+     */
+    private void write() {
+        List<IExchangeRates> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                IExchangeRates exchangeRates = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (exchangeRates == null) {
+                    continue;
+                }
+                batch.add(exchangeRates);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                // the queue is drained until the service is closed
+                continue;
+            }
+
+            persist(batch);
+            markProcessed(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Persists a batch of exchange rates in a single transaction, so the inserts are sent in JDBC batches.
+     *
+     * @param batch The exchange rates to persist.
+     */
+    private void persist(final List<IExchangeRates> batch) {
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                if (storageMode == StorageMode.COLUMNAR) {
+                    rateSnapshotStore.saveAll(batch);
+                } else {
+                    currencyRateRepository.saveAll(batch.stream().map(CurrencyRate::new).toList());
+                }
+                rateRollupStore.update(batch);
+                notifier.notifyExchangeRates();
+            }));
+        } catch (RuntimeException e) {
+            failedCounter.increment(batch.size());
+            logger.severe("Unable to log " + batch.size() + " exchange rates error message: " + e.getMessage());
+        }
+    }
+
+    private void markProcessed(final int count) {
+        flushLock.lock();
+        try {
+            processed += count;
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
     }
 }
@@ -1,7 +1,42 @@
 package com.local.exchange_service.db;
 
 import com.local.exchange_service.db.entities.ExchangeRate;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.stream.Stream;
 
 public interface ExchangeRateRepository extends JpaRepository<ExchangeRate, Long> {
-}
\ No newline at end of file
+
+    String FETCH_SIZE = "1000";
+
+    /**
+     * Streams the rates stored between two timestamps, ordered by timestamp and by {@code currency_rate} id.
+     * Both tables are filtered by timestamp, so only their partitions of the period are read.
+     * The stream must be consumed and closed within a transaction.
+     */
+    @Query("select cr.id as currencyRateId, cr.timestamp as snapshotTimestamp, cr.baseCurrency as baseCurrency, " +
+            "er.currency as currency, er.rate as rate from ExchangeRate er join er.currencyRate cr " +
+            "where cr.timestamp between :from and :to and er.timestamp between :from and :to " +
+            "order by cr.timestamp, cr.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    Stream<ExchangeRateRow> streamRates(@Param("from") long from, @Param("to") long to);
+
+    /**
+     * Streams the rates of the given currencies stored between two timestamps, ordered by timestamp and by
+     * {@code currency_rate} id. Both tables are filtered by timestamp, so only their partitions of the period are
+     * read. The stream must be consumed and closed within a transaction.
+     */
+    @Query("select cr.id as currencyRateId, cr.timestamp as snapshotTimestamp, cr.baseCurrency as baseCurrency, " +
+            "er.currency as currency, er.rate as rate from ExchangeRate er join er.currencyRate cr " +
+            "where cr.timestamp between :from and :to and er.timestamp between :from and :to " +
+            "and er.currency in :currencies order by cr.timestamp, cr.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    Stream<ExchangeRateRow> streamRates(@Param("from") long from, @Param("to") long to,
+                                        @Param("currencies") Collection<String> currencies);
+}
@@ -0,0 +1,19 @@
+package com.local.exchange_service.db;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection of an {@code exchange_rate} row joined with its {@code currency_rate}, read without loading entities.
+ */
+public interface ExchangeRateRow {
+
+    Long getCurrencyRateId();
+
+    Long getSnapshotTimestamp();
+
+    String getBaseCurrency();
+
+    String getCurrency();
+
+    BigDecimal getRate();
+}
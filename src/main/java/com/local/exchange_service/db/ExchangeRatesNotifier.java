@@ -0,0 +1,59 @@
+package com.local.exchange_service.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Notifies the other nodes of the cluster with PostgreSQL {@code NOTIFY} that exchange rates data or added
+ * currencies are persisted. Notifications are sent within the transaction persisting them, so they are delivered
+ * only when the transaction commits and the listeners read the committed data. Nothing is sent unless
+ * {@code exchange.cluster.enabled} is set.
+ */
+@Component
+public class ExchangeRatesNotifier {
+
+    /**
+     * The channel the notifications are sent on.
+     */
+    public static final String CHANNEL = "exchange_rates";
+    /**
+     * The payload of a notification about persisted exchange rates data.
+     */
+    public static final String RATES = "rates";
+    /**
+     * The payload of a notification about persisted added currencies.
+     */
+    public static final String CURRENCIES = "currencies";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    @Autowired
+    public ExchangeRatesNotifier(JdbcTemplate jdbcTemplate,
+                                 @Value("${exchange.cluster.enabled}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Notifies that exchange rates data is persisted by the current transaction.
+     */
+    public void notifyExchangeRates() {
+        send(RATES);
+    }
+
+    /**
+     * Notifies that added currencies are persisted by the current transaction.
+     */
+    public void notifyCurrencies() {
+        send(CURRENCIES);
+    }
+
+    private void send(final String payload) {
+        if (enabled) {
+            jdbcTemplate.execute("NOTIFY " + CHANNEL + ", '" + payload + "'");
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.local.exchange_service.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Service class responsible for the retention of the exchange rates history in {@code currency_rate},
+ * {@code exchange_rate} and {@code rate_snapshot}.
+ * <p>
+ * On PostgreSQL the tables are partitioned by timestamp into monthly partitions named {@code <table>_pYYYYMM}, with
+ * a default partition for rows outside them. Partitions of the current and the next
+ * {@code exchange.retention.partitions.ahead} months are created in advance, and partitions of the months older
+ * than {@code exchange.retention.age} days are detached and dropped as a whole instead of deleting their rows.
+ * Partitions are created and dropped with the lock timeout {@code exchange.retention.lock.timeout}, so inserts do
+ * not queue up behind them for longer; after a timeout they are retried on the next run.
+ * <p>
+ * Snapshots older than {@code exchange.retention.downsample.age} days are reduced to the last one of each UTC day.
+ * They are deleted in batches of {@code exchange.retention.batch.size} snapshots, each in a short transaction of its
+ * own, so the writer of {@link ExchangeLoggingService} inserting into the current partition is not blocked. Expired
+ * rows left in the default partition, and all expired rows on other databases, are deleted the same way. The
+ * rollups of {@link RateRollupStore} are kept, so daily and monthly aggregates still include deleted snapshots.
+ * <p>
+ * Metrics: {@code exchange.retention.run} timer, {@code exchange.retention.partitions.dropped} counter and
+ * {@code exchange.retention.snapshots.deleted} counter tagged with the reason {@code downsampled} or
+ * {@code expired}.
+ */
+@Service
+public class HistoryRetentionService {
+
+    private static final Logger logger = Logger.getLogger(HistoryRetentionService.class.getName());
+
+    /**
+     * The partitioned tables, referencing tables first, so their partitions are dropped before the referenced ones.
+     */
+    private static final List<String> TABLES = List.of("exchange_rate", "currency_rate", "rate_snapshot");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final long DAY = Duration.ofDays(1).toSeconds();
+
+    private static final String EXPIRED_CURRENCY_RATES = "SELECT cr.id, cr.timestamp FROM currency_rate cr " +
+            "WHERE cr.timestamp >= ? AND cr.timestamp < ? ORDER BY cr.timestamp LIMIT ?";
+    private static final String EXPIRED_RATE_SNAPSHOTS = "SELECT rs.timestamp FROM rate_snapshot rs " +
+            "WHERE rs.timestamp >= ? AND rs.timestamp < ? ORDER BY rs.timestamp LIMIT ?";
+    private static final String DOWNSAMPLED_CURRENCY_RATES = "SELECT cr.id, cr.timestamp FROM currency_rate cr " +
+            "WHERE cr.timestamp >= ? AND cr.timestamp < ? AND EXISTS (SELECT 1 FROM currency_rate later " +
+            "WHERE later.timestamp >= cr.timestamp AND later.timestamp < (cr.timestamp / " + DAY + " + 1) * " + DAY +
+            " AND (later.timestamp > cr.timestamp OR later.id > cr.id)) ORDER BY cr.timestamp LIMIT ?";
+    private static final String DOWNSAMPLED_RATE_SNAPSHOTS = "SELECT rs.timestamp FROM rate_snapshot rs " +
+            "WHERE rs.timestamp >= ? AND rs.timestamp < ? AND EXISTS (SELECT 1 FROM rate_snapshot later " +
+            "WHERE later.timestamp > rs.timestamp AND later.timestamp < (rs.timestamp / " + DAY + " + 1) * " + DAY +
+            ") ORDER BY rs.timestamp LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final int age;
+    private final int downsampleAge;
+    private final int partitionsAhead;
+    private final int batchSize;
+    private final long lockTimeout;
+    private final Timer runTimer;
+    private final Counter droppedCounter;
+    private final Counter downsampledCounter;
+    private final Counter expiredCounter;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private Boolean partitioned;
+    private long downsampledUntil = Long.MIN_VALUE;
+
+    /**
+     * Constructor for the HistoryRetentionService.
+     *
+     * @param jdbcTemplate       The template running the retention statements.
+     * @param transactionManager The transaction manager used to delete each batch in a transaction.
+     * @param meterRegistry      The registry of the retention metrics.
+     * @param age                The age in days after which the exchange rates history is dropped, 0 to keep it.
+     * @param downsampleAge      The age in days after which snapshots are reduced to one per day, 0 to keep all.
+     * @param partitionsAhead    The number of monthly partitions created after the current one.
+     * @param batchSize          The maximum number of snapshots deleted in a single transaction.
+     * @param lockTimeout        The timeout in milliseconds for the locks of creating and dropping partitions.
+     */
+    @Autowired
+    public HistoryRetentionService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${exchange.retention.age}") int age,
+                                   @Value("${exchange.retention.downsample.age}") int downsampleAge,
+                                   @Value("${exchange.retention.partitions.ahead}") int partitionsAhead,
+                                   @Value("${exchange.retention.batch.size}") int batchSize,
+                                   @Value("${exchange.retention.lock.timeout}") long lockTimeout) {
+        this(jdbcTemplate, transactionManager, meterRegistry, Clock.systemUTC(), age, downsampleAge, partitionsAhead,
+                batchSize, lockTimeout);
+    }
+
+    HistoryRetentionService(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            Clock clock,
+                            int age,
+                            int downsampleAge,
+                            int partitionsAhead,
+                            int batchSize,
+                            long lockTimeout) {
+        if (age < 0 || downsampleAge < 0 || partitionsAhead < 0 || batchSize <= 0 || lockTimeout <= 0) {
+            throw new IllegalArgumentException("Retention ages and partitions ahead must not be negative, " +
+                    "batch size and lock timeout must be positive");
+        }
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+        this.age = age;
+        this.downsampleAge = downsampleAge;
+        this.partitionsAhead = partitionsAhead;
+        this.batchSize = batchSize;
+        this.lockTimeout = lockTimeout;
+        this.runTimer = Timer.builder("exchange.retention.run")
+                .description("Time to maintain the partitions and delete old exchange rates history")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("exchange.retention.partitions.dropped")
+                .description("Monthly partitions of the exchange rates history dropped")
+                .register(meterRegistry);
+        this.downsampledCounter = Counter.builder("exchange.retention.snapshots.deleted")
+                .tag("reason", "downsampled")
+                .description("Snapshots of the exchange rates history deleted")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("exchange.retention.snapshots.deleted")
+                .tag("reason", "expired")
+                .description("Snapshots of the exchange rates history deleted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates the partitions ahead, drops the expired exchange rates history and downsamples the old one.
+     */
+    public void run() {
+        runTimer.record(() -> run(clock.instant()));
+    }
+
+    /**
+     * Runs the retention at a point in time.
+     *
+     * @param now The current time.
+     */
+    void run(final Instant now) {
+        runLock.lock();
+        try {
+            YearMonth month = YearMonth.from(now.atZone(ZoneOffset.UTC));
+            if (isPartitioned()) {
+                createPartitions(month);
+            }
+
+            long expiry = Long.MIN_VALUE;
+            if (age > 0) {
+                expiry = epochSecond(YearMonth.from(now.minus(age, ChronoUnit.DAYS).atZone(ZoneOffset.UTC)));
+                if (isPartitioned()) {
+                    dropPartitions(expiry);
+                }
+                long expired = deleteInBatches(EXPIRED_CURRENCY_RATES, Long.MIN_VALUE, expiry, true)
+                        + deleteInBatches(EXPIRED_RATE_SNAPSHOTS, Long.MIN_VALUE, expiry, false);
+                expiredCounter.increment(expired);
+                if (expired > 0) {
+                    logger.info("Deleted " + expired + " expired exchange rates snapshots");
+                }
+            }
+
+            if (downsampleAge > 0) {
+                long until = now.minus(downsampleAge, ChronoUnit.DAYS).getEpochSecond() / DAY * DAY;
+                long from = Math.max(expiry, downsampledUntil);
+                long downsampled = deleteInBatches(DOWNSAMPLED_CURRENCY_RATES, from, until, true)
+                        + deleteInBatches(DOWNSAMPLED_RATE_SNAPSHOTS, from, until, false);
+                downsampledUntil = until;
+                downsampledCounter.increment(downsampled);
+                if (downsampled > 0) {
+                    logger.info("Downsampled exchange rates history, deleted " + downsampled + " snapshots");
+                }
+            }
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the history tables are partitioned, which they are on PostgreSQL.
+     */
+    private boolean isPartitioned() {
+        if (partitioned == null) {
+            partitioned = "PostgreSQL".equals(jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName()));
+        }
+
+        return partitioned;
+    }
+
+    private void createPartitions(final YearMonth current) {
+        for (String table : TABLES) {
+            Set<String> partitions = partitions(table);
+            for (int ahead = 0; ahead <= partitionsAhead; ahead++) {
+                YearMonth month = current.plusMonths(ahead);
+                String partition = partitionName(table, month);
+                if (partitions.contains(partition)) {
+                    continue;
+                }
+
+                try {
+                    executeWithLockTimeout("CREATE TABLE " + partition + " PARTITION OF " + table +
+                            " FOR VALUES FROM (" + epochSecond(month) + ") TO (" + epochSecond(month.plusMonths(1)) +
+                            ")");
+                    logger.info("Created partition " + partition);
+                } catch (DataAccessException e) {
+                    logger.warning("Unable to create partition " + partition + ", error message: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Detaches and drops the partitions of the months ending at or before the expiry.
+     *
+     * @param expiry The timestamp in seconds since the epoch before which the history is expired.
+     */
+    private void dropPartitions(final long expiry) {
+        for (String table : TABLES) {
+            for (String partition : partitions(table)) {
+                String suffix = partition.substring(table.length());
+                if (!suffix.matches("_p\\d{6}")
+                        || epochSecond(YearMonth.parse(suffix.substring(2), PARTITION_MONTH).plusMonths(1)) > expiry) {
+                    continue;
+                }
+
+                try {
+                    executeWithLockTimeout("ALTER TABLE " + table + " DETACH PARTITION " + partition,
+                            "DROP TABLE " + partition);
+                    droppedCounter.increment();
+                    logger.info("Dropped expired partition " + partition);
+                } catch (DataAccessException e) {
+                    logger.warning("Unable to drop partition " + partition + ", error message: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Set<String> partitions(final String table) {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = ? AND pg_table_is_visible(p.oid)", String.class, table));
+    }
+
+    private void executeWithLockTimeout(final String... statements) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeout);
+            for (String statement : statements) {
+                jdbcTemplate.execute(statement);
+            }
+        });
+    }
+
+    /**
+     * Deletes the snapshots selected by a query in batches, each in its own transaction. The query selects the
+     * {@code id} and {@code timestamp} of {@code currency_rate} rows or the {@code timestamp} of {@code rate_snapshot}
+     * rows between two timestamps, ordered by timestamp and limited to the batch size.
+     *
+     * @param query         The query selecting the snapshots to delete.
+     * @param from          The first timestamp, inclusive.
+     * @param to            The last timestamp, exclusive.
+     * @param currencyRates Whether the query selects {@code currency_rate} rows.
+     * @return The number of deleted snapshots.
+     */
+    private long deleteInBatches(final String query, final long from, final long to, final boolean currencyRates) {
+        long deleted = 0;
+        long start = from;
+        List<Object[]> batch;
+        do {
+            batch = jdbcTemplate.query(query, (resultSet, rowNum) -> currencyRates
+                    ? new Object[]{resultSet.getLong(1), resultSet.getLong(2)}
+                    : new Object[]{resultSet.getLong(1)}, start, to, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> snapshots = batch;
+            transactionTemplate.executeWithoutResult(status -> {
+                if (currencyRates) {
+                    jdbcTemplate.batchUpdate("DELETE FROM exchange_rate WHERE currency_rate_id = ? AND timestamp = ?",
+                            snapshots);
+                    jdbcTemplate.batchUpdate("DELETE FROM currency_rate WHERE id = ? AND timestamp = ?", snapshots);
+                } else {
+                    jdbcTemplate.batchUpdate("DELETE FROM rate_snapshot WHERE timestamp = ?", snapshots);
+                }
+            });
+            deleted += batch.size();
+            start = (long) batch.get(batch.size() - 1)[currencyRates ? 1 : 0];
+        } while (batch.size() == batchSize);
+
+        return deleted;
+    }
+
+    private static String partitionName(final String table, final YearMonth month) {
+        return table + "_p" + month.format(PARTITION_MONTH);
+    }
+
+    private static long epochSecond(final YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    }
+}
@@ -0,0 +1,6 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.MonthlyRateRollup;
+
+public interface MonthlyRateRollupRepository extends RateRollupRepository<MonthlyRateRollup> {
+}
@@ -0,0 +1,21 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.RateRollup;
+import com.local.exchange_service.db.entities.RateRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+
+import java.util.Collection;
+import java.util.List;
+
+@NoRepositoryBean
+public interface RateRollupRepository<T extends RateRollup> extends JpaRepository<T, RateRollupId> {
+
+    List<T> findByIdBucketStartAndIdBaseCurrency(long bucketStart, String baseCurrency);
+
+    List<T> findByIdBaseCurrencyAndIdBucketStartBetweenOrderByIdBucketStartAscIdCurrencyAsc(
+            String baseCurrency, long fromBucketStart, long toBucketStart);
+
+    List<T> findByIdBaseCurrencyAndIdCurrencyInAndIdBucketStartBetweenOrderByIdBucketStartAscIdCurrencyAsc(
+            String baseCurrency, Collection<String> currencies, long fromBucketStart, long toBucketStart);
+}
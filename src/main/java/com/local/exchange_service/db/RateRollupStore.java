@@ -0,0 +1,180 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.DailyRateRollup;
+import com.local.exchange_service.db.entities.MonthlyRateRollup;
+import com.local.exchange_service.db.entities.RateRollup;
+import com.local.exchange_service.db.entities.RateRollupId;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.AggregationPeriod;
+import com.local.exchange_service.model.RateAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Daily and monthly rollups of exchange rates against the configured base currencies.
+ * Rollups are updated incrementally with each batch of persisted exchange rates data, including the current partial
+ * buckets, so aggregates are read from a row per currency and bucket instead of the raw snapshots.
+ */
+@Component
+public class RateRollupStore {
+
+    private final DailyRateRollupRepository dailyRateRollupRepository;
+    private final MonthlyRateRollupRepository monthlyRateRollupRepository;
+    private final Set<String> baseCurrencies;
+    private final int exchangeScale;
+
+    /**
+     * Creates a rollup of the first exchange rate of a currency within a bucket.
+     */
+    private interface RollupFactory<T extends RateRollup> {
+        T create(RateRollupId id, long timestamp, BigDecimal rate);
+    }
+
+    /**
+     * Bucket of rollups against a base currency.
+     */
+    private record BucketKey(long bucketStart, String baseCurrency) {
+    }
+
+    /**
+     * Constructor to initialize the store with its repositories.
+     *
+     * @param dailyRateRollupRepository   The repository of daily rollups.
+     * @param monthlyRateRollupRepository The repository of monthly rollups.
+     * @param baseCurrencies              The base currencies to roll up exchange rates against.
+     * @param exchangeScale               The scale (precision) for exchange rate calculations.
+     */
+    @Autowired
+    public RateRollupStore(DailyRateRollupRepository dailyRateRollupRepository,
+                           MonthlyRateRollupRepository monthlyRateRollupRepository,
+                           @Value("${exchange.rollup.bases}") Set<String> baseCurrencies,
+                           @Value("${exchange.scale}") int exchangeScale) {
+        this.dailyRateRollupRepository = dailyRateRollupRepository;
+        this.monthlyRateRollupRepository = monthlyRateRollupRepository;
+        this.baseCurrencies = Set.copyOf(baseCurrencies);
+        this.exchangeScale = exchangeScale;
+    }
+
+    /**
+     * Checks if exchange rates against a base currency are rolled up.
+     *
+     * @param baseCurrency The base currency code.
+     * @return True if the rollups of the base currency are maintained; false otherwise.
+     */
+    public boolean isRolledUp(final String baseCurrency) {
+        return baseCurrencies.contains(baseCurrency);
+    }
+
+    /**
+     * Adds exchange rates data to the daily and monthly rollups.
+     *
+     * @param exchangeRatesList The exchange rates data in the order it is persisted.
+     */
+    @Transactional
+    public void update(final List<IExchangeRates> exchangeRatesList) {
+        if (baseCurrencies.isEmpty()) {
+            return;
+        }
+
+        update(exchangeRatesList, AggregationPeriod.DAY, dailyRateRollupRepository, DailyRateRollup::new);
+        update(exchangeRatesList, AggregationPeriod.MONTH, monthlyRateRollupRepository, MonthlyRateRollup::new);
+    }
+
+    /**
+     * Finds the rollups of a base currency within a time range.
+     *
+     * @param baseCurrency The base currency code; must be rolled up.
+     * @param symbols      The currency codes to include, or null to include all currencies.
+     * @param period       The aggregation period.
+     * @param from         The first timestamp in seconds since the epoch; its whole bucket is included.
+     * @param to           The last timestamp in seconds since the epoch, inclusive.
+     * @return The aggregates ordered by bucket and currency.
+     */
+    @Transactional(readOnly = true)
+    public List<RateAggregate> find(final String baseCurrency,
+                                    final Set<String> symbols,
+                                    final AggregationPeriod period,
+                                    final long from,
+                                    final long to) {
+        RateRollupRepository<? extends RateRollup> repository = period == AggregationPeriod.DAY
+                ? dailyRateRollupRepository : monthlyRateRollupRepository;
+        long fromBucketStart = period.bucketStart(from);
+        List<? extends RateRollup> rollups = symbols == null
+                ? repository.findByIdBaseCurrencyAndIdBucketStartBetweenOrderByIdBucketStartAscIdCurrencyAsc(
+                        baseCurrency, fromBucketStart, to)
+                : repository.findByIdBaseCurrencyAndIdCurrencyInAndIdBucketStartBetweenOrderByIdBucketStartAscIdCurrencyAsc(
+                        baseCurrency, symbols, fromBucketStart, to);
+
+        return rollups.stream().map(rollup -> toAggregate(period, rollup, exchangeScale)).toList();
+    }
+
+    /**
+     * Converts a rollup to an aggregate with the average rounded half up to the given scale.
+     *
+     * @param period        The aggregation period of the rollup.
+     * @param rollup        The rollup.
+     * @param exchangeScale The scale (precision) for exchange rate calculations.
+     * @return The aggregate.
+     */
+    public static RateAggregate toAggregate(final AggregationPeriod period,
+                                            final RateRollup rollup,
+                                            final int exchangeScale) {
+        RateRollupId id = rollup.getId();
+        BigDecimal average = rollup.getRateSum()
+                .divide(BigDecimal.valueOf(rollup.getRateCount()), exchangeScale, RoundingMode.HALF_UP)
+                .stripTrailingZeros();
+
+        return new RateAggregate(period, id.getBucketStart(), id.getBaseCurrency(), id.getCurrency(),
+                rollup.getOpen().stripTrailingZeros(), rollup.getHigh().stripTrailingZeros(),
+                rollup.getLow().stripTrailingZeros(), rollup.getClose().stripTrailingZeros(), average,
+                rollup.getRateCount());
+    }
+
+    private <T extends RateRollup> void update(final List<IExchangeRates> exchangeRatesList,
+                                               final AggregationPeriod period,
+                                               final RateRollupRepository<T> repository,
+                                               final RollupFactory<T> factory) {
+        Set<BucketKey> loadedBuckets = new HashSet<>();
+        Map<RateRollupId, T> rollups = new HashMap<>();
+        List<T> created = new ArrayList<>();
+
+        for (IExchangeRates exchangeRates : exchangeRatesList) {
+            long timestamp = exchangeRates.timestamp();
+            long bucketStart = period.bucketStart(timestamp);
+            for (String baseCurrency : baseCurrencies) {
+                BigDecimal baseCurrencyRate = exchangeRates.rates().get(baseCurrency);
+                if (baseCurrencyRate == null) {
+                    continue;
+                }
+
+                if (loadedBuckets.add(new BucketKey(bucketStart, baseCurrency))) {
+                    repository.findByIdBucketStartAndIdBaseCurrency(bucketStart, baseCurrency)
+                            .forEach(rollup -> rollups.put(rollup.getId(), rollup));
+                }
+
+                exchangeRates.rates().forEach((currency, currencyRate) -> {
+                    // same rounding as ExchangeRatesService.calculateRate
+                    BigDecimal rate = currencyRate.divide(baseCurrencyRate, exchangeScale, RoundingMode.HALF_UP)
+                            .stripTrailingZeros();
+                    var id = new RateRollupId(bucketStart, baseCurrency, currency);
+                    T rollup = rollups.get(id);
+                    if (rollup == null) {
+                        rollup = factory.create(id, timestamp, rate);
+                        rollups.put(id, rollup);
+                        created.add(rollup);
+                    } else {
+                        rollup.add(timestamp, rate);
+                    }
+                });
+            }
+        }
+
+        repository.saveAll(created);
+    }
+}
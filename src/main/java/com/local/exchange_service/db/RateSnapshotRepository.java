@@ -0,0 +1,22 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.RateSnapshot;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface RateSnapshotRepository extends JpaRepository<RateSnapshot, Long> {
+
+    /**
+     * Streams the snapshots stored between two timestamps in timestamp order, without loading entities.
+     * The stream must be consumed and closed within a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ExchangeRateRepository.FETCH_SIZE))
+    Stream<RateSnapshotRow> streamByTimestampBetweenOrderByTimestamp(long from, long to);
+
+    Optional<RateSnapshotRow> findTopByTimestampLessThanEqualOrderByTimestampDesc(long at);
+}
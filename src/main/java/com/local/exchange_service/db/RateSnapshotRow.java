@@ -0,0 +1,15 @@
+package com.local.exchange_service.db;
+
+/**
+ * Projection of a {@code rate_snapshot} row, read without loading entities.
+ */
+public interface RateSnapshotRow {
+
+    Long getTimestamp();
+
+    String getBaseCurrency();
+
+    Integer getDictionaryVersion();
+
+    byte[] getRates();
+}
@@ -0,0 +1,131 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.CurrencyDictionary;
+import com.local.exchange_service.db.entities.RateSnapshot;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Storage of exchange rates data in the compact columnar format: a single {@link RateSnapshot} row per timestamp
+ * with the rates encoded in the order of the latest {@link CurrencyDictionary}.
+ */
+@Component
+public class RateSnapshotStore {
+
+    private final RateSnapshotRepository rateSnapshotRepository;
+    private final CurrencyDictionaryRepository currencyDictionaryRepository;
+
+    /**
+     * Constructor to initialize the store with its repositories.
+     *
+     * @param rateSnapshotRepository       The repository of encoded exchange rates data.
+     * @param currencyDictionaryRepository The repository of currency dictionaries.
+     */
+    @Autowired
+    public RateSnapshotStore(RateSnapshotRepository rateSnapshotRepository,
+                             CurrencyDictionaryRepository currencyDictionaryRepository) {
+        this.rateSnapshotRepository = rateSnapshotRepository;
+        this.currencyDictionaryRepository = currencyDictionaryRepository;
+    }
+
+    /**
+     * Saves exchange rates data, adding a new dictionary version if some currency is not in the latest one.
+     * Exchange rates data with an already stored timestamp replaces the stored one. The stored timestamps of the
+     * batch are looked up with a single query, and the other snapshots are inserted without a select each.
+     *
+     * @param exchangeRatesList The exchange rates data to save.
+     */
+    @Transactional
+    public void saveAll(final List<IExchangeRates> exchangeRatesList) {
+        Optional<CurrencyDictionary> latest = currencyDictionaryRepository.findTopByOrderByVersionDesc();
+        int version = latest.map(CurrencyDictionary::getVersion).orElse(0);
+        List<String> dictionary = latest.map(d -> CompactRatesCodec.split(d.getCurrencies())).orElse(List.of());
+
+        Map<Long, RateSnapshot> snapshots = new LinkedHashMap<>();
+        rateSnapshotRepository.findAllById(exchangeRatesList.stream().map(IExchangeRates::timestamp).toList())
+                .forEach(stored -> snapshots.put(stored.getTimestamp(), stored));
+        for (IExchangeRates exchangeRates : exchangeRatesList) {
+            List<String> extended = CompactRatesCodec.extend(dictionary, exchangeRates.rates().keySet());
+            if (extended != dictionary) {
+                dictionary = extended;
+                version++;
+                currencyDictionaryRepository.save(new CurrencyDictionary(version, CompactRatesCodec.join(dictionary)));
+            }
+            byte[] rates = CompactRatesCodec.encode(dictionary, exchangeRates.rates());
+            RateSnapshot snapshot = snapshots.get(exchangeRates.timestamp());
+            if (snapshot == null) {
+                snapshots.put(exchangeRates.timestamp(), new RateSnapshot(exchangeRates.timestamp(),
+                        exchangeRates.baseCurrency(), version, rates));
+            } else {
+                snapshot.setBaseCurrency(exchangeRates.baseCurrency());
+                snapshot.setDictionaryVersion(version);
+                snapshot.setRates(rates);
+            }
+        }
+
+        // stored snapshots are managed and updated on flush, new ones are persisted
+        rateSnapshotRepository.saveAll(snapshots.values().stream().filter(RateSnapshot::isNew).toList());
+    }
+
+    /**
+     * Finds exchange rates data by its timestamp.
+     *
+     * @param timestamp The timestamp of the exchange rates data.
+     * @return The decoded exchange rates data, if stored.
+     */
+    @Transactional(readOnly = true)
+    public Optional<IExchangeRates> findByTimestamp(final long timestamp) {
+        return rateSnapshotRepository.findById(timestamp).map(snapshot -> decode(snapshot.getTimestamp(),
+                snapshot.getBaseCurrency(), snapshot.getDictionaryVersion(), snapshot.getRates(), new HashMap<>()));
+    }
+
+    /**
+     * Finds the latest exchange rates data stored at or before a timestamp.
+     *
+     * @param at The timestamp.
+     * @return The decoded exchange rates data, if stored.
+     */
+    @Transactional(readOnly = true)
+    public Optional<IExchangeRates> findLatest(final long at) {
+        return rateSnapshotRepository.findTopByTimestampLessThanEqualOrderByTimestampDesc(at)
+                .map(row -> decode(row, new HashMap<>()));
+    }
+
+    /**
+     * Streams exchange rates data stored between two timestamps in timestamp order, decoding it while reading.
+     * The stream must be consumed and closed within a transaction.
+     *
+     * @param from The first timestamp, inclusive.
+     * @param to   The last timestamp, inclusive.
+     * @return The stream of decoded exchange rates data.
+     */
+    public Stream<IExchangeRates> streamBetween(final long from, final long to) {
+        Map<Integer, List<String>> dictionaries = new HashMap<>();
+        return rateSnapshotRepository.streamByTimestampBetweenOrderByTimestamp(from, to)
+                .map(row -> decode(row, dictionaries));
+    }
+
+    private IExchangeRates decode(final RateSnapshotRow row, final Map<Integer, List<String>> dictionaries) {
+        return decode(row.getTimestamp(), row.getBaseCurrency(), row.getDictionaryVersion(), row.getRates(),
+                dictionaries);
+    }
+
+    private IExchangeRates decode(final long timestamp,
+                                  final String baseCurrency,
+                                  final int dictionaryVersion,
+                                  final byte[] rates,
+                                  final Map<Integer, List<String>> dictionaries) {
+        List<String> dictionary = dictionaries.computeIfAbsent(dictionaryVersion, version ->
+                currencyDictionaryRepository.findById(version)
+                        .map(currencyDictionary -> CompactRatesCodec.split(currencyDictionary.getCurrencies()))
+                        .orElseThrow(() -> new RuntimeException("Currency dictionary is not found")));
+
+        return new ExchangeRates(timestamp, baseCurrency, CompactRatesCodec.decode(dictionary, rates));
+    }
+}
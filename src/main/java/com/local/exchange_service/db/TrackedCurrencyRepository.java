@@ -0,0 +1,7 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.TrackedCurrency;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TrackedCurrencyRepository extends JpaRepository<TrackedCurrency, String> {
+}
@@ -0,0 +1,66 @@
+package com.local.exchange_service.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Storage of the number of requests to the external API per calendar month in {@code upstream_request_count}, so
+ * the monthly quota is shared by the nodes of a cluster and survives restarts. Each statement commits on its own,
+ * since the count has to be stored even if the request fails.
+ */
+@Component
+public class UpstreamRequestStore {
+
+    private static final String INCREMENT =
+            "UPDATE upstream_request_count SET requests = requests + 1 WHERE request_month = ?";
+    private static final String INSERT =
+            "INSERT INTO upstream_request_count (request_month, requests) VALUES (?, 1)";
+    private static final String FIND = "SELECT requests FROM upstream_request_count WHERE request_month = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public UpstreamRequestStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Counts a request in a month.
+     *
+     * @param month The month of the request.
+     * @return The number of requests in the month, including this one.
+     */
+    public int increment(final YearMonth month) {
+        int key = key(month);
+        if (jdbcTemplate.update(INCREMENT, key) == 0) {
+            try {
+                jdbcTemplate.update(INSERT, key);
+            } catch (DuplicateKeyException e) {
+                // inserted by another node in the meantime
+                jdbcTemplate.update(INCREMENT, key);
+            }
+        }
+
+        return find(month);
+    }
+
+    /**
+     * Finds the number of requests in a month.
+     *
+     * @param month The month.
+     * @return The number of requests, 0 if none is counted.
+     */
+    public int find(final YearMonth month) {
+        List<Integer> requests = jdbcTemplate.queryForList(FIND, Integer.class, key(month));
+        return requests.isEmpty() ? 0 : requests.get(0);
+    }
+
+    private static int key(final YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+}
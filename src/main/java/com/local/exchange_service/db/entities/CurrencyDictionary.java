@@ -0,0 +1,40 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Versioned dictionary of currencies defining the order of the rates in {@link RateSnapshot}.
+ */
+@Entity
+public class CurrencyDictionary {
+
+    @Id
+    private Integer version;
+
+    private String currencies;
+
+    public CurrencyDictionary() {
+    }
+
+    public CurrencyDictionary(Integer version, String currencies) {
+        this.version = version;
+        this.currencies = currencies;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public String getCurrencies() {
+        return currencies;
+    }
+
+    public void setCurrencies(String currencies) {
+        this.currencies = currencies;
+    }
+}
@@ -9,7 +9,8 @@ import java.util.Map;
 public class CurrencyRate {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "currency_rate_seq")
+    @SequenceGenerator(name = "currency_rate_seq", sequenceName = "currency_rate_seq", allocationSize = 50)
     private Long id;
 
     private Long timestamp;
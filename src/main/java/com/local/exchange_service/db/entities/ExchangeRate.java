@@ -7,13 +7,16 @@ import java.math.BigDecimal;
 @Entity
 public class ExchangeRate {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "exchange_rate_seq")
+    @SequenceGenerator(name = "exchange_rate_seq", sequenceName = "exchange_rate_seq", allocationSize = 200)
     private Long id;
 
     private String currency;
 
     private BigDecimal rate;
 
+    private Long timestamp;
+
     @ManyToOne
     @JoinColumn(name = "currency_rate_id")
     private CurrencyRate currencyRate;
@@ -24,6 +27,7 @@ public class ExchangeRate {
     public ExchangeRate(String currency, BigDecimal rate, CurrencyRate currencyRate) {
         this.currency = currency;
         this.rate = rate;
+        this.timestamp = currencyRate.getTimestamp();
         this.currencyRate = currencyRate;
     }
 
@@ -51,6 +55,14 @@ public class ExchangeRate {
         this.rate = rate;
     }
 
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public CurrencyRate getCurrencyRate() {
         return currencyRate;
     }
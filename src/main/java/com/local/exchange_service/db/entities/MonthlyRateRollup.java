@@ -0,0 +1,18 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+
+import java.math.BigDecimal;
+
+@Entity
+@Table(name = "rate_rollup_month")
+public class MonthlyRateRollup extends RateRollup {
+
+    public MonthlyRateRollup() {
+    }
+
+    public MonthlyRateRollup(RateRollupId id, long timestamp, BigDecimal rate) {
+        super(id, timestamp, rate);
+    }
+}
@@ -0,0 +1,146 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.MappedSuperclass;
+
+import java.math.BigDecimal;
+
+/**
+ * Open, high, low and close exchange rates and the sum for the average of a currency against a base currency
+ * within a bucket of time.
+ */
+@MappedSuperclass
+public abstract class RateRollup {
+
+    @EmbeddedId
+    private RateRollupId id;
+
+    private BigDecimal open;
+
+    private BigDecimal high;
+
+    private BigDecimal low;
+
+    private BigDecimal close;
+
+    private Long openTimestamp;
+
+    private Long closeTimestamp;
+
+    private BigDecimal rateSum;
+
+    private Integer rateCount;
+
+    protected RateRollup() {
+    }
+
+    protected RateRollup(RateRollupId id, long timestamp, BigDecimal rate) {
+        this.id = id;
+        this.open = rate;
+        this.high = rate;
+        this.low = rate;
+        this.close = rate;
+        this.openTimestamp = timestamp;
+        this.closeTimestamp = timestamp;
+        this.rateSum = rate;
+        this.rateCount = 1;
+    }
+
+    /**
+     * Adds an exchange rate to the rollup. An exchange rate with the timestamp of the open or close rate is
+     * considered already added, so logging the same exchange rates data twice does not change the rollup.
+     *
+     * @param timestamp The timestamp of the exchange rate.
+     * @param rate      The exchange rate.
+     */
+    public void add(long timestamp, BigDecimal rate) {
+        if (timestamp == openTimestamp || timestamp == closeTimestamp) {
+            return;
+        }
+
+        if (timestamp < openTimestamp) {
+            open = rate;
+            openTimestamp = timestamp;
+        }
+        if (timestamp > closeTimestamp) {
+            close = rate;
+            closeTimestamp = timestamp;
+        }
+        high = high.max(rate);
+        low = low.min(rate);
+        rateSum = rateSum.add(rate);
+        rateCount++;
+    }
+
+    public RateRollupId getId() {
+        return id;
+    }
+
+    public void setId(RateRollupId id) {
+        this.id = id;
+    }
+
+    public BigDecimal getOpen() {
+        return open;
+    }
+
+    public void setOpen(BigDecimal open) {
+        this.open = open;
+    }
+
+    public BigDecimal getHigh() {
+        return high;
+    }
+
+    public void setHigh(BigDecimal high) {
+        this.high = high;
+    }
+
+    public BigDecimal getLow() {
+        return low;
+    }
+
+    public void setLow(BigDecimal low) {
+        this.low = low;
+    }
+
+    public BigDecimal getClose() {
+        return close;
+    }
+
+    public void setClose(BigDecimal close) {
+        this.close = close;
+    }
+
+    public Long getOpenTimestamp() {
+        return openTimestamp;
+    }
+
+    public void setOpenTimestamp(Long openTimestamp) {
+        this.openTimestamp = openTimestamp;
+    }
+
+    public Long getCloseTimestamp() {
+        return closeTimestamp;
+    }
+
+    public void setCloseTimestamp(Long closeTimestamp) {
+        this.closeTimestamp = closeTimestamp;
+    }
+
+    public BigDecimal getRateSum() {
+        return rateSum;
+    }
+
+    public void setRateSum(BigDecimal rateSum) {
+        this.rateSum = rateSum;
+    }
+
+    public Integer getRateCount() {
+        return rateCount;
+    }
+
+    public void setRateCount(Integer rateCount) {
+        this.rateCount = rateCount;
+    }
+}
@@ -0,0 +1,66 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class RateRollupId implements Serializable {
+
+    private Long bucketStart;
+
+    private String baseCurrency;
+
+    private String currency;
+
+    public RateRollupId() {
+    }
+
+    public RateRollupId(Long bucketStart, String baseCurrency, String currency) {
+        this.bucketStart = bucketStart;
+        this.baseCurrency = baseCurrency;
+        this.currency = currency;
+    }
+
+    public Long getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Long bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateRollupId that)) {
+            return false;
+        }
+        return Objects.equals(bucketStart, that.bucketStart) && Objects.equals(baseCurrency, that.baseCurrency)
+                && Objects.equals(currency, that.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucketStart, baseCurrency, currency);
+    }
+}
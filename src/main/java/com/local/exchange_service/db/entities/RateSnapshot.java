@@ -0,0 +1,88 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Exchange rates data stored as a single row, with the rates encoded by
+ * {@link com.local.exchange_service.db.CompactRatesCodec} in the order of a {@link CurrencyDictionary}.
+ * The timestamp is assigned rather than generated, so a created snapshot reports itself as new and is persisted
+ * without the select a merge of an assigned id needs.
+ */
+@Entity
+public class RateSnapshot implements Persistable<Long> {
+
+    @Id
+    private Long timestamp;
+
+    private String baseCurrency;
+
+    private Integer dictionaryVersion;
+
+    private byte[] rates;
+
+    @Transient
+    private boolean isNew = true;
+
+    public RateSnapshot() {
+    }
+
+    public RateSnapshot(Long timestamp, String baseCurrency, Integer dictionaryVersion, byte[] rates) {
+        this.timestamp = timestamp;
+        this.baseCurrency = baseCurrency;
+        this.dictionaryVersion = dictionaryVersion;
+        this.rates = rates;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+
+    public Integer getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public void setDictionaryVersion(Integer dictionaryVersion) {
+        this.dictionaryVersion = dictionaryVersion;
+    }
+
+    public byte[] getRates() {
+        return rates;
+    }
+
+    public void setRates(byte[] rates) {
+        this.rates = rates;
+    }
+
+    @Override
+    public Long getId() {
+        return timestamp;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.local.exchange_service.db.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Currency added to the exchange service, restored with the latest exchange rates data on startup.
+ */
+@Entity
+public class TrackedCurrency {
+
+    @Id
+    private String code;
+
+    public TrackedCurrency() {
+    }
+
+    public TrackedCurrency(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+}
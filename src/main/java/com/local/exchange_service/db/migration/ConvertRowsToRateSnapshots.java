@@ -0,0 +1,140 @@
+package com.local.exchange_service.db.migration;
+
+import com.local.exchange_service.db.CompactRatesCodec;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Liquibase change converting the exchange rates stored in {@code currency_rate} and {@code exchange_rate} into
+ * {@code rate_snapshot} rows. Rows are read in timestamp order with a streaming cursor, so the whole history is never
+ * loaded into memory. If several rows have the same timestamp, the latest one is converted.
+ */
+public class ConvertRowsToRateSnapshots implements CustomTaskChange {
+
+    private static final int FETCH_SIZE = 10_000;
+    private static final int BATCH_SIZE = 500;
+
+    private int converted;
+
+    /**
+     * Snapshot being read from the rows of a single {@code currency_rate}.
+     */
+    private static final class Snapshot {
+        private final long id;
+        private final long timestamp;
+        private final String baseCurrency;
+        private final Map<String, BigDecimal> rates = new HashMap<>();
+
+        private Snapshot(long id, long timestamp, String baseCurrency) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.baseCurrency = baseCurrency;
+        }
+    }
+
+    /**
+     * Writes converted snapshots in batches, adding dictionary versions as new currencies appear.
+     */
+    private static final class Converter {
+        private final PreparedStatement insertDictionary;
+        private final PreparedStatement insertSnapshot;
+        private List<String> dictionary = List.of();
+        private int version;
+        private int converted;
+
+        private Converter(PreparedStatement insertDictionary, PreparedStatement insertSnapshot) {
+            this.insertDictionary = insertDictionary;
+            this.insertSnapshot = insertSnapshot;
+        }
+
+        private void convert(Snapshot snapshot) throws SQLException {
+            List<String> extended = CompactRatesCodec.extend(dictionary, snapshot.rates.keySet());
+            if (extended != dictionary) {
+                dictionary = extended;
+                version++;
+                insertDictionary.setInt(1, version);
+                insertDictionary.setString(2, CompactRatesCodec.join(dictionary));
+                insertDictionary.executeUpdate();
+            }
+
+            insertSnapshot.setLong(1, snapshot.timestamp);
+            insertSnapshot.setString(2, snapshot.baseCurrency);
+            insertSnapshot.setInt(3, version);
+            insertSnapshot.setBytes(4, CompactRatesCodec.encode(dictionary, snapshot.rates));
+            insertSnapshot.addBatch();
+            if (++converted % BATCH_SIZE == 0) {
+                insertSnapshot.executeBatch();
+            }
+        }
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        JdbcConnection connection = (JdbcConnection) database.getConnection();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT cr.id, cr.timestamp, cr.base_currency, er.currency, er.rate FROM currency_rate cr " +
+                        "JOIN exchange_rate er ON er.currency_rate_id = cr.id ORDER BY cr.timestamp, cr.id");
+             PreparedStatement insertDictionary = connection.prepareStatement(
+                     "INSERT INTO currency_dictionary (version, currencies) VALUES (?, ?)");
+             PreparedStatement insertSnapshot = connection.prepareStatement(
+                     "INSERT INTO rate_snapshot (timestamp, base_currency, dictionary_version, rates) " +
+                             "VALUES (?, ?, ?, ?)")) {
+            select.setFetchSize(FETCH_SIZE);
+
+            Converter converter = new Converter(insertDictionary, insertSnapshot);
+            Snapshot snapshot = null;
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    long id = resultSet.getLong(1);
+                    if (snapshot == null || snapshot.id != id) {
+                        long timestamp = resultSet.getLong(2);
+                        // a later row with the same timestamp replaces the previous one
+                        if (snapshot != null && snapshot.timestamp != timestamp) {
+                            converter.convert(snapshot);
+                        }
+                        snapshot = new Snapshot(id, timestamp, resultSet.getString(3));
+                    }
+                    snapshot.rates.put(resultSet.getString(4), resultSet.getBigDecimal(5));
+                }
+            }
+            if (snapshot != null) {
+                converter.convert(snapshot);
+            }
+            insertSnapshot.executeBatch();
+            converted = converter.converted;
+        } catch (SQLException | DatabaseException e) {
+            throw new CustomChangeException("Unable to convert exchange rates to snapshots", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Converted " + converted + " exchange rates snapshots";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
@@ -0,0 +1,468 @@
+package com.local.exchange_service.external;
+
+import com.local.exchange_service.interfaces.IExchangeApiService;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Service class fetching exchange rates from several external providers, configured by bean name in preference
+ * order.
+ * <p>
+ * In {@link ProviderMode#HEDGED} mode providers are called one at a time in the order of their score, and the first
+ * valid response is returned. The next provider is called right away when the previous one fails, and as a hedged
+ * request when the previous one does not answer within its p95 latency; the slower call keeps running and wins if it
+ * answers first. In {@link ProviderMode#MEDIAN} mode all providers are called in parallel, and every currency gets the
+ * median of the rates reported for it, rebased to the base currency of the best scored provider.
+ * <p>
+ * Responses older than the published exchange rates data are rejected like failed calls. In
+ * {@link ProviderMode#HEDGED} mode a response without a rate for some currency of the published exchange rates data,
+ * such as the subset of the European Central Bank, is kept only as a fallback: the other providers are still awaited,
+ * and the fallback is returned only if none of them answers with a complete response.
+ * <p>
+ * The latency of the recent successful calls and the error rate of each provider are tracked. A call still running
+ * when it is hedged or when the timeout passes counts as an error once it is cancelled; a call cancelled only
+ * because another provider answered first does not. Providers are ordered by the p95 latency divided by the success
+ * rate, so a provider that fails, slows down or hangs moves behind the others until it recovers.
+ * <p>
+ * Metrics: {@code exchange.provider.latency} timer and {@code exchange.provider.errors} counter tagged by provider,
+ * {@code exchange.provider.hedged} counter of hedged requests.
+ * <p>
+ * The provider calls run on virtual threads when {@code spring.threads.virtual.enabled} is set, otherwise on a cached
+ * pool of daemon platform threads.
+ */
+@Primary
+@Service
+public class CompositeExchangeApiService implements IExchangeApiService {
+
+    private static final Logger logger = Logger.getLogger(CompositeExchangeApiService.class.getName());
+
+    private final List<Provider> providers;
+    private final ProviderMode mode;
+    private final long hedgeDelay;
+    private final long timeout;
+    private final ExecutorService executor;
+    private final Counter hedgedCounter;
+
+    /**
+     * Defines how the responses of providers are combined.
+     */
+    public enum ProviderMode {
+        /**
+         * The first valid response, calling the next provider on failure or after the p95 latency.
+         */
+        HEDGED,
+        /**
+         * The median rates of all valid responses.
+         */
+        MEDIAN
+    }
+
+    /**
+     * Call to a provider in {@link ProviderMode#HEDGED} mode. It is overdue once it is hedged or the timeout passes.
+     */
+    private static final class Call {
+        private final Provider provider;
+        private final Future<IExchangeRates> future;
+        private boolean overdue;
+
+        private Call(Provider provider, Future<IExchangeRates> future) {
+            this.provider = provider;
+            this.future = future;
+        }
+    }
+
+    /**
+     * External provider with the statistics of its recent calls.
+     */
+    static final class Provider {
+
+        private static final int LATENCY_WINDOW = 64;
+        private static final int MIN_LATENCY_SAMPLES = 5;
+        private static final double ERROR_WEIGHT = 0.2;
+
+        private final String name;
+        private final IExchangeApiService api;
+        private final Timer latencyTimer;
+        private final Counter errorCounter;
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private final ReentrantLock lock = new ReentrantLock();
+        private int latencyCount;
+        private double errorRate;
+
+        private Provider(String name, IExchangeApiService api, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.api = api;
+            this.latencyTimer = Timer.builder("exchange.provider.latency")
+                    .description("Latency of successful calls to an external exchange rates provider")
+                    .tag("provider", name)
+                    .register(meterRegistry);
+            this.errorCounter = Counter.builder("exchange.provider.errors")
+                    .description("Failed calls to an external exchange rates provider")
+                    .tag("provider", name)
+                    .register(meterRegistry);
+        }
+
+        void recordSuccess(final long latencyNanos) {
+            lock.lock();
+            try {
+                latencies[latencyCount++ % LATENCY_WINDOW] = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+                errorRate *= 1 - ERROR_WEIGHT;
+            } finally {
+                lock.unlock();
+            }
+            latencyTimer.record(Duration.ofNanos(latencyNanos));
+        }
+
+        void recordError() {
+            lock.lock();
+            try {
+                errorRate = errorRate * (1 - ERROR_WEIGHT) + ERROR_WEIGHT;
+            } finally {
+                lock.unlock();
+            }
+            errorCounter.increment();
+        }
+
+        /**
+         * Calculates the p95 latency of the recent successful calls.
+         *
+         * @param defaultLatency The latency in milliseconds to use until there are enough successful calls.
+         * @return The p95 latency in milliseconds.
+         */
+        long p95Latency(final long defaultLatency) {
+            long[] sorted;
+            lock.lock();
+            try {
+                int count = Math.min(latencyCount, LATENCY_WINDOW);
+                if (count < MIN_LATENCY_SAMPLES) {
+                    return defaultLatency;
+                }
+                sorted = Arrays.copyOf(latencies, count);
+            } finally {
+                lock.unlock();
+            }
+
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(0.95 * sorted.length) - 1];
+        }
+
+        double score(final long defaultLatency) {
+            lock.lock();
+            try {
+                return p95Latency(defaultLatency) / Math.max(0.05, 1 - errorRate);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String name() {
+            return name;
+        }
+    }
+
+    /**
+     * Constructor for the CompositeExchangeApiService.
+     *
+     * @param exchangeApis   The available external providers by bean name.
+     * @param meterRegistry  The registry of the provider metrics.
+     * @param providerNames  The bean names of the providers to call, in preference order.
+     * @param mode           Defines how the responses of providers are combined.
+     * @param hedgeDelay     The hedge delay in milliseconds until a provider has enough successful calls for its p95
+     *                       latency.
+     * @param timeout        The maximum time in milliseconds to wait for the providers.
+     * @param virtualThreads Whether the provider calls run on virtual threads.
+     */
+    @Autowired
+    public CompositeExchangeApiService(Map<String, IExchangeApiService> exchangeApis,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${exchange.providers}") List<String> providerNames,
+                                       @Value("${exchange.providers.mode}") ProviderMode mode,
+                                       @Value("${exchange.providers.hedge.delay}") long hedgeDelay,
+                                       @Value("${exchange.providers.timeout}") long timeout,
+                                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (providerNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one exchange rates provider is required");
+        }
+
+        List<Provider> configuredProviders = new ArrayList<>();
+        for (String providerName : providerNames) {
+            IExchangeApiService exchangeApi = exchangeApis.get(providerName);
+            if (exchangeApi == null || exchangeApi == this) {
+                throw new IllegalArgumentException("Exchange rates provider is not found: " + providerName);
+            }
+            configuredProviders.add(new Provider(providerName, exchangeApi, meterRegistry));
+        }
+
+        this.providers = List.copyOf(configuredProviders);
+        this.mode = mode;
+        this.hedgeDelay = hedgeDelay;
+        this.timeout = timeout;
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("exchange-provider-", 1).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("exchange-provider-", 1).daemon().factory());
+        this.hedgedCounter = Counter.builder("exchange.provider.hedged")
+                .description("Hedged requests to the next exchange rates provider")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fetches the latest exchange rates from the configured providers.
+     *
+     * @return An {@link IExchangeRates} object containing the exchange rates data.
+     * @throws RuntimeException If no provider returns valid exchange rates within the timeout.
+     */
+    public IExchangeRates getExchangeRates() {
+        return getExchangeRates(null);
+    }
+
+    /**
+     * Fetches the latest exchange rates to replace the published exchange rates data from the configured providers.
+     *
+     * @param published The published exchange rates data, null if there is none.
+     * @return An {@link IExchangeRates} object containing the exchange rates data.
+     * @throws RuntimeException If no provider returns valid exchange rates within the timeout.
+     */
+    @Override
+    public IExchangeRates getExchangeRates(final IExchangeRates published) {
+        try {
+            return mode == ProviderMode.MEDIAN ? getMedianExchangeRates(published) : getFirstExchangeRates(published);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Unable to get exchange rates due to thread interruption");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private IExchangeRates getFirstExchangeRates(final IExchangeRates published) throws InterruptedException {
+        List<Provider> ordered = orderedProviders();
+        CompletionService<IExchangeRates> completionService = new ExecutorCompletionService<>(executor);
+        List<Call> started = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        RuntimeException error = null;
+        IExchangeRates fallback = null;
+        int finished = 0;
+
+        try {
+            started.add(start(completionService, ordered.get(0), published));
+            while (finished < started.size()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    started.forEach(call -> call.overdue = true);
+                    break;
+                }
+
+                boolean hedging = started.size() < ordered.size();
+                long wait = hedging ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(
+                        ordered.get(started.size() - 1).p95Latency(hedgeDelay))) : remaining;
+                Future<IExchangeRates> done = completionService.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (hedging && deadline - System.nanoTime() > 0) {
+                        hedgedCounter.increment();
+                        started.get(started.size() - 1).overdue = true;
+                        started.add(start(completionService, ordered.get(started.size()), published));
+                    }
+                    continue;
+                }
+
+                finished++;
+                try {
+                    IExchangeRates exchangeRates = done.get();
+                    if (isComplete(exchangeRates, published)) {
+                        return exchangeRates;
+                    }
+                    if (fallback == null) {
+                        fallback = exchangeRates;
+                    }
+                } catch (ExecutionException e) {
+                    error = e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+                }
+                if (started.size() < ordered.size()) {
+                    started.add(start(completionService, ordered.get(started.size()), published));
+                }
+            }
+        } finally {
+            for (Call call : started) {
+                if (call.future.cancel(true) && call.overdue) {
+                    recordTimeout(call.provider);
+                }
+            }
+        }
+
+        if (fallback != null) {
+            return fallback;
+        }
+        throw failure(error);
+    }
+
+    private IExchangeRates getMedianExchangeRates(final IExchangeRates published) throws InterruptedException {
+        List<Provider> ordered = orderedProviders();
+        List<Future<IExchangeRates>> futures = ordered.stream()
+                .map(provider -> executor.submit(call(provider, published)))
+                .toList();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<IExchangeRates> responses = new ArrayList<>();
+        RuntimeException error = null;
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Future<IExchangeRates> future = futures.get(i);
+                try {
+                    responses.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    error = e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+                } catch (TimeoutException e) {
+                    error = new RuntimeException("Exchange rates provider did not answer in time");
+                    if (future.cancel(true)) {
+                        recordTimeout(ordered.get(i));
+                    }
+                }
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        if (responses.isEmpty()) {
+            throw failure(error);
+        }
+
+        // a single response is returned as is, so a not modified response is still recognized
+        return responses.size() == 1 ? responses.get(0) : merge(responses);
+    }
+
+    private Call start(final CompletionService<IExchangeRates> completionService,
+                       final Provider provider,
+                       final IExchangeRates published) {
+        return new Call(provider, completionService.submit(call(provider, published)));
+    }
+
+    /**
+     * Records a call cancelled after it was hedged or the timeout passed as an error of the provider.
+     */
+    private static void recordTimeout(final Provider provider) {
+        provider.recordError();
+        logger.warning("Exchange rates provider " + provider.name() + " did not answer in time");
+    }
+
+    private Callable<IExchangeRates> call(final Provider provider, final IExchangeRates published) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                IExchangeRates exchangeRates = validate(provider.api.getExchangeRates(), published);
+                provider.recordSuccess(System.nanoTime() - start);
+                return exchangeRates;
+            } catch (RuntimeException e) {
+                // a cancelled call is recorded by the caller if it was overdue
+                if (!Thread.currentThread().isInterrupted()) {
+                    provider.recordError();
+                    logger.warning("Unable to get exchange rates from provider " + provider.name() +
+                            " error message: " + e.getMessage());
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Orders the providers by score. Providers with equal scores keep the configured order.
+     *
+     * @return The providers, best scored first.
+     */
+    List<Provider> orderedProviders() {
+        List<Provider> ordered = new ArrayList<>(providers);
+        Map<Provider, Double> scores = new IdentityHashMap<>();
+        ordered.forEach(provider -> scores.put(provider, provider.score(hedgeDelay)));
+        ordered.sort(Comparator.comparingDouble(scores::get));
+        return ordered;
+    }
+
+    private RuntimeException failure(final RuntimeException error) {
+        return new RuntimeException("Unable to get exchange rates from providers " +
+                providers.stream().map(Provider::name).toList() +
+                (error != null ? " error message: " + error.getMessage() : " due to timeout"));
+    }
+
+    private static IExchangeRates validate(final IExchangeRates exchangeRates, final IExchangeRates published) {
+        if (exchangeRates == null || exchangeRates.baseCurrency() == null || exchangeRates.rates() == null
+                || exchangeRates.rates().get(exchangeRates.baseCurrency()) == null) {
+            throw new RuntimeException("Exchange rates response is invalid");
+        }
+        if (published != null && exchangeRates.timestamp() < published.timestamp()) {
+            throw new RuntimeException("Exchange rates response is older than the published exchange rates");
+        }
+
+        return exchangeRates;
+    }
+
+    /**
+     * Checks if exchange rates data has a rate for each currency of the published exchange rates data.
+     *
+     * @param exchangeRates The exchange rates data.
+     * @param published     The published exchange rates data, null if there is none.
+     * @return True if no currency is missing; false otherwise.
+     */
+    static boolean isComplete(final IExchangeRates exchangeRates, final IExchangeRates published) {
+        return published == null || published.rates() == null
+                || exchangeRates.rates().keySet().containsAll(published.rates().keySet());
+    }
+
+    /**
+     * Merges exchange rates data of several providers. Every currency gets the median of the rates reported for it,
+     * rebased to the base currency of the first exchange rates data, and the timestamp is the latest one.
+     * Exchange rates data without the rate of that base currency is skipped.
+     *
+     * @param responses The exchange rates data, the first one defines the base currency.
+     * @return The merged exchange rates data.
+     */
+    static IExchangeRates merge(final List<IExchangeRates> responses) {
+        String baseCurrency = responses.get(0).baseCurrency();
+        Map<String, List<BigDecimal>> reportedRates = new HashMap<>();
+        long timestamp = 0;
+
+        for (IExchangeRates exchangeRates : responses) {
+            BigDecimal baseCurrencyRate = exchangeRates.rates().get(baseCurrency);
+            if (baseCurrencyRate == null || baseCurrencyRate.signum() == 0) {
+                continue;
+            }
+
+            timestamp = Math.max(timestamp, exchangeRates.timestamp());
+            exchangeRates.rates().forEach((currency, rate) -> reportedRates
+                    .computeIfAbsent(currency, key -> new ArrayList<>())
+                    .add(baseCurrencyRate.compareTo(BigDecimal.ONE) == 0 ? rate
+                            : rate.divide(baseCurrencyRate, MathContext.DECIMAL64)));
+        }
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        reportedRates.forEach((currency, currencyRates) -> rates.put(currency, median(currencyRates)));
+
+        return new ExchangeRates(timestamp, baseCurrency, rates);
+    }
+
+    private static BigDecimal median(final List<BigDecimal> values) {
+        List<BigDecimal> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.naturalOrder());
+        int middle = sorted.size() / 2;
+
+        return sorted.size() % 2 == 1 ? sorted.get(middle)
+                : sorted.get(middle - 1).add(sorted.get(middle)).divide(BigDecimal.valueOf(2));
+    }
+}
@@ -0,0 +1,86 @@
+package com.local.exchange_service.external.frankfurter;
+
+import com.local.exchange_service.interfaces.IExchangeApiService;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Service class for interacting with the Frankfurter API, which publishes the reference exchange rates of the
+ * European Central Bank once per working day without an app ID or a request quota.
+ * The response is converted to {@link IExchangeRates} with the rate of the base currency itself added and the
+ * timestamp of the start of the publication date in UTC.
+ */
+@Service("frankfurter")
+public class FrankfurterApiService implements IExchangeApiService {
+
+    private static final Logger logger = Logger.getLogger(FrankfurterApiService.class.getName());
+
+    private final RestTemplate restTemplate;
+
+    private final UriComponents getLatestRateUrl;
+
+    /**
+     * Constructor to initialize the service with required dependencies.
+     *
+     * @param restTemplate The {@link RestTemplate} used for making HTTP requests to the Frankfurter API.
+     * @param properties   The {@link FrankfurterProperties} containing the base URL and the base currency.
+     */
+    @Autowired
+    public FrankfurterApiService(RestTemplate restTemplate, FrankfurterProperties properties) {
+        this.restTemplate = restTemplate;
+        this.getLatestRateUrl = UriComponentsBuilder.fromHttpUrl(properties.getBaseUrl())
+                .path("latest")
+                .queryParam("from", properties.getBaseCurrency())
+                .build();
+    }
+
+    /**
+     * Fetches the latest exchange rates from the Frankfurter API.
+     *
+     * @return An {@link IExchangeRates} object containing the exchange rates data.
+     * @throws RuntimeException If the request fails or the response is not successful.
+     */
+    public IExchangeRates getExchangeRates() {
+        try {
+            ResponseEntity<FrankfurterResponse> response = restTemplate.getForEntity(getLatestRateUrl.toUriString(),
+                    FrankfurterResponse.class);
+
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                throw new RuntimeException("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
+                        " response code: " + response.getStatusCode());
+            }
+
+            IExchangeRates exchangeRates = toExchangeRates(response.getBody());
+            logger.info("Fetched exchange rates:" + exchangeRates);
+            return exchangeRates;
+        } catch (RuntimeException e) {
+            logger.severe("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
+                    " error message: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private static IExchangeRates toExchangeRates(final FrankfurterResponse response) {
+        if (response == null || response.base() == null || response.date() == null || response.rates() == null) {
+            throw new RuntimeException("Exchange rates response is invalid");
+        }
+
+        Map<String, BigDecimal> rates = new HashMap<>(response.rates());
+        rates.put(response.base(), BigDecimal.ONE);
+
+        return new ExchangeRates(response.date().atStartOfDay(ZoneOffset.UTC).toEpochSecond(), response.base(),
+                rates);
+    }
+}
@@ -0,0 +1,34 @@
+package com.local.exchange_service.external.frankfurter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties for interacting with the Frankfurter API.
+ *
+ * These properties are populated from the application's configuration (e.g., application.properties or application.yml)
+ * using the {@link ConfigurationProperties} annotation with the prefix "external.frankfurter".
+ */
+@Component
+@ConfigurationProperties(prefix = "external.frankfurter")
+public class FrankfurterProperties {
+    private String baseUrl;
+
+    private String baseCurrency;
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+    }
+}
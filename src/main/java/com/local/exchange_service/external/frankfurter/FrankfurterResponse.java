@@ -0,0 +1,17 @@
+package com.local.exchange_service.external.frankfurter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Latest exchange rates response of the Frankfurter API. The rates are for one unit of the base currency and do not
+ * include the base currency itself.
+ */
+public record FrankfurterResponse(
+        BigDecimal amount,
+        String base,
+        LocalDate date,
+        Map<String, BigDecimal> rates
+) {
+}
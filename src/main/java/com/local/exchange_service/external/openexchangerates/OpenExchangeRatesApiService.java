@@ -1,46 +1,135 @@
 package com.local.exchange_service.external.openexchangerates;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.local.exchange_service.interfaces.IExchangeApiService;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Service class for interacting with the OpenExchangeRates API.
  * This service is responsible for fetching exchange rates from the OpenExchangeRates API using a RESTful call.
  * If the request is successful, it returns the exchange rates as an {@link IExchangeRates} object.
+ * <p>
+ * In {@link ClientMode#REST_TEMPLATE} mode the response is bound to {@link ExchangeRatesResponse} by the
+ * {@link RestTemplate}. In {@link ClientMode#HTTP_CLIENT} mode a JDK {@link HttpClient} with pooled keep-alive
+ * connections, HTTP/2 where the server supports it and gzip is used, and the response body is parsed with the
+ * Jackson streaming parser directly into the exchange rates while it is read. The read timeout bounds both the wait
+ * for the response headers and the read of the body, which is closed if it is not read in time.
+ * <p>
+ * In both modes requests are conditional: the {@code ETag} and {@code Last-Modified} of the last successful
+ * response are sent back as {@code If-None-Match} and {@code If-Modified-Since}, and on {@code 304 Not Modified}
+ * the exchange rates of the last successful response are returned as is, so the caller can skip the update.
+ * Not modified responses are counted by the {@code exchange.upstream.not.modified} counter.
  */
-@Service
+@Service("openexchangerates")
 public class OpenExchangeRatesApiService implements IExchangeApiService {
 
     private static final Logger logger = Logger.getLogger(OpenExchangeRatesApiService.class.getName());
 
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     private final RestTemplate restTemplate;
 
     private final UriComponents getLatestRateUrl;
 
+    private final HttpClient httpClient;
+
+    private final Duration readTimeout;
+
+    private final ScheduledThreadPoolExecutor bodyTimeouts;
+
+    private final Counter notModifiedCounter;
+
+    private volatile LatestResponse latestResponse;
+
+    /**
+     * Last successful response with its validators for conditional requests.
+     */
+    private record LatestResponse(IExchangeRates exchangeRates, String eTag, String lastModified) {
+    }
+
+    /**
+     * Defines how the OpenExchangeRates API is called.
+     */
+    public enum ClientMode {
+        /**
+         * The {@link RestTemplate} bean, binding the response to {@link ExchangeRatesResponse}.
+         */
+        REST_TEMPLATE,
+        /**
+         * A JDK {@link HttpClient} with a streaming parser.
+         */
+        HTTP_CLIENT
+    }
+
     /**
      * Constructor to initialize the service with required dependencies.
      *
      * @param restTemplate The {@link RestTemplate} used for making HTTP requests to the OpenExchangeRates API.
      * @param properties The {@link OpenExchangeRatesProperties} containing configuration like base URL,
      *                   base currency, and app ID for accessing the OpenExchangeRates API.
+     * @param meterRegistry The registry of the upstream metrics.
      */
     @Autowired
-    public OpenExchangeRatesApiService(RestTemplate restTemplate, OpenExchangeRatesProperties properties) {
+    public OpenExchangeRatesApiService(RestTemplate restTemplate,
+                                       OpenExchangeRatesProperties properties,
+                                       MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
         this.getLatestRateUrl = UriComponentsBuilder.fromHttpUrl(properties.getBaseUrl())
                 .path("api/latest.json")
                 .queryParam("app_id", properties.getAppId())
                 .queryParam("base", properties.getBaseCurrency())
                 .build();
+        this.readTimeout = Duration.ofMillis(properties.getReadTimeout());
+        this.notModifiedCounter = Counter.builder("exchange.upstream.not.modified")
+                .description("Upstream responses with exchange rates not modified since the previous request")
+                .register(meterRegistry);
+
+        if (properties.getClient() == ClientMode.HTTP_CLIENT) {
+            this.httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(properties.getConnectTimeout()))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build();
+            this.bodyTimeouts = new ScheduledThreadPoolExecutor(1,
+                    Thread.ofPlatform().name("openexchangerates-timeout").daemon().factory());
+            this.bodyTimeouts.setRemoveOnCancelPolicy(true);
+        } else {
+            this.httpClient = null;
+            this.bodyTimeouts = null;
+        }
     }
 
     /**
@@ -51,20 +140,160 @@ public class OpenExchangeRatesApiService implements IExchangeApiService {
      */
     public IExchangeRates getExchangeRates() {
         try {
-            ResponseEntity<ExchangeRatesResponse> response = restTemplate.getForEntity(getLatestRateUrl.toUriString(), ExchangeRatesResponse.class);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                ExchangeRatesResponse body = response.getBody();
-                logger.info("Fetched exchange rates:" + body);
-                return body;
-            } else {
-                throw new RuntimeException("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
-                        " response code: " + response.getStatusCode());
-            }
+            return httpClient != null ? sendLatestRateRequest() : getLatestRate();
         } catch (RuntimeException e) {
             logger.severe("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
                     " error message: " + e.getMessage());
             throw e;
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        if (bodyTimeouts != null) {
+            bodyTimeouts.shutdownNow();
+        }
+    }
+
+    private IExchangeRates getLatestRate() {
+        LatestResponse latest = latestResponse;
+        HttpHeaders headers = new HttpHeaders();
+        if (latest != null && latest.eTag() != null) {
+            headers.setIfNoneMatch(latest.eTag());
+        }
+        if (latest != null && latest.lastModified() != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, latest.lastModified());
+        }
+
+        ResponseEntity<ExchangeRatesResponse> response = restTemplate.exchange(getLatestRateUrl.toUriString(),
+                HttpMethod.GET, new HttpEntity<>(headers), ExchangeRatesResponse.class);
+
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && latest != null) {
+            return notModified(latest);
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new RuntimeException("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
+                    " response code: " + response.getStatusCode());
+        }
+
+        return modified(response.getBody(), response.getHeaders().getETag(),
+                response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    private IExchangeRates sendLatestRateRequest() {
+        LatestResponse latest = latestResponse;
+        HttpRequest.Builder request = HttpRequest.newBuilder(getLatestRateUrl.toUri())
+                .timeout(readTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (latest != null && latest.eTag() != null) {
+            request.header("If-None-Match", latest.eTag());
+        }
+        if (latest != null && latest.lastModified() != null) {
+            request.header("If-Modified-Since", latest.lastModified());
+        }
+
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request.build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            // the request timeout ends with the response headers, so a body stalled mid-read is closed
+            AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> bodyTimeout = bodyTimeouts.schedule(() -> {
+                timedOut.set(true);
+                try {
+                    response.body().close();
+                } catch (IOException ignored) {
+                    // the reader fails on the closed body anyway
+                }
+            }, readTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+            try (InputStream body = response.body()) {
+                if (response.statusCode() == 304 && latest != null) {
+                    return notModified(latest);
+                }
+                if (response.statusCode() / 100 != 2) {
+                    throw new RuntimeException("Unable to get exchange rates from " + getLatestRateUrl.getHost() +
+                            " response code: " + response.statusCode());
+                }
+
+                // the gzip header is read right away, so only a successful response body is decompressed
+                boolean gzip = response.headers().firstValue("Content-Encoding")
+                        .filter("gzip"::equalsIgnoreCase).isPresent();
+                return modified(parseExchangeRates(gzip ? new GZIPInputStream(body) : body),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null));
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new RuntimeException("Exchange rates response is not read within " + readTimeout.toMillis()
+                            + " ms");
+                }
+                throw e;
+            } finally {
+                bodyTimeout.cancel(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Unable to get exchange rates due to thread interruption");
+        }
+    }
+
+    private IExchangeRates notModified(final LatestResponse latest) {
+        notModifiedCounter.increment();
+        logger.info("Exchange rates are not modified since timestamp " + latest.exchangeRates().timestamp());
+        return latest.exchangeRates();
+    }
+
+    private IExchangeRates modified(final IExchangeRates exchangeRates, final String eTag, final String lastModified) {
+        latestResponse = new LatestResponse(exchangeRates, eTag, lastModified);
+        logger.info("Fetched exchange rates:" + exchangeRates);
+        return exchangeRates;
+    }
+
+    /**
+     * Parses a latest exchange rates response while it is read. Unknown fields are skipped.
+     *
+     * @param body The response body.
+     * @return The exchange rates.
+     * @throws IOException if the body cannot be read or is not a valid response.
+     */
+    static IExchangeRates parseExchangeRates(final InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Exchange rates response is invalid");
+            }
+
+            long timestamp = 0;
+            String base = null;
+            Map<String, BigDecimal> rates = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "timestamp" -> timestamp = parser.getLongValue();
+                    case "base" -> base = parser.getText();
+                    case "rates" -> {
+                        if (value != JsonToken.START_OBJECT) {
+                            throw new IOException("Exchange rates response is invalid");
+                        }
+                        rates = new HashMap<>();
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String currency = parser.currentName();
+                            parser.nextToken();
+                            rates.put(currency, parser.getDecimalValue());
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (base == null || rates == null) {
+                throw new IOException("Exchange rates response is invalid");
+            }
+
+            return new ExchangeRates(timestamp, base, rates);
+        }
+    }
 }
@@ -18,6 +18,12 @@ public class OpenExchangeRatesProperties {
 
     private String appId;
 
+    private OpenExchangeRatesApiService.ClientMode client = OpenExchangeRatesApiService.ClientMode.REST_TEMPLATE;
+
+    private long connectTimeout = 5000;
+
+    private long readTimeout = 10000;
+
     public String getBaseUrl() {
         return baseUrl;
     }
@@ -41,4 +47,28 @@ public class OpenExchangeRatesProperties {
     public void setAppId(String appId) {
         this.appId = appId;
     }
+
+    public OpenExchangeRatesApiService.ClientMode getClient() {
+        return client;
+    }
+
+    public void setClient(OpenExchangeRatesApiService.ClientMode client) {
+        this.client = client;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
 }
@@ -6,9 +6,22 @@ package com.local.exchange_service.interfaces;
 public interface IExchangeApiService {
 
     /**
-     * Retrieves the latest exchange rates.
+     * Retrieves the latest exchange rates. If the external API reports that the exchange rates have not changed
+     * since the previous call, the instance returned by the previous call is returned again.
      *
      * @return an {@link IExchangeRates} object containing exchange rate data.
      */
     IExchangeRates getExchangeRates();
+
+    /**
+     * Retrieves the latest exchange rates to replace the published exchange rates data. Services calling several
+     * sources prefer responses that are not older than the published exchange rates data and have a rate for each
+     * of its currencies.
+     *
+     * @param published the published exchange rates data, null if there is none.
+     * @return an {@link IExchangeRates} object containing exchange rate data.
+     */
+    default IExchangeRates getExchangeRates(IExchangeRates published) {
+        return getExchangeRates();
+    }
 }
@@ -1,14 +1,49 @@
 package com.local.exchange_service.interfaces;
 
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * Service interface for logging exchange rate information.
  */
 public interface IExchangeLoggingService {
 
+    /**
+     * The number of decimal places rates are logged with, so logged exchange rates data read back equals the logged
+     * one only when rounded half up to it.
+     */
+    int STORAGE_SCALE = 10;
+
     /**
      * Logs the given exchange rate data to a persistent storage.
      *
      * @param exchangeRates an {@link IExchangeRates} object containing the exchange rates to be logged.
      */
     void logCurrencyRate(IExchangeRates exchangeRates);
+
+    /**
+     * Logs the currencies added to the exchange service, so they can be restored after a restart.
+     *
+     * @param currencies the currency codes to add to the persisted set of currencies.
+     */
+    default void logCurrencies(Set<String> currencies) {
+    }
+
+    /**
+     * Finds the latest logged exchange rate data.
+     *
+     * @return the latest exchange rates, or an empty optional if nothing is logged.
+     */
+    default Optional<IExchangeRates> findLatestExchangeRates() {
+        return Optional.empty();
+    }
+
+    /**
+     * Finds the logged currencies added to the exchange service.
+     *
+     * @return the set of currency codes.
+     */
+    default Set<String> findCurrencies() {
+        return Set.of();
+    }
 }
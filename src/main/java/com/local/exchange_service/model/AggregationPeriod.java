@@ -0,0 +1,34 @@
+package com.local.exchange_service.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Period of aggregated exchange rates. Buckets start at midnight UTC.
+ */
+public enum AggregationPeriod {
+    DAY {
+        @Override
+        public long bucketStart(final long timestamp) {
+            return timestamp - Math.floorMod(timestamp, SECONDS_PER_DAY);
+        }
+    },
+    MONTH {
+        @Override
+        public long bucketStart(final long timestamp) {
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochSecond(timestamp), ZoneOffset.UTC);
+            return date.withDayOfMonth(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        }
+    };
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    /**
+     * Gets the start of the bucket containing a timestamp.
+     *
+     * @param timestamp The timestamp in seconds since the epoch.
+     * @return The start of the bucket in seconds since the epoch.
+     */
+    public abstract long bucketStart(long timestamp);
+}
@@ -0,0 +1,12 @@
+package com.local.exchange_service.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record BulkConversion(
+        long timestamp,
+        String from,
+        String to,
+        BigDecimal rate,
+        List<BigDecimal> results
+) {}
@@ -0,0 +1,10 @@
+package com.local.exchange_service.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record BulkConversionRequest(
+        String from,
+        String to,
+        List<BigDecimal> amounts
+) {}
@@ -0,0 +1,283 @@
+package com.local.exchange_service.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.local.exchange_service.interfaces.IExchangeRates;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Compact snapshot of exchange rates data.
+ * Currency codes are mapped to indices of a dictionary and the rates against the base currency are stored as
+ * unscaled long values with their scales, so the snapshot takes O(N) memory. Cross rates between currencies are
+ * calculated on demand with the same rounding as the eagerly calculated exchange rates.
+ */
+public final class CompactExchangeRates implements IExchangeRates {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private final long timestamp;
+    private final String baseCurrency;
+    private final String[] currencies;
+    private final Map<String, Integer> currencyIndices;
+    private final long[] unscaledRates;
+    private final int[] rateScales;
+    // Exact rates, present only if some unscaled rate does not fit into a long
+    private final BigDecimal[] exactRates;
+
+    private CompactExchangeRates(long timestamp, String baseCurrency, String[] currencies, long[] unscaledRates,
+                                 int[] rateScales, BigDecimal[] exactRates) {
+        this.timestamp = timestamp;
+        this.baseCurrency = baseCurrency;
+        this.currencies = currencies;
+        this.unscaledRates = unscaledRates;
+        this.rateScales = rateScales;
+        this.exactRates = exactRates;
+        this.currencyIndices = new HashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            currencyIndices.put(currencies[i], i);
+        }
+    }
+
+    /**
+     * Creates a compact snapshot of the given exchange rates data.
+     *
+     * @param exchangeRates The exchange rates data with the rates against its base currency.
+     * @return The compact snapshot of the exchange rates data.
+     */
+    public static CompactExchangeRates of(final IExchangeRates exchangeRates) {
+        Map<String, BigDecimal> rates = exchangeRates.rates();
+        int size = rates.size();
+        String[] currencies = new String[size];
+        long[] unscaledRates = new long[size];
+        int[] rateScales = new int[size];
+        BigDecimal[] exactRates = new BigDecimal[size];
+        boolean exact = false;
+
+        int i = 0;
+        for (Map.Entry<String, BigDecimal> entry : rates.entrySet()) {
+            BigDecimal rate = entry.getValue().stripTrailingZeros();
+            currencies[i] = entry.getKey();
+            exactRates[i] = rate;
+            if (rate.unscaledValue().bitLength() < Long.SIZE) {
+                unscaledRates[i] = rate.unscaledValue().longValue();
+                rateScales[i] = rate.scale();
+            } else {
+                exact = true;
+            }
+            i++;
+        }
+
+        return new CompactExchangeRates(exchangeRates.timestamp(), exchangeRates.baseCurrency(), currencies,
+                unscaledRates, rateScales, exact ? exactRates : null);
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String baseCurrency() {
+        return baseCurrency;
+    }
+
+    @Override
+    public Map<String, BigDecimal> rates() {
+        Map<String, BigDecimal> rates = new HashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            rates.put(currencies[i], rate(i));
+        }
+
+        return rates;
+    }
+
+    /**
+     * Gets the number of currencies in the dictionary.
+     *
+     * @return the number of currencies.
+     */
+    public int size() {
+        return currencies.length;
+    }
+
+    /**
+     * Gets the dictionary index of a currency.
+     *
+     * @param currency the currency code.
+     * @return the index of the currency, or -1 if the currency is not present.
+     */
+    public int indexOf(final String currency) {
+        Integer index = currencyIndices.get(currency);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the dictionary indices of currencies.
+     *
+     * @param currencies the currency codes, all of them must be present.
+     * @return the indices of the currencies in iteration order.
+     */
+    public int[] indicesOf(final Collection<String> currencies) {
+        int[] indices = new int[currencies.size()];
+        int i = 0;
+        for (String currency : currencies) {
+            int index = indexOf(currency);
+            if (index < 0) {
+                throw new IllegalArgumentException("Currency code is not supported: " + currency);
+            }
+            indices[i++] = index;
+        }
+
+        return indices;
+    }
+
+    /**
+     * Gets the currency code by its dictionary index.
+     *
+     * @param index the index of the currency.
+     * @return the currency code.
+     */
+    public String currency(final int index) {
+        return currencies[index];
+    }
+
+    /**
+     * Gets the rate of a currency against the base currency of the snapshot.
+     *
+     * @param index the index of the currency.
+     * @return the rate of the currency.
+     */
+    public BigDecimal rate(final int index) {
+        return exactRates != null ? exactRates[index] : BigDecimal.valueOf(unscaledRates[index], rateScales[index]);
+    }
+
+    /**
+     * Calculates the exchange rate of a currency against another currency, rounded half up to the given scale
+     * and without trailing zeros. The division is done on long values when they do not overflow.
+     *
+     * @param index         the index of the currency.
+     * @param baseIndex     the index of the currency to calculate the exchange rate against.
+     * @param exchangeScale the scale (precision) for exchange rate calculations.
+     * @return the exchange rate.
+     */
+    public BigDecimal crossRate(final int index, final int baseIndex, final int exchangeScale) {
+        if (exactRates == null && unscaledRates[index] > 0 && unscaledRates[baseIndex] > 0) {
+            int exponent = exchangeScale + rateScales[baseIndex] - rateScales[index];
+            if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+                long dividend = Math.multiplyHigh(unscaledRates[index], POWERS_OF_TEN[exponent]) == 0
+                        ? unscaledRates[index] * POWERS_OF_TEN[exponent] : -1;
+                if (dividend > 0) {
+                    return BigDecimal.valueOf(divideHalfUp(dividend, unscaledRates[baseIndex]), exchangeScale)
+                            .stripTrailingZeros();
+                }
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                long divisor = Math.multiplyHigh(unscaledRates[baseIndex], POWERS_OF_TEN[-exponent]) == 0
+                        ? unscaledRates[baseIndex] * POWERS_OF_TEN[-exponent] : -1;
+                if (divisor > 0) {
+                    return BigDecimal.valueOf(divideHalfUp(unscaledRates[index], divisor), exchangeScale)
+                            .stripTrailingZeros();
+                }
+            }
+        }
+
+        return rate(index).divide(rate(baseIndex), exchangeScale, RoundingMode.HALF_UP).stripTrailingZeros();
+    }
+
+    /**
+     * Creates the exchange rates of the given currencies against a base currency backed by this snapshot.
+     *
+     * @param baseIndex       the index of the base currency.
+     * @param currencyIndices the indices of the currencies to include; the array is shared, not copied.
+     * @param exchangeScale   the scale (precision) for exchange rate calculations.
+     * @return the exchange rates calculated on demand.
+     */
+    public Row row(final int baseIndex, final int[] currencyIndices, final int exchangeScale) {
+        return new Row(this, baseIndex, currencyIndices, exchangeScale);
+    }
+
+    private static long divideHalfUp(final long dividend, final long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        return remainder >= divisor - remainder ? quotient + 1 : quotient;
+    }
+
+    /**
+     * Exchange rates of a set of currencies against a base currency, calculated on demand from a compact snapshot.
+     * It is serialized to JSON in the same form as {@link ExchangeRates} without materializing the rates map.
+     */
+    @JsonSerialize(using = RowSerializer.class)
+    public static final class Row implements IExchangeRates {
+
+        private final CompactExchangeRates snapshot;
+        private final int baseIndex;
+        private final int[] currencyIndices;
+        private final int exchangeScale;
+
+        private Row(CompactExchangeRates snapshot, int baseIndex, int[] currencyIndices, int exchangeScale) {
+            this.snapshot = snapshot;
+            this.baseIndex = baseIndex;
+            this.currencyIndices = currencyIndices;
+            this.exchangeScale = exchangeScale;
+        }
+
+        @Override
+        public long timestamp() {
+            return snapshot.timestamp;
+        }
+
+        @Override
+        public String baseCurrency() {
+            return snapshot.currencies[baseIndex];
+        }
+
+        @Override
+        public Map<String, BigDecimal> rates() {
+            Map<String, BigDecimal> rates = new HashMap<>();
+            for (int index : currencyIndices) {
+                rates.put(snapshot.currencies[index], snapshot.crossRate(index, baseIndex, exchangeScale));
+            }
+
+            return rates;
+        }
+
+        @Override
+        public String toString() {
+            return "Row[timestamp=" + timestamp() + ", baseCurrency=" + baseCurrency() + ", rates=" + rates() + "]";
+        }
+    }
+
+    /**
+     * Writes a {@link Row} field by field, calculating each exchange rate while writing.
+     */
+    public static final class RowSerializer extends StdSerializer<Row> {
+
+        public RowSerializer() {
+            super(Row.class);
+        }
+
+        @Override
+        public void serialize(Row row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            CompactExchangeRates snapshot = row.snapshot;
+            gen.writeStartObject();
+            gen.writeNumberField("timestamp", snapshot.timestamp);
+            gen.writeStringField("baseCurrency", snapshot.currencies[row.baseIndex]);
+            gen.writeObjectFieldStart("rates");
+            for (int index : row.currencyIndices) {
+                gen.writeFieldName(snapshot.currencies[index]);
+                gen.writeNumber(snapshot.crossRate(index, row.baseIndex, row.exchangeScale));
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+}
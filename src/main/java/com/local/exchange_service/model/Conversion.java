@@ -0,0 +1,12 @@
+package com.local.exchange_service.model;
+
+import java.math.BigDecimal;
+
+public record Conversion(
+        long timestamp,
+        String from,
+        String to,
+        BigDecimal rate,
+        BigDecimal amount,
+        BigDecimal result
+) {}
@@ -0,0 +1,6 @@
+package com.local.exchange_service.model;
+
+public record ExchangeRatesError(
+        String baseCurrency,
+        String error
+) {}
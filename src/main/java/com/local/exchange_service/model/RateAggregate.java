@@ -0,0 +1,16 @@
+package com.local.exchange_service.model;
+
+import java.math.BigDecimal;
+
+public record RateAggregate(
+        AggregationPeriod period,
+        long bucketStart,
+        String baseCurrency,
+        String currency,
+        BigDecimal open,
+        BigDecimal high,
+        BigDecimal low,
+        BigDecimal close,
+        BigDecimal average,
+        int count
+) {}
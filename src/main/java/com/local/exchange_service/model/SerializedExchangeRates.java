@@ -0,0 +1,14 @@
+package com.local.exchange_service.model;
+
+/**
+ * Exchange rates of a base currency serialized to a response body.
+ *
+ * @param timestamp  the timestamp of the exchange rates data.
+ * @param eTag       the strong entity tag of the body, quoted.
+ * @param body       the serialized exchange rates; must not be modified.
+ */
+public record SerializedExchangeRates(
+        long timestamp,
+        String eTag,
+        byte[] body
+) {}
@@ -1,35 +1,58 @@
 package com.local.exchange_service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.local.exchange_service.model.BulkConversion;
+import com.local.exchange_service.model.Conversion;
 import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(ExchangeController.class)
+@Import({SerializedExchangeRatesCache.class, SimpleMeterRegistry.class})
 public class ExchangeControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private ExchangeRatesService exchangeRatesService;
 
+    @MockBean
+    private ExchangeRatesUpdateScheduler updateScheduler;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -68,6 +91,7 @@ public class ExchangeControllerTest {
                         "UAH", BigDecimal.valueOf(41.5)));
 
         when(exchangeRatesService.getExchangeRates("USD")).thenReturn(exchangeRates);
+        when(exchangeRatesService.getCurrencies()).thenReturn(Set.of("USD", "EUR", "UAH"));
 
         mockMvc.perform(get("/exchange-rates?base=USD"))
                 .andExpect(status().isOk())
@@ -77,5 +101,237 @@ public class ExchangeControllerTest {
                 .andExpect(jsonPath("$.rates.UAH").value(41.5));
 
         verify(exchangeRatesService, times(1)).getExchangeRates("USD");
+        assertEquals(1, meterRegistry.get("exchange.rates.requests").tag("base", "USD").timer().count());
+    }
+
+    @Test
+    void testGetExchangeRatesSerializedOnce() throws Exception {
+        ExchangeRates exchangeRates = new ExchangeRates(12345L, "EUR",
+                Map.of("USD", BigDecimal.valueOf(1.08),
+                        "UAH", BigDecimal.valueOf(44.62),
+                        "EUR", BigDecimal.valueOf(1)));
+        byte[] expected = objectMapper.writeValueAsBytes(exchangeRates);
+
+        when(exchangeRatesService.getGeneration()).thenReturn(7L);
+        when(exchangeRatesService.getExchangeRates("EUR")).thenReturn(exchangeRates);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(get("/exchange-rates?base=EUR"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(content().bytes(expected))
+                    .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, expected.length))
+                    .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"3039-")));
+        }
+
+        verify(exchangeRatesService, times(1)).getExchangeRates("EUR");
+
+        // A new generation of exchange rates is serialized again
+        when(exchangeRatesService.getGeneration()).thenReturn(8L);
+        mockMvc.perform(get("/exchange-rates?base=EUR"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(expected));
+
+        verify(exchangeRatesService, times(2)).getExchangeRates("EUR");
+    }
+
+    @Test
+    void testGetExchangeRatesBinaryEncodings() throws Exception {
+        ExchangeRates exchangeRates = new ExchangeRates(12345L, "EUR",
+                Map.of("USD", new BigDecimal("1.08"),
+                        "UAH", new BigDecimal("44.62"),
+                        "EUR", BigDecimal.ONE));
+
+        when(exchangeRatesService.getGeneration()).thenReturn(11L);
+        when(exchangeRatesService.getExchangeRates("EUR")).thenReturn(exchangeRates);
+
+        byte[] cbor = mockMvc.perform(get("/exchange-rates?base=EUR")
+                        .header(HttpHeaders.ACCEPT, "application/json;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(exchangeRates, objectMapper.copyWith(new CBORFactory()).readValue(cbor, ExchangeRates.class));
+
+        for (int i = 0; i < 2; i++) {
+            byte[] compact = mockMvc.perform(get("/exchange-rates?base=EUR")
+                            .header(HttpHeaders.ACCEPT, ExchangeRatesWireCodec.MEDIA_TYPE))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(ExchangeRatesWireCodec.MEDIA_TYPE))
+                    .andReturn().getResponse().getContentAsByteArray();
+            assertEquals(exchangeRates, ExchangeRatesWireCodec.decode(compact));
+        }
+
+        mockMvc.perform(get("/exchange-rates?base=EUR").header(HttpHeaders.ACCEPT, "*/*"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.rates.UAH").value(44.62));
+
+        mockMvc.perform(get("/exchange-rates?base=EUR").header(HttpHeaders.ACCEPT, MediaType.APPLICATION_XML_VALUE))
+                .andExpect(status().isNotAcceptable());
+
+        // each encoding is serialized once per generation
+        verify(exchangeRatesService, times(3)).getExchangeRates("EUR");
+    }
+
+    @Test
+    void testGetExchangeRatesNotModified() throws Exception {
+        ExchangeRates exchangeRates = new ExchangeRates(1731085200L, "UAH",
+                Map.of("USD", BigDecimal.valueOf(0.0242108287),
+                        "UAH", BigDecimal.valueOf(1)));
+
+        when(exchangeRatesService.getGeneration()).thenReturn(9L);
+        when(exchangeRatesService.getExchangeRates("UAH")).thenReturn(exchangeRates);
+        when(updateScheduler.getNextUpdateTime()).thenReturn(System.currentTimeMillis() + 3600000);
+
+        String eTag = mockMvc.perform(get("/exchange-rates?base=UAH"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, startsWith("max-age=")))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, 1731085200000L))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/exchange-rates?base=UAH").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().bytes(new byte[0]));
+
+        mockMvc.perform(get("/exchange-rates?base=UAH")
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 08 Nov 2024 17:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/exchange-rates?base=UAH").header(HttpHeaders.IF_NONE_MATCH, "\"0-0\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.baseCurrency").value("UAH"));
+
+        verify(exchangeRatesService, times(1)).getExchangeRates("UAH");
+    }
+
+    @Test
+    void testGetExchangeRatesCachedUntilUpdateAfterBackoff() throws Exception {
+        ExchangeRates exchangeRates = new ExchangeRates(1731085200L, "UAH",
+                Map.of("USD", BigDecimal.valueOf(0.0242108287),
+                        "UAH", BigDecimal.valueOf(1)));
+        when(exchangeRatesService.getExchangeRates("UAH")).thenReturn(exchangeRates);
+
+        // the update failed and the next one is scheduled after a backoff of 90 seconds
+        when(updateScheduler.getNextUpdateTime()).thenReturn(System.currentTimeMillis() + 90000);
+        mockMvc.perform(get("/exchange-rates?base=UAH"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, matchesPattern("max-age=(89|90)")));
+
+        // the update is due, so responses are not cached
+        when(updateScheduler.getNextUpdateTime()).thenReturn(System.currentTimeMillis() - 1000);
+        mockMvc.perform(get("/exchange-rates?base=UAH"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=0"));
+    }
+
+    @Test
+    void testGetCurrenciesNotModified() throws Exception {
+        when(exchangeRatesService.getCurrencies()).thenReturn(Set.of("USD", "EUR"));
+
+        String eTag = mockMvc.perform(get("/currencies"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/currencies").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        when(exchangeRatesService.getCurrencies()).thenReturn(Set.of("USD", "EUR", "UAH"));
+        mockMvc.perform(get("/currencies").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", containsInAnyOrder("USD", "EUR", "UAH")));
+    }
+
+    @Test
+    void testGetExchangeRatesBatch() throws Exception {
+        ExchangeRates usdRates = new ExchangeRates(12345L, "USD",
+                Map.of("EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.5),
+                        "USD", BigDecimal.valueOf(1)));
+        ExchangeRates eurRates = new ExchangeRates(12345L, "EUR",
+                Map.of("EUR", BigDecimal.valueOf(1),
+                        "UAH", BigDecimal.valueOf(44.62),
+                        "USD", BigDecimal.valueOf(1.08)));
+        Map<String, ExchangeRates> snapshot = Map.of("USD", usdRates, "EUR", eurRates);
+        when(exchangeRatesService.getExchangeRatesSnapshot()).thenReturn(currencyCode -> {
+            if (!snapshot.containsKey(currencyCode)) {
+                throw new RuntimeException("Currency code is not supported");
+            }
+            return snapshot.get(currencyCode);
+        });
+
+        MvcResult result = mockMvc.perform(get("/exchange-rates/batch?bases=EUR,XXX,USD&symbols=USD,UAH"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].baseCurrency").value("EUR"))
+                .andExpect(jsonPath("$[0].timestamp").value(12345L))
+                .andExpect(jsonPath("$[0].rates.USD").value(1.08))
+                .andExpect(jsonPath("$[0].rates.UAH").value(44.62))
+                .andExpect(jsonPath("$[0].rates.EUR").doesNotExist())
+                .andExpect(jsonPath("$[1].baseCurrency").value("XXX"))
+                .andExpect(jsonPath("$[1].error").value("Currency code is not supported"))
+                .andExpect(jsonPath("$[2].baseCurrency").value("USD"))
+                .andExpect(jsonPath("$[2].rates.UAH").value(41.5));
+
+        verify(exchangeRatesService, times(1)).getExchangeRatesSnapshot();
+    }
+
+    @Test
+    void testGetExchangeRatesBatchWithUnknownSymbols() throws Exception {
+        ExchangeRates usdRates = new ExchangeRates(12345L, "USD",
+                Map.of("EUR", BigDecimal.valueOf(0.93),
+                        "USD", BigDecimal.valueOf(1)));
+        when(exchangeRatesService.getExchangeRatesSnapshot()).thenReturn(currencyCode -> usdRates);
+
+        MvcResult result = mockMvc.perform(get("/exchange-rates/batch?bases=USD&symbols=EUR,XXX,CAD"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].baseCurrency").value("USD"))
+                .andExpect(jsonPath("$[0].error").value("Currency codes are not added to exchange service: CAD, XXX"))
+                .andExpect(jsonPath("$[0].rates").doesNotExist());
+    }
+
+    @Test
+    void testConvert() throws Exception {
+        when(exchangeRatesService.convert("EUR", "USD", new BigDecimal("10.5")))
+                .thenReturn(new Conversion(12345L, "EUR", "USD", BigDecimal.valueOf(1.08),
+                        new BigDecimal("10.5"), BigDecimal.valueOf(11.34)));
+
+        mockMvc.perform(get("/convert?from=EUR&to=USD&amount=10.5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.timestamp").value(12345L))
+                .andExpect(jsonPath("$.rate").value(1.08))
+                .andExpect(jsonPath("$.result").value(11.34));
+
+        verify(exchangeRatesService, times(1)).convert("EUR", "USD", new BigDecimal("10.5"));
+    }
+
+    @Test
+    void testBulkConvert() throws Exception {
+        List<BigDecimal> amounts = List.of(BigDecimal.valueOf(1), BigDecimal.valueOf(10.5));
+        when(exchangeRatesService.convert("EUR", "USD", amounts))
+                .thenReturn(new BulkConversion(12345L, "EUR", "USD", BigDecimal.valueOf(1.08),
+                        List.of(BigDecimal.valueOf(1.08), BigDecimal.valueOf(11.34))));
+
+        mockMvc.perform(post("/convert")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"from\": \"EUR\", \"to\": \"USD\", \"amounts\": [1, 10.5]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(1.08))
+                .andExpect(jsonPath("$.results[0]").value(1.08))
+                .andExpect(jsonPath("$.results[1]").value(11.34));
+
+        verify(exchangeRatesService, times(1)).convert("EUR", "USD", amounts);
     }
 }
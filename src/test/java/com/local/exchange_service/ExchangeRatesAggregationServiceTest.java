@@ -0,0 +1,113 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.CurrencyDictionaryRepository;
+import com.local.exchange_service.db.CurrencyRateRepository;
+import com.local.exchange_service.db.DailyRateRollupRepository;
+import com.local.exchange_service.db.ExchangeLoggingService.StorageMode;
+import com.local.exchange_service.db.ExchangeRateRepository;
+import com.local.exchange_service.db.MonthlyRateRollupRepository;
+import com.local.exchange_service.db.RateRollupStore;
+import com.local.exchange_service.db.RateSnapshotRepository;
+import com.local.exchange_service.db.RateSnapshotStore;
+import com.local.exchange_service.db.entities.CurrencyRate;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.AggregationPeriod;
+import com.local.exchange_service.model.ExchangeRates;
+import com.local.exchange_service.model.RateAggregate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+public class ExchangeRatesAggregationServiceTest {
+
+    private static final long DAY = 86400L;
+
+    // two snapshots on the first day, split into two batches, and one on the next day
+    private static final List<IExchangeRates> FIRST_BATCH = List.of(
+            new ExchangeRates(DAY + 100L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.9), "UAH", BigDecimal.valueOf(40))));
+    private static final List<IExchangeRates> SECOND_BATCH = List.of(
+            new ExchangeRates(DAY + 200L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.8), "UAH", BigDecimal.valueOf(42))),
+            new ExchangeRates(2 * DAY + 100L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.85), "UAH", BigDecimal.valueOf(41))));
+
+    @Autowired
+    private CurrencyRateRepository currencyRateRepository;
+
+    @Autowired
+    private ExchangeRateRepository exchangeRateRepository;
+
+    @Autowired
+    private RateSnapshotRepository rateSnapshotRepository;
+
+    @Autowired
+    private CurrencyDictionaryRepository currencyDictionaryRepository;
+
+    @Autowired
+    private DailyRateRollupRepository dailyRateRollupRepository;
+
+    @Autowired
+    private MonthlyRateRollupRepository monthlyRateRollupRepository;
+
+    @Test
+    void testRollupsMatchSnapshots() {
+        RateRollupStore rateRollupStore = new RateRollupStore(dailyRateRollupRepository, monthlyRateRollupRepository,
+                Set.of("USD"), 10);
+        for (List<IExchangeRates> batch : List.of(FIRST_BATCH, SECOND_BATCH)) {
+            batch.forEach(snapshot -> currencyRateRepository.save(new CurrencyRate(snapshot)));
+            rateRollupStore.update(batch);
+            currencyRateRepository.flush();
+        }
+
+        ExchangeRatesHistoryService historyService = new ExchangeRatesHistoryService(currencyRateRepository,
+                exchangeRateRepository, new RateSnapshotStore(rateSnapshotRepository, currencyDictionaryRepository),
+                StorageMode.ROWS, 10);
+        ExchangeRatesAggregationService rollupService = new ExchangeRatesAggregationService(rateRollupStore,
+                historyService, 10);
+        ExchangeRatesAggregationService snapshotService = new ExchangeRatesAggregationService(
+                new RateRollupStore(dailyRateRollupRepository, monthlyRateRollupRepository, Set.of(), 10),
+                historyService, 10);
+
+        List<RateAggregate> daily = rollupService.getAggregates("USD", Set.of("EUR", "UAH"),
+                AggregationPeriod.DAY, DAY + 150L, 3 * DAY);
+        assertEquals(List.of(
+                new RateAggregate(AggregationPeriod.DAY, DAY, "USD", "EUR", new BigDecimal("0.9"),
+                        new BigDecimal("0.9"), new BigDecimal("0.8"), new BigDecimal("0.8"),
+                        new BigDecimal("0.85"), 2),
+                new RateAggregate(AggregationPeriod.DAY, DAY, "USD", "UAH", new BigDecimal("40"),
+                        new BigDecimal("42"), new BigDecimal("40"), new BigDecimal("42"),
+                        new BigDecimal("41"), 2),
+                new RateAggregate(AggregationPeriod.DAY, 2 * DAY, "USD", "EUR", new BigDecimal("0.85"),
+                        new BigDecimal("0.85"), new BigDecimal("0.85"), new BigDecimal("0.85"),
+                        new BigDecimal("0.85"), 1),
+                new RateAggregate(AggregationPeriod.DAY, 2 * DAY, "USD", "UAH", new BigDecimal("41"),
+                        new BigDecimal("41"), new BigDecimal("41"), new BigDecimal("41"),
+                        new BigDecimal("41"), 1)), daily);
+        assertEquals(daily, snapshotService.getAggregates("USD", Set.of("EUR", "UAH"),
+                AggregationPeriod.DAY, DAY + 150L, 3 * DAY));
+
+        List<RateAggregate> monthly = rollupService.getAggregates("USD", Set.of("UAH"),
+                AggregationPeriod.MONTH, 0L, 3 * DAY);
+        assertEquals(List.of(new RateAggregate(AggregationPeriod.MONTH, 0L, "USD", "UAH", new BigDecimal("40"),
+                new BigDecimal("42"), new BigDecimal("40"), new BigDecimal("41"), new BigDecimal("41"), 3)),
+                monthly);
+        assertEquals(monthly, snapshotService.getAggregates("USD", Set.of("UAH"),
+                AggregationPeriod.MONTH, 0L, 3 * DAY));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> rollupService.getAggregates("USD", null, null, 0L, 3 * DAY));
+        assertEquals("Aggregation period is required", e.getMessage());
+    }
+}
@@ -0,0 +1,133 @@
+package com.local.exchange_service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two nodes of the cluster against a local PostgreSQL database, started for example with
+ * {@code docker-compose up -d}, when {@code EXCHANGE_CLUSTER_DATASOURCE_URL} is set, for example to
+ * {@code jdbc:postgresql://localhost:5432/exchange_db}.
+ * The external API is a local stub counting its requests.
+ */
+@EnabledIfEnvironmentVariable(named = "EXCHANGE_CLUSTER_DATASOURCE_URL", matches = ".+")
+public class ExchangeRatesClusterTest {
+
+    private static final long TIMEOUT = 30000;
+
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    private HttpServer server;
+
+    private long timestamp;
+
+    private String currencyCode;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // newer than the exchange rates data persisted by previous runs
+        timestamp = System.currentTimeMillis() / 1000;
+        currencyCode = "Q" + (char) ('A' + ThreadLocalRandom.current().nextInt(26))
+                + (char) ('A' + ThreadLocalRandom.current().nextInt(26));
+        // a rate with more decimal places than the persisted ones
+        byte[] response = ("{\"timestamp\": " + timestamp + ", \"base\": \"USD\", \"rates\": {\"USD\": 1, "
+                + "\"EUR\": 0.93, \"BTC\": 0.000016412345678, \"" + currencyCode + "\": 41.5}}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/latest.json", exchange -> {
+            upstreamRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+        server.stop(0);
+    }
+
+    @Test
+    void testLeaderFetchesAndFollowerReceives() throws InterruptedException {
+        ExchangeRatesCluster first = start().getBean(ExchangeRatesCluster.class);
+        ExchangeRatesCluster second = start().getBean(ExchangeRatesCluster.class);
+        await(() -> first.isLeader() ^ second.isLeader());
+        ConfigurableApplicationContext leader = contexts.get(first.isLeader() ? 0 : 1);
+        ConfigurableApplicationContext follower = contexts.get(first.isLeader() ? 1 : 0);
+
+        // only the leader calls the external API, and the follower publishes the persisted exchange rates data
+        ExchangeRatesService leaderService = leader.getBean(ExchangeRatesService.class);
+        ExchangeRatesService followerService = follower.getBean(ExchangeRatesService.class);
+        await(() -> leaderService.isInitialized() && followerService.isInitialized()
+                && followerService.getExchangeRatesSnapshot().apply("USD") != null);
+        assertEquals(1, upstreamRequests.get());
+
+        // the leader does not publish its own exchange rates data again as read back from the database
+        long leaderGeneration = leaderService.getGeneration();
+        long followerGeneration = followerService.getGeneration();
+        Thread.sleep(1000);
+        assertEquals(leaderGeneration, leaderService.getGeneration());
+        assertEquals(followerGeneration, followerService.getGeneration());
+        assertEquals(1, upstreamRequests.get());
+
+        // a currency added on the follower is published on the leader
+        followerService.addCurrency(currencyCode);
+        await(() -> leaderService.getCurrencies().contains(currencyCode));
+        assertEquals(timestamp, leaderService.getExchangeRates(currencyCode).timestamp());
+        assertEquals(timestamp, followerService.getExchangeRates(currencyCode).timestamp());
+
+        // the follower takes over when the leader stops
+        leader.close();
+        ExchangeRatesCluster remaining = follower.getBean(ExchangeRatesCluster.class);
+        await(remaining::isLeader);
+        assertEquals(1, upstreamRequests.get());
+    }
+
+    private ConfigurableApplicationContext start() {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ExchangeServiceApplication.class)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=" + System.getenv("EXCHANGE_CLUSTER_DATASOURCE_URL"),
+                        "--spring.jpa.show-sql=false",
+                        "--server.port=0",
+                        "--exchange.snapshot.file=",
+                        "--exchange.cluster.enabled=true",
+                        "--exchange.cluster.poll.interval=200",
+                        "--exchange.cluster.reconnect.delay=500",
+                        "--exchange.providers=openexchangerates",
+                        "--external.openexchangerates.baseUrl=http://localhost:" + server.getAddress().getPort()
+                                + "/");
+        contexts.add(context);
+        return context;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition is not met within the timeout");
+            Thread.sleep(100);
+        }
+    }
+}
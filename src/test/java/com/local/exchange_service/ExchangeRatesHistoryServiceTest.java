@@ -0,0 +1,101 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.CurrencyDictionaryRepository;
+import com.local.exchange_service.db.CurrencyRateRepository;
+import com.local.exchange_service.db.ExchangeLoggingService.StorageMode;
+import com.local.exchange_service.db.ExchangeRateRepository;
+import com.local.exchange_service.db.RateSnapshotRepository;
+import com.local.exchange_service.db.RateSnapshotStore;
+import com.local.exchange_service.db.entities.CurrencyRate;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+public class ExchangeRatesHistoryServiceTest {
+
+    private static final List<IExchangeRates> SNAPSHOTS = List.of(
+            new ExchangeRates(1100L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.9), "UAH", BigDecimal.valueOf(40))),
+            new ExchangeRates(1200L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.8), "UAH", BigDecimal.valueOf(41))),
+            new ExchangeRates(1200L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "EUR", BigDecimal.valueOf(0.85), "UAH", BigDecimal.valueOf(41))),
+            new ExchangeRates(1300L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                    "UAH", BigDecimal.valueOf(42))));
+
+    @Autowired
+    private CurrencyRateRepository currencyRateRepository;
+
+    @Autowired
+    private ExchangeRateRepository exchangeRateRepository;
+
+    @Autowired
+    private RateSnapshotRepository rateSnapshotRepository;
+
+    @Autowired
+    private CurrencyDictionaryRepository currencyDictionaryRepository;
+
+    @Test
+    void testHistoryRows() {
+        SNAPSHOTS.forEach(snapshot -> currencyRateRepository.save(new CurrencyRate(snapshot)));
+        currencyRateRepository.flush();
+
+        assertHistory(createService(StorageMode.ROWS));
+    }
+
+    @Test
+    void testHistoryColumnar() {
+        RateSnapshotStore rateSnapshotStore = new RateSnapshotStore(rateSnapshotRepository,
+                currencyDictionaryRepository);
+        rateSnapshotStore.saveAll(SNAPSHOTS);
+        rateSnapshotRepository.flush();
+
+        assertHistory(createService(StorageMode.COLUMNAR));
+    }
+
+    private void assertHistory(ExchangeRatesHistoryService historyService) {
+        List<IExchangeRates> history = new ArrayList<>();
+        historyService.forEachExchangeRates("EUR", Set.of("USD", "UAH"), 1000L, 1300L, history::add);
+
+        // the snapshot at 1300 has no EUR rate, and the latest snapshot at 1200 replaces the earlier one
+        assertEquals(List.of(
+                new ExchangeRates(1100L, "EUR", Map.of("USD", new BigDecimal("1.1111111111"),
+                        "UAH", new BigDecimal("44.4444444444"))),
+                new ExchangeRates(1200L, "EUR", Map.of("USD", new BigDecimal("1.1764705882"),
+                        "UAH", new BigDecimal("48.2352941176")))), history);
+
+        assertEquals(new ExchangeRates(1200L, "EUR", Map.of("USD", new BigDecimal("1.1764705882"),
+                        "EUR", BigDecimal.ONE, "UAH", new BigDecimal("48.2352941176"))),
+                historyService.getExchangeRatesAt("EUR", null, 1250L));
+        assertEquals(new ExchangeRates(1300L, "USD", Map.of("UAH", new BigDecimal("42"))),
+                historyService.getExchangeRatesAt("USD", Set.of("UAH"), 1300L));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> historyService.getExchangeRatesAt("EUR", null, 1350L));
+        assertEquals("Currency code is not supported", e.getMessage());
+        e = assertThrows(RuntimeException.class, () -> historyService.getExchangeRatesAt("EUR", null, 1050L));
+        assertEquals("Exchange rates are unavailable", e.getMessage());
+        e = assertThrows(RuntimeException.class,
+                () -> historyService.forEachExchangeRates("EUR", null, 1300L, 1100L, history::add));
+        assertEquals("Time range is invalid", e.getMessage());
+    }
+
+    private ExchangeRatesHistoryService createService(StorageMode storageMode) {
+        return new ExchangeRatesHistoryService(currencyRateRepository, exchangeRateRepository,
+                new RateSnapshotStore(rateSnapshotRepository, currencyDictionaryRepository), storageMode, 10);
+    }
+}
@@ -3,18 +3,25 @@ package com.local.exchange_service;
 import com.local.exchange_service.interfaces.IExchangeApiService;
 import com.local.exchange_service.interfaces.IExchangeLoggingService;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.BulkConversion;
+import com.local.exchange_service.model.CompactExchangeRates;
+import com.local.exchange_service.model.Conversion;
 import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,13 +34,17 @@ public class ExchangeRatesServiceTest {
     @Mock
     private IExchangeLoggingService exchangeLoggingService;
 
+    private final ExchangeRatesSnapshotFile snapshotFile = new ExchangeRatesSnapshotFile("");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private ExchangeRatesService exchangeRatesService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
         exchangeRatesService = new ExchangeRatesService(exchangeApi,
-                exchangeLoggingService, 1000, 2);
+                exchangeLoggingService, 1000, 2, ExchangeRatesService.RatesMode.EAGER, 16, snapshotFile, meterRegistry);
     }
 
     @Test
@@ -43,9 +54,7 @@ public class ExchangeRatesServiceTest {
         assertEquals(Collections.emptySet(), exchangeRatesService.getCurrencies());
 
         // Test mocked state
-        Map<String, IExchangeRates> exchangeRatesMap = Map.of("USD", mock(IExchangeRates.class),
-                "EUR", mock(IExchangeRates.class));
-        ReflectionTestUtils.setField(exchangeRatesService, "exchangeRatesMap", exchangeRatesMap);
+        setSnapshot(mock(IExchangeRates.class), Set.of("USD", "EUR"), Map.of());
 
         assertEquals(Set.of("USD", "EUR"), exchangeRatesService.getCurrencies());
     }
@@ -58,14 +67,12 @@ public class ExchangeRatesServiceTest {
         when(rates.isEmpty()).thenReturn(false);
         when(rates.containsKey(any())).thenReturn(true);
 
-        ReflectionTestUtils.setField(exchangeRatesService, "latestResponse", latestResponse);
-
         IExchangeRates usdRates = mock(IExchangeRates.class);
         IExchangeRates eurRates = mock(IExchangeRates.class);
         Map<String, IExchangeRates> exchangeRatesMap = Map.of("USD", usdRates,
                 "EUR", eurRates);
 
-        ReflectionTestUtils.setField(exchangeRatesService, "exchangeRatesMap", exchangeRatesMap);
+        setSnapshot(latestResponse, Set.of("USD", "EUR"), exchangeRatesMap);
 
         assertEquals(usdRates, exchangeRatesService.getExchangeRates("USD"));
         assertEquals(eurRates, exchangeRatesService.getExchangeRates("EUR"));
@@ -84,21 +91,16 @@ public class ExchangeRatesServiceTest {
                 "GBP", BigDecimal.valueOf(0.77));
         when(latestResponse.rates()).thenReturn(latestResponseRates);
 
-        ReflectionTestUtils.setField(exchangeRatesService, "latestResponse", latestResponse);
-
-        Map<String, IExchangeRates> exchangeRatesMap = new HashMap<>();
-        ReflectionTestUtils.setField(exchangeRatesService, "exchangeRatesMap", exchangeRatesMap);
+        setSnapshot(latestResponse, Set.of(), Map.of());
 
         assertEquals(Set.of("USD"), exchangeRatesService.addCurrency("USD"));
-        exchangeRatesMap = (Map<String, IExchangeRates>) ReflectionTestUtils.getField(exchangeRatesService,
-                "exchangeRatesMap");
+        Map<String, IExchangeRates> exchangeRatesMap = getExchangeRatesMap();
         assertEquals(new ExchangeRates(12345L,
                         "USD", Map.of("USD", BigDecimal.valueOf(1))),
                 exchangeRatesMap.get("USD"));
 
         assertEquals(Set.of("USD", "EUR"), exchangeRatesService.addCurrency("EUR"));
-        exchangeRatesMap = (Map<String, IExchangeRates>) ReflectionTestUtils.getField(exchangeRatesService,
-                "exchangeRatesMap");
+        exchangeRatesMap = getExchangeRatesMap();
         assertEquals(new ExchangeRates(12345L,
                         "USD", Map.of("USD", BigDecimal.valueOf(1),
                         "EUR", BigDecimal.valueOf(0.93))),
@@ -110,27 +112,161 @@ public class ExchangeRatesServiceTest {
     }
 
     @Test
-    void testFetchExchangeRatesEmptyCurrencies() {
-        Map<String, IExchangeRates> exchangeRatesMap = new HashMap<>();
-        ReflectionTestUtils.setField(exchangeRatesService, "exchangeRatesMap", exchangeRatesMap);
+    void testAddExchangeRatesMatchesFullRebuild() {
+        IExchangeRates latestResponse = mock(IExchangeRates.class);
+        when(latestResponse.timestamp()).thenReturn(12345L);
+        when(latestResponse.baseCurrency()).thenReturn("USD");
+        Map<String, BigDecimal> latestResponseRates = Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93),
+                "UAH", BigDecimal.valueOf(41.15),
+                "GBP", BigDecimal.valueOf(0.77),
+                "BTC", new BigDecimal("0.0000131"));
+        when(latestResponse.rates()).thenReturn(latestResponseRates);
+
+        Map<String, IExchangeRates> exchangeRatesMap = ExchangeRatesService.buildExchangeRatesMap(
+                Set.of("USD", "EUR", "UAH"), latestResponse, 10);
 
+        Map<String, IExchangeRates> incremental = ExchangeRatesService.addExchangeRates(exchangeRatesMap,
+                "BTC", latestResponse, 10);
+        incremental = ExchangeRatesService.addExchangeRates(incremental, "GBP", latestResponse, 10);
+
+        assertEquals(ExchangeRatesService.buildExchangeRatesMap(latestResponseRates.keySet(), latestResponse, 10),
+                incremental);
+        assertEquals(Set.of("USD", "EUR", "UAH"), exchangeRatesMap.keySet());
+        assertEquals(Set.of("USD", "EUR", "UAH"), exchangeRatesMap.get("USD").rates().keySet());
+    }
+
+    @Test
+    void testUpdateExchangeRatesMatchesFullRebuild() {
+        IExchangeRates previous = new ExchangeRates(12345L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93),
+                "UAH", BigDecimal.valueOf(41.15),
+                "GBP", BigDecimal.valueOf(0.77),
+                "BTC", new BigDecimal("0.0000131")));
+        IExchangeRates latest = new ExchangeRates(12400L, "USD", Map.of("USD", new BigDecimal("1.00"),
+                "EUR", BigDecimal.valueOf(0.94),
+                "UAH", BigDecimal.valueOf(41.15),
+                "GBP", BigDecimal.valueOf(0.77),
+                "BTC", new BigDecimal("0.0000129")));
+        Set<String> currencies = Set.of("USD", "EUR", "UAH", "GBP");
+
+        Set<String> changedCurrencies = ExchangeRatesService.changedCurrencies(previous, latest);
+        Map<String, IExchangeRates> updated = ExchangeRatesService.updateExchangeRates(
+                ExchangeRatesService.buildExchangeRatesMap(currencies, previous, 10), changedCurrencies, latest, 10);
+
+        assertEquals(Set.of("EUR", "BTC"), changedCurrencies);
+        assertEquals(ExchangeRatesService.buildExchangeRatesMap(currencies, latest, 10), updated);
+        assertNull(ExchangeRatesService.changedCurrencies(previous, new ExchangeRates(12400L, "EUR",
+                previous.rates())));
+        assertNull(ExchangeRatesService.changedCurrencies(previous, new ExchangeRates(12400L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1)))));
+    }
+
+    @Test
+    void testFetchExchangeRatesEmptyCurrencies() {
         IExchangeRates mockResponse = mock(IExchangeRates.class);
-        when(exchangeApi.getExchangeRates()).thenReturn(mockResponse);
+        when(exchangeApi.getExchangeRates(any())).thenReturn(mockResponse);
 
         exchangeRatesService.fetchExchangeRates();
 
-        exchangeRatesMap = (Map<String, IExchangeRates>) ReflectionTestUtils.getField(exchangeRatesService,
-                "exchangeRatesMap");
-        assertTrue(exchangeRatesMap.isEmpty());
-        verify(exchangeApi, times(1)).getExchangeRates();
+        assertTrue(getExchangeRatesMap().isEmpty());
+        verify(exchangeApi, times(1)).getExchangeRates(any());
+        verify(exchangeLoggingService, times(1)).logCurrencyRate(mockResponse);
+    }
+
+    @Test
+    void testFetchExchangeRatesNotModified() {
+        IExchangeRates mockResponse = mock(IExchangeRates.class);
+        when(exchangeApi.getExchangeRates(any())).thenReturn(mockResponse);
+
+        assertTrue(exchangeRatesService.fetchExchangeRates());
+        long generation = exchangeRatesService.getGeneration();
+        long updateTime = exchangeRatesService.getLastUpdateTime();
+
+        assertFalse(exchangeRatesService.fetchExchangeRates());
+
+        assertEquals(generation, exchangeRatesService.getGeneration());
+        assertTrue(exchangeRatesService.getLastUpdateTime() >= updateTime);
+        verify(exchangeApi, times(2)).getExchangeRates(any());
         verify(exchangeLoggingService, times(1)).logCurrencyRate(mockResponse);
     }
 
+    @Test
+    void testFetchExchangeRatesUnchanged() {
+        when(exchangeApi.getExchangeRates(any())).thenReturn(
+                new ExchangeRates(12345L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93))),
+                new ExchangeRates(12345L, "USD", Map.of("USD", new BigDecimal("1.00"),
+                        "EUR", new BigDecimal("0.930"))),
+                new ExchangeRates(12400L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93))));
+
+        assertTrue(exchangeRatesService.fetchExchangeRates());
+        long generation = exchangeRatesService.getGeneration();
+
+        assertFalse(exchangeRatesService.fetchExchangeRates());
+        assertEquals(generation, exchangeRatesService.getGeneration());
+
+        assertTrue(exchangeRatesService.fetchExchangeRates());
+        assertEquals(generation + 1, exchangeRatesService.getGeneration());
+        verify(exchangeLoggingService, times(2)).logCurrencyRate(any());
+    }
+
+    @Test
+    void testFetchExchangeRatesMissingAddedCurrency() {
+        IExchangeRates published = new ExchangeRates(12345L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93), "UAH", BigDecimal.valueOf(41.15)));
+        for (ExchangeRatesService.RatesMode ratesMode : ExchangeRatesService.RatesMode.values()) {
+            when(exchangeApi.getExchangeRates(any())).thenReturn(published,
+                    new ExchangeRates(12400L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                            "EUR", BigDecimal.valueOf(0.94))),
+                    new ExchangeRates(12300L, "USD", published.rates()));
+            exchangeRatesService = new ExchangeRatesService(exchangeApi,
+                    exchangeLoggingService, 1000, 2, ratesMode, 16, snapshotFile, meterRegistry);
+            exchangeRatesService.fetchExchangeRates();
+            exchangeRatesService.addCurrency("EUR");
+            exchangeRatesService.addCurrency("UAH");
+            long generation = exchangeRatesService.getGeneration();
+
+            // a subset of the exchange rates, such as a fallback provider returns, is rejected
+            RuntimeException e = assertThrows(RuntimeException.class,
+                    () -> exchangeRatesService.fetchExchangeRates());
+            assertEquals("Exchange rates data misses added currencies: UAH", e.getMessage());
+            // and so are older exchange rates
+            e = assertThrows(RuntimeException.class, () -> exchangeRatesService.fetchExchangeRates());
+            assertEquals("Exchange rates data is older than the published exchange rates data", e.getMessage());
+
+            assertEquals(generation, exchangeRatesService.getGeneration());
+            assertEquals(12345L, exchangeRatesService.getExchangeRates("UAH").timestamp());
+            verify(exchangeApi, atLeastOnce()).getExchangeRates(published);
+        }
+        verify(exchangeLoggingService, times(3)).logCurrencyRate(published);
+    }
+
+    @Test
+    void testReceiveExchangeRatesAndCurrencies() {
+        exchangeRatesService.receiveCurrencies(Set.of("EUR"));
+        assertEquals(Set.of(), exchangeRatesService.getCurrencies());
+
+        assertTrue(exchangeRatesService.receiveExchangeRates(new ExchangeRates(12400L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.93)))));
+        exchangeRatesService.receiveCurrencies(Set.of("EUR", "UAH"));
+
+        assertEquals(Set.of("EUR"), exchangeRatesService.getCurrencies());
+        assertEquals(12400L, exchangeRatesService.getExchangeRates("EUR").timestamp());
+        // older exchange rates data is skipped
+        assertFalse(exchangeRatesService.receiveExchangeRates(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.94)))));
+        verify(exchangeApi, never()).getExchangeRates(any());
+        verify(exchangeLoggingService, never()).logCurrencyRate(any());
+        verify(exchangeLoggingService, never()).logCurrencies(any());
+    }
+
     @Test
     void testFetchExchangeRatesAndUpdateRates() {
         Map<String, IExchangeRates> exchangeRatesMap = Map.of("USD", mock(IExchangeRates.class),
                 "EUR", mock(IExchangeRates.class));
-        ReflectionTestUtils.setField(exchangeRatesService, "exchangeRatesMap", exchangeRatesMap);
+        setSnapshot(mock(IExchangeRates.class), Set.of("USD", "EUR"), exchangeRatesMap);
 
         IExchangeRates latestResponse = mock(IExchangeRates.class);
         when(latestResponse.timestamp()).thenReturn(123456L);
@@ -140,12 +276,11 @@ public class ExchangeRatesServiceTest {
                 "UAH", BigDecimal.valueOf(41.15),
                 "GBP", BigDecimal.valueOf(0.77));
         when(latestResponse.rates()).thenReturn(latestResponseRates);
-        when(exchangeApi.getExchangeRates()).thenReturn(latestResponse);
+        when(exchangeApi.getExchangeRates(any())).thenReturn(latestResponse);
 
         exchangeRatesService.fetchExchangeRates();
 
-        exchangeRatesMap = (Map<String, IExchangeRates>) ReflectionTestUtils.getField(exchangeRatesService,
-                "exchangeRatesMap");
+        exchangeRatesMap = getExchangeRatesMap();
         assertEquals(new ExchangeRates(123456L,
                         "USD", Map.of("USD", BigDecimal.valueOf(1),
                         "EUR", BigDecimal.valueOf(0.94))),
@@ -154,8 +289,268 @@ public class ExchangeRatesServiceTest {
                         "EUR", Map.of("USD", BigDecimal.valueOf(1.06),
                         "EUR", BigDecimal.valueOf(1))),
                 exchangeRatesMap.get("EUR"));
-        verify(exchangeApi, times(1)).getExchangeRates();
+        verify(exchangeApi, times(1)).getExchangeRates(any());
         verify(exchangeLoggingService, times(1)).logCurrencyRate(latestResponse);
+        assertEquals(1, meterRegistry.get("exchange.upstream.fetch").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("exchange.rates.build").timer().count());
+        assertTrue(meterRegistry.get("exchange.rates.age").gauge().value() > 0);
+    }
+
+    @Test
+    void testGetExchangeRatesLazy() {
+        exchangeRatesService = new ExchangeRatesService(exchangeApi,
+                exchangeLoggingService, 1000, 2, ExchangeRatesService.RatesMode.LAZY, 1, snapshotFile, meterRegistry);
+
+        IExchangeRates latestResponse = mock(IExchangeRates.class);
+        when(latestResponse.timestamp()).thenReturn(12345L);
+        when(latestResponse.baseCurrency()).thenReturn("USD");
+        when(latestResponse.rates()).thenReturn(Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93),
+                "UAH", BigDecimal.valueOf(41.15)));
+        when(exchangeApi.getExchangeRates(any())).thenReturn(latestResponse);
+
+        exchangeRatesService.fetchExchangeRates();
+        assertEquals(Set.of("USD"), exchangeRatesService.addCurrency("USD"));
+        assertEquals(Set.of("USD", "EUR"), exchangeRatesService.addCurrency("EUR"));
+
+        IExchangeRates usdRates = exchangeRatesService.getExchangeRates("USD");
+        assertEquals(new ExchangeRates(12345L,
+                        "USD", Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93))),
+                usdRates);
+        assertSame(usdRates, exchangeRatesService.getExchangeRates("USD"));
+        RuntimeException e = assertThrows(RuntimeException.class, () -> exchangeRatesService.getExchangeRates("UAH"));
+        assertEquals("Currency code is not added to exchange service", e.getMessage());
+
+        // Cache holds a single base currency, so the USD exchange rates are evicted
+        IExchangeRates eurRates = exchangeRatesService.getExchangeRates("EUR");
+        assertEquals(new ExchangeRates(12345L,
+                        "EUR", Map.of("USD", BigDecimal.valueOf(1.08),
+                        "EUR", BigDecimal.valueOf(1))),
+                eurRates);
+        assertNotSame(usdRates, exchangeRatesService.getExchangeRates("USD"));
+
+        // Adding a currency starts a new generation of exchange rates
+        exchangeRatesService.addCurrency("UAH");
+        assertEquals(Set.of("USD", "EUR", "UAH"), exchangeRatesService.getExchangeRates("EUR").rates().keySet());
+        assertTrue(getExchangeRatesMap().isEmpty());
+    }
+
+    @Test
+    void testCompactExchangeRatesMatchEager() {
+        Random random = new Random(42);
+        Map<String, BigDecimal> latestResponseRates = new HashMap<>(Map.of("USD", BigDecimal.valueOf(1),
+                "BTC", new BigDecimal("0.000011834823"),
+                "VND", new BigDecimal("25435.000000"),
+                "XXX", new BigDecimal("123456789012345678901234567890.5")));
+        for (int i = 0; i < 50; i++) {
+            latestResponseRates.put("C" + i, BigDecimal.valueOf(1 + random.nextInt(1_000_000_000), random.nextInt(12)));
+        }
+        IExchangeRates latestResponse = new ExchangeRates(12345L, "USD", latestResponseRates);
+        var withoutOverflow = new HashMap<>(latestResponseRates);
+        withoutOverflow.remove("XXX");
+
+        for (Map<String, BigDecimal> rates : List.of(latestResponseRates, withoutOverflow)) {
+            IExchangeRates exchangeRates = new ExchangeRates(12345L, "USD", rates);
+            for (int scale : new int[]{2, 10, 18}) {
+                Map<String, IExchangeRates> expected = ExchangeRatesService.buildExchangeRatesMap(rates.keySet(),
+                        exchangeRates, scale);
+                Map<String, IExchangeRates> actual = ExchangeRatesService.buildCompactExchangeRatesMap(rates.keySet(),
+                        CompactExchangeRates.of(exchangeRates), scale);
+
+                assertEquals(expected.keySet(), actual.keySet());
+                expected.forEach((currency, expectedRates) -> {
+                    assertEquals(expectedRates.timestamp(), actual.get(currency).timestamp());
+                    assertEquals(expectedRates.baseCurrency(), actual.get(currency).baseCurrency());
+                    assertEquals(expectedRates.rates(), actual.get(currency).rates());
+                });
+            }
+        }
+    }
+
+    @Test
+    void testGetExchangeRatesCompact() {
+        exchangeRatesService = new ExchangeRatesService(exchangeApi,
+                exchangeLoggingService, 1000, 2, ExchangeRatesService.RatesMode.COMPACT, 16, snapshotFile,
+                meterRegistry);
+
+        IExchangeRates latestResponse = new ExchangeRates(12345L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93),
+                "UAH", BigDecimal.valueOf(41.15)));
+        when(exchangeApi.getExchangeRates(any())).thenReturn(latestResponse);
+
+        exchangeRatesService.fetchExchangeRates();
+        assertEquals(Set.of("USD"), exchangeRatesService.addCurrency("USD"));
+        assertEquals(Set.of("USD", "EUR"), exchangeRatesService.addCurrency("EUR"));
+
+        IExchangeRates eurRates = exchangeRatesService.getExchangeRates("EUR");
+        assertEquals(12345L, eurRates.timestamp());
+        assertEquals("EUR", eurRates.baseCurrency());
+        assertEquals(Map.of("USD", BigDecimal.valueOf(1.08), "EUR", BigDecimal.valueOf(1)), eurRates.rates());
+
+        when(exchangeApi.getExchangeRates(any())).thenReturn(new ExchangeRates(123456L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.94))));
+        exchangeRatesService.fetchExchangeRates();
+
+        eurRates = exchangeRatesService.getExchangeRates("EUR");
+        assertEquals(123456L, eurRates.timestamp());
+        assertEquals(Map.of("USD", BigDecimal.valueOf(1.06), "EUR", BigDecimal.valueOf(1)), eurRates.rates());
+    }
+
+    @Test
+    void testRestoreExchangeRates() {
+        IExchangeRates persisted = new ExchangeRates(12345L, "USD", Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.5), "UAH", BigDecimal.valueOf(40)));
+        when(exchangeLoggingService.findLatestExchangeRates()).thenReturn(Optional.of(persisted));
+        when(exchangeLoggingService.findCurrencies()).thenReturn(Set.of("USD", "EUR", "XYZ"));
+
+        exchangeRatesService.restoreExchangeRates();
+
+        // the unsupported currency is skipped, and the restored data is not an update from the external API
+        assertEquals(Set.of("USD", "EUR"), exchangeRatesService.getCurrencies());
+        assertEquals(new ExchangeRates(12345L, "EUR", Map.of("USD", BigDecimal.valueOf(2),
+                "EUR", BigDecimal.valueOf(1))), exchangeRatesService.getExchangeRates("EUR"));
+        assertEquals(0, exchangeRatesService.getLastUpdateTime());
+
+        assertEquals(Set.of("USD", "EUR", "UAH"), exchangeRatesService.addCurrency("UAH"));
+        verify(exchangeLoggingService).logCurrencies(Set.of("UAH"));
+    }
+
+    @Test
+    void testFetchExchangeRatesUnchangedAfterRestore() {
+        // rates are persisted with 10 decimal places
+        when(exchangeLoggingService.findLatestExchangeRates()).thenReturn(Optional.of(new ExchangeRates(12345L,
+                "USD", Map.of("USD", BigDecimal.ONE, "BTC", new BigDecimal("0.0000164123")))));
+        when(exchangeApi.getExchangeRates(any())).thenReturn(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.ONE, "BTC", new BigDecimal("0.000016412345"))));
+        exchangeRatesService.restoreExchangeRates();
+        long generation = exchangeRatesService.getGeneration();
+
+        assertFalse(exchangeRatesService.fetchExchangeRates());
+        assertEquals(generation, exchangeRatesService.getGeneration());
+        verify(exchangeLoggingService, never()).logCurrencyRate(any());
+    }
+
+    @Test
+    void testRestoreExchangeRatesFromSnapshotFile(@TempDir Path directory) throws IOException {
+        var file = new ExchangeRatesSnapshotFile(directory.resolve("snapshot.bin").toString());
+        file.write(new ExchangeRatesSnapshotFile.Content(41L, new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.5))), Set.of("EUR")));
+        exchangeRatesService = new ExchangeRatesService(exchangeApi,
+                exchangeLoggingService, 1000, 2, ExchangeRatesService.RatesMode.EAGER, 16, file, meterRegistry);
+
+        exchangeRatesService.restoreExchangeRates();
+
+        // the database is not read, and the generation continues from the file
+        verify(exchangeLoggingService, never()).findLatestExchangeRates();
+        assertEquals(41L, exchangeRatesService.getGeneration());
+        assertEquals(Set.of("EUR"), exchangeRatesService.getCurrencies());
+
+        exchangeRatesService.addCurrency("USD");
+        ExchangeRatesSnapshotFile.Content written = file.read().orElseThrow();
+        assertEquals(42L, written.generation());
+        assertEquals(Set.of("USD", "EUR"), written.currencies());
+    }
+
+    @Test
+    void testGetExchangeRatesSnapshot() {
+        when(exchangeApi.getExchangeRates(any())).thenReturn(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.15))));
+        exchangeRatesService.fetchExchangeRates();
+        exchangeRatesService.addCurrency("USD");
+        exchangeRatesService.addCurrency("EUR");
+
+        Function<String, IExchangeRates> snapshot = exchangeRatesService.getExchangeRatesSnapshot();
+
+        when(exchangeApi.getExchangeRates(any())).thenReturn(new ExchangeRates(123456L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.94),
+                        "UAH", BigDecimal.valueOf(41.2))));
+        exchangeRatesService.fetchExchangeRates();
+        exchangeRatesService.addCurrency("UAH");
+
+        assertEquals(12345L, snapshot.apply("EUR").timestamp());
+        assertEquals(Map.of("USD", BigDecimal.valueOf(1.08), "EUR", BigDecimal.valueOf(1)),
+                snapshot.apply("EUR").rates());
+        RuntimeException e = assertThrows(RuntimeException.class, () -> snapshot.apply("UAH"));
+        assertEquals("Currency code is not added to exchange service", e.getMessage());
+        e = assertThrows(RuntimeException.class, () -> snapshot.apply("GBP"));
+        assertEquals("Currency code is not supported", e.getMessage());
+        assertEquals(123456L, exchangeRatesService.getExchangeRates("EUR").timestamp());
+    }
+
+    @Test
+    void testConcurrentAddCurrencyAndFetch() throws Exception {
+        Map<String, BigDecimal> latestResponseRates = new HashMap<>();
+        for (int i = 0; i < 64; i++) {
+            latestResponseRates.put("C" + i, BigDecimal.valueOf(i + 1));
+        }
+        when(exchangeApi.getExchangeRates(any())).thenAnswer(invocation ->
+                new ExchangeRates(System.nanoTime(), "C0", latestResponseRates));
+        exchangeRatesService.fetchExchangeRates();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String currency = "C" + i;
+                futures.add(executor.submit(() -> exchangeRatesService.addCurrency(currency)));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    exchangeRatesService.fetchExchangeRates();
+                }
+            }));
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    assertConsistent(getSnapshot());
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(latestResponseRates.keySet(), exchangeRatesService.getCurrencies());
+        assertConsistent(getSnapshot());
+    }
+
+    @Test
+    void testConvert() {
+        when(exchangeApi.getExchangeRates(any())).thenReturn(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.15))));
+
+        for (ExchangeRatesService.RatesMode ratesMode : ExchangeRatesService.RatesMode.values()) {
+            exchangeRatesService = new ExchangeRatesService(exchangeApi,
+                    exchangeLoggingService, 1000, 2, ratesMode, 16, snapshotFile, meterRegistry);
+            exchangeRatesService.fetchExchangeRates();
+            exchangeRatesService.addCurrency("USD");
+            exchangeRatesService.addCurrency("EUR");
+
+            assertEquals(new Conversion(12345L, "EUR", "USD", BigDecimal.valueOf(1.08),
+                            new BigDecimal("10.555"), BigDecimal.valueOf(11.4)),
+                    exchangeRatesService.convert("EUR", "USD", new BigDecimal("10.555")));
+            // cached exchange rates are used in lazy mode
+            exchangeRatesService.getExchangeRates("EUR");
+            assertEquals(new BulkConversion(12345L, "EUR", "USD", BigDecimal.valueOf(1.08),
+                            List.of(BigDecimal.valueOf(1.08), BigDecimal.valueOf(0.01), BigDecimal.valueOf(-2.16))),
+                    exchangeRatesService.convert("EUR", "USD",
+                            List.of(BigDecimal.valueOf(1), new BigDecimal("0.005"), BigDecimal.valueOf(-2))));
+
+            RuntimeException e = assertThrows(RuntimeException.class,
+                    () -> exchangeRatesService.convert("EUR", "UAH", BigDecimal.ONE));
+            assertEquals("Currency code is not added to exchange service", e.getMessage());
+            e = assertThrows(RuntimeException.class,
+                    () -> exchangeRatesService.convert("GBP", "USD", BigDecimal.ONE));
+            assertEquals("Currency code is not supported", e.getMessage());
+        }
     }
 
     @Test
@@ -171,7 +566,7 @@ public class ExchangeRatesServiceTest {
     void testValidateRatesUnavailable() {
         IExchangeRates mockResponse = mock(IExchangeRates.class);
         when(mockResponse.rates()).thenReturn(Map.of());
-        ReflectionTestUtils.setField(exchangeRatesService, "latestResponse", mockResponse);
+        setSnapshot(mockResponse, Set.of(), Map.of());
 
         RuntimeException e = assertThrows(RuntimeException.class, () -> exchangeRatesService.addCurrency("USD"));
         assertEquals("Exchange rates are unavailable", e.getMessage());
@@ -184,7 +579,7 @@ public class ExchangeRatesServiceTest {
     void testValidateCodeNotSupported() {
         IExchangeRates mockResponse = mock(IExchangeRates.class);
         when(mockResponse.rates()).thenReturn(Map.of("EUR", BigDecimal.valueOf(1)));
-        ReflectionTestUtils.setField(exchangeRatesService, "latestResponse", mockResponse);
+        setSnapshot(mockResponse, Set.of(), Map.of());
 
         RuntimeException e = assertThrows(RuntimeException.class, () -> exchangeRatesService.addCurrency("USD"));
         assertEquals("Currency code is not supported", e.getMessage());
@@ -192,5 +587,29 @@ public class ExchangeRatesServiceTest {
         e = assertThrows(RuntimeException.class, () -> exchangeRatesService.getExchangeRates("USD"));
         assertEquals("Currency code is not supported", e.getMessage());
     }
+
+    private static void assertConsistent(ExchangeRatesService.Snapshot snapshot) {
+        assertEquals(snapshot.currencies(), snapshot.exchangeRatesMap().keySet());
+        snapshot.exchangeRatesMap().values().forEach(rates -> {
+            assertEquals(snapshot.exchangeRates().timestamp(), rates.timestamp());
+            assertEquals(snapshot.currencies(), rates.rates().keySet());
+        });
+    }
+
+    private ExchangeRatesService.Snapshot getSnapshot() {
+        return ((AtomicReference<ExchangeRatesService.Snapshot>) ReflectionTestUtils.getField(exchangeRatesService,
+                "snapshot")).get();
+    }
+
+    private Map<String, IExchangeRates> getExchangeRatesMap() {
+        return getSnapshot().exchangeRatesMap();
+    }
+
+    private void setSnapshot(IExchangeRates latestResponse, Set<String> currencies,
+                             Map<String, IExchangeRates> exchangeRatesMap) {
+        ((AtomicReference<ExchangeRatesService.Snapshot>) ReflectionTestUtils.getField(exchangeRatesService,
+                "snapshot")).set(new ExchangeRatesService.Snapshot(1, latestResponse, null, currencies,
+                exchangeRatesMap, 0));
+    }
 }
 
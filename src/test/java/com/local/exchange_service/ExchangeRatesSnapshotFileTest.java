@@ -0,0 +1,63 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.model.ExchangeRates;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExchangeRatesSnapshotFileTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        Path path = directory.resolve("data").resolve("snapshot.bin");
+        var snapshotFile = new ExchangeRatesSnapshotFile(path.toString());
+        assertEquals(Optional.empty(), snapshotFile.read());
+
+        var content = new ExchangeRatesSnapshotFile.Content(7L, new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.ONE, "EUR", new BigDecimal("0.93"), "BTC", new BigDecimal("0.0000112345"))),
+                Set.of("USD", "EUR"));
+        snapshotFile.write(content);
+
+        assertEquals(content, snapshotFile.read().orElseThrow());
+        assertFalse(Files.exists(directory.resolve("data").resolve("snapshot.bin.tmp")));
+    }
+
+    @Test
+    void testCorruptedFile() throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        var snapshotFile = new ExchangeRatesSnapshotFile(path.toString());
+        snapshotFile.write(new ExchangeRatesSnapshotFile.Content(1L, new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.ONE)), Set.of()));
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        IOException e = assertThrows(IOException.class, snapshotFile::read);
+        assertEquals("Snapshot file is corrupted", e.getMessage());
+
+        Files.write(path, new byte[]{1, 2, 3});
+        e = assertThrows(IOException.class, snapshotFile::read);
+        assertEquals("Snapshot file is corrupted", e.getMessage());
+    }
+
+    @Test
+    void testDisabled() throws IOException {
+        var snapshotFile = new ExchangeRatesSnapshotFile("");
+        assertFalse(snapshotFile.isEnabled());
+        snapshotFile.write(new ExchangeRatesSnapshotFile.Content(1L, new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.ONE)), Set.of()));
+        assertEquals(Optional.empty(), snapshotFile.read());
+    }
+}
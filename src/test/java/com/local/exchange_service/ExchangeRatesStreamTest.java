@@ -0,0 +1,296 @@
+package com.local.exchange_service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.local.exchange_service.interfaces.IExchangeApiService;
+import com.local.exchange_service.interfaces.IExchangeLoggingService;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class ExchangeRatesStreamTest {
+
+    @Mock
+    private IExchangeApiService exchangeApi;
+
+    @Mock
+    private IExchangeLoggingService exchangeLoggingService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ExchangeRatesService exchangeRatesService;
+
+    private ExchangeRatesStream exchangeRatesStream;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        exchangeRatesService = new ExchangeRatesService(exchangeApi, exchangeLoggingService, 1000, 10,
+                ExchangeRatesService.RatesMode.EAGER, 16, new ExchangeRatesSnapshotFile(""), new SimpleMeterRegistry());
+        exchangeRatesStream = new ExchangeRatesStream(exchangeRatesService, objectMapper, meterRegistry, 100, 2, 5000,
+                false);
+
+        when(exchangeApi.getExchangeRates(any())).thenReturn(exchangeRates(12345L, "0.93"));
+        exchangeRatesService.fetchExchangeRates();
+        exchangeRatesService.addCurrency("USD");
+        exchangeRatesService.addCurrency("EUR");
+    }
+
+    @AfterEach
+    void tearDown() {
+        exchangeRatesStream.shutdown();
+    }
+
+    @Test
+    void testSubscribeAndPushDelta() throws Exception {
+        var emitter = new CapturingEmitter(null);
+        exchangeRatesStream.subscribe(Set.of("USD"), emitter);
+
+        String event = emitter.next();
+        assertTrue(event.startsWith("id:" + exchangeRatesService.getGeneration() + "\nevent:rates\n"));
+        assertEquals(Set.of("USD", "EUR"), fieldNames(data(event).get("rates")));
+
+        exchangeRatesService.addCurrency("UAH");
+
+        event = emitter.next();
+        assertTrue(event.startsWith("id:" + exchangeRatesService.getGeneration() + "\nevent:delta\n"));
+        assertEquals(Set.of("UAH"), fieldNames(data(event).get("rates")));
+        assertEquals(1.0, meterRegistry.get("exchange.stream.subscribers").gauge().value());
+    }
+
+    @Test
+    void testSlowSubscriberGetsLatestRates() throws Exception {
+        var gate = new CountDownLatch(1);
+        var emitter = new CapturingEmitter(gate);
+        exchangeRatesStream.subscribe(Set.of("EUR"), emitter);
+
+        when(exchangeApi.getExchangeRates(any())).thenReturn(exchangeRates(12400L, "0.94"));
+        exchangeRatesService.fetchExchangeRates();
+        Thread.sleep(200);
+        when(exchangeApi.getExchangeRates(any())).thenReturn(exchangeRates(12500L, "0.95"));
+        exchangeRatesService.fetchExchangeRates();
+        Thread.sleep(200);
+        gate.countDown();
+
+        assertTrue(emitter.next().contains("event:rates"));
+        String event = emitter.next();
+        assertTrue(event.startsWith("id:" + exchangeRatesService.getGeneration() + "\nevent:rates\n"));
+        assertEquals(12500L, data(event).get("timestamp").asLong());
+        assertNull(emitter.events.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1.0, meterRegistry.counter("exchange.stream.conflated").count());
+    }
+
+    @Test
+    void testStalledSubscriberDoesNotBlockOthers() throws Exception {
+        exchangeRatesStream.shutdown();
+        exchangeRatesStream = new ExchangeRatesStream(exchangeRatesService, objectMapper, meterRegistry, 100, 1, 200,
+                false);
+        var gate = new CountDownLatch(1);
+        var stalled = new CapturingEmitter(gate);
+        var emitter = new CapturingEmitter(null);
+        try {
+            // the stalled subscriber never reads, holding the only sender thread
+            exchangeRatesStream.subscribe(Set.of("USD"), stalled);
+            exchangeRatesStream.subscribe(Set.of("EUR"), emitter);
+
+            assertNotNull(emitter.events.poll(2, TimeUnit.SECONDS));
+            when(exchangeApi.getExchangeRates(any())).thenReturn(exchangeRates(12400L, "0.94"));
+            exchangeRatesService.fetchExchangeRates();
+            String event = emitter.events.poll(2, TimeUnit.SECONDS);
+
+            assertNotNull(event);
+            assertEquals(12400L, data(event).get("timestamp").asLong());
+            assertEquals(1.0, meterRegistry.counter("exchange.stream.send.timeouts").count());
+            assertEquals(1.0, meterRegistry.get("exchange.stream.subscribers").gauge().value());
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    @Test
+    void testStalledEmittersAreCompleted() throws Exception {
+        exchangeRatesStream.shutdown();
+        exchangeRatesStream = new ExchangeRatesStream(exchangeRatesService, objectMapper, meterRegistry, 100, 1, 200,
+                false);
+        var gate = new CountDownLatch(1);
+        var emitter = new CapturingEmitter(null);
+        try {
+            // a real emitter holds its lock while the send blocks, so completing it waits for the send
+            exchangeRatesStream.subscribe(Set.of("USD"), blockingEmitter(gate));
+            awaitTimeouts(1);
+            // the watchdog is not blocked by the first stalled emitter
+            exchangeRatesStream.subscribe(Set.of("EUR"), blockingEmitter(gate));
+            awaitTimeouts(2);
+
+            exchangeRatesStream.subscribe(Set.of("USD"), emitter);
+            assertNotNull(emitter.events.poll(2, TimeUnit.SECONDS));
+            assertEquals(1.0, meterRegistry.get("exchange.stream.subscribers").gauge().value());
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    @Test
+    void testSubscribeNotAddedCurrency() {
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> exchangeRatesStream.subscribe(Set.of("UAH"), new CapturingEmitter(null)));
+        assertEquals("Currency code is not added to exchange service", e.getMessage());
+        assertEquals(0.0, meterRegistry.get("exchange.stream.subscribers").gauge().value());
+    }
+
+    private static ExchangeRates exchangeRates(final long timestamp, final String eurRate) {
+        return new ExchangeRates(timestamp, "USD", Map.of("USD", BigDecimal.ONE,
+                "EUR", new BigDecimal(eurRate),
+                "UAH", BigDecimal.valueOf(41.15)));
+    }
+
+    private void awaitTimeouts(final double timeouts) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (meterRegistry.counter("exchange.stream.send.timeouts").count() < timeouts) {
+            assertTrue(System.currentTimeMillis() < deadline, "Send is not timed out within the timeout");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Creates an emitter handled by Spring MVC like the one returned by {@link ExchangeStreamController}, writing to
+     * a response that blocks until the gate is opened like a client that does not read.
+     */
+    private static ResponseBodyEmitter blockingEmitter(final CountDownLatch gate) throws Exception {
+        var request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        var response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return new BlockingOutputStream(gate);
+            }
+        };
+        AsyncWebRequest asyncWebRequest = WebAsyncUtils.createAsyncWebRequest(request, response);
+        WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(asyncWebRequest);
+
+        var emitter = new ResponseBodyEmitter();
+        new ResponseBodyEmitterReturnValueHandler(List.of(new ByteArrayHttpMessageConverter())).handleReturnValue(
+                emitter, new MethodParameter(ExchangeStreamController.class.getMethod("streamExchangeRates",
+                        Set.class), -1), new ModelAndViewContainer(), asyncWebRequest);
+        return emitter;
+    }
+
+    private JsonNode data(final String event) throws IOException {
+        return objectMapper.readTree(event.substring(event.indexOf("data:") + "data:".length()));
+    }
+
+    private static Set<String> fieldNames(final JsonNode node) {
+        Set<String> names = new HashSet<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    /**
+     * Output stream blocking each write until the gate is opened, ignoring interrupts like a socket write.
+     */
+    private static final class BlockingOutputStream extends ServletOutputStream {
+        private final CountDownLatch gate;
+
+        private BlockingOutputStream(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void write(int b) {
+            await();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            await();
+        }
+
+        @Override
+        public boolean isReady() {
+            return gate.getCount() == 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        private void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    gate.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Emitter collecting sent events, optionally blocking each send until the gate is opened like a slow client.
+     */
+    private static final class CapturingEmitter extends ResponseBodyEmitter {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private final CountDownLatch gate;
+
+        private CapturingEmitter(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) throws IOException {
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(new String((byte[]) object, StandardCharsets.UTF_8));
+        }
+
+        private String next() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            return event;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.db.UpstreamRequestStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExchangeRatesUpdateSchedulerTest {
+
+    private static final long HOUR = 3600000;
+
+    // November has 30 days: 2592000000 ms
+    private static final Instant NOW = Instant.parse("2024-11-01T00:00:00Z");
+
+    @Mock
+    private ExchangeRatesService exchangeRatesService;
+
+    @Mock
+    private ExchangeRatesCluster cluster;
+
+    @Mock
+    private UpstreamRequestStore requestStore;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(cluster.isLeader()).thenReturn(true);
+        when(cluster.getPollInterval()).thenReturn(1000L);
+    }
+
+    @Test
+    void testInterval() {
+        assertEquals(HOUR, scheduler(1000).interval(NOW));
+        assertEquals(25920000L, scheduler(100).interval(NOW));
+    }
+
+    @Test
+    void testUpdateSpendsQuotaAndResetsNextMonth() {
+        when(exchangeRatesService.fetchExchangeRates()).thenReturn(true, false);
+        when(requestStore.increment(YearMonth.of(2024, 11))).thenReturn(1, 2);
+        ExchangeRatesUpdateScheduler scheduler = scheduler(2);
+
+        scheduler.update();
+        assertEquals(1, scheduler.remaining(YearMonth.of(2024, 11)));
+        verify(taskScheduler).schedule(any(Runnable.class), eq(NOW.plusMillis(2592000000L)));
+
+        scheduler.update();
+        assertEquals(0, scheduler.remaining(YearMonth.of(2024, 11)));
+        assertEquals(2592000000L, scheduler.interval(NOW));
+        assertEquals(2, scheduler.remaining(YearMonth.of(2024, 12)));
+
+        assertEquals(2.0, meterRegistry.counter("exchange.upstream.requests").count());
+        assertEquals(1.0, meterRegistry.counter("exchange.update.skipped").count());
+        assertEquals(0.0, meterRegistry.get("exchange.upstream.quota.remaining").gauge().value());
+    }
+
+    @Test
+    void testUpdateFailureBacksOff() {
+        when(exchangeRatesService.fetchExchangeRates()).thenThrow(new RuntimeException("Unavailable"));
+        ExchangeRatesUpdateScheduler scheduler = scheduler(1000);
+
+        scheduler.update();
+        scheduler.update();
+
+        ArgumentCaptor<Instant> next = ArgumentCaptor.forClass(Instant.class);
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), next.capture());
+        long first = next.getAllValues().get(0).toEpochMilli() - NOW.toEpochMilli();
+        long second = next.getAllValues().get(1).toEpochMilli() - NOW.toEpochMilli();
+        assertTrue(first >= 30000 && first <= 60000);
+        assertTrue(second >= 60000 && second <= 120000);
+        assertEquals(2.0, meterRegistry.counter("exchange.update.failed").count());
+        // responses are cached until the update after the backoff, not for the regular interval
+        assertEquals(next.getAllValues().get(1).toEpochMilli(), scheduler.getNextUpdateTime());
+    }
+
+    @Test
+    void testUpdateOnlyOnLeader() {
+        when(cluster.isLeader()).thenReturn(false, true);
+        when(exchangeRatesService.getLastUpdateTime()).thenReturn(NOW.toEpochMilli() - HOUR / 4);
+        ExchangeRatesUpdateScheduler scheduler = scheduler(1000);
+
+        // a follower checks for the leadership, and a new leader waits for the interval after the last update
+        scheduler.update();
+        scheduler.update();
+
+        verify(exchangeRatesService, never()).fetchExchangeRates();
+        verify(taskScheduler).schedule(any(Runnable.class), eq(NOW.plusMillis(1000)));
+        verify(taskScheduler).schedule(any(Runnable.class), eq(NOW.plusMillis(HOUR * 3 / 4)));
+        assertEquals(NOW.toEpochMilli() + HOUR * 3 / 4, scheduler.getNextUpdateTime());
+        assertEquals(0.0, meterRegistry.counter("exchange.upstream.requests").count());
+
+        scheduler.update();
+        verify(exchangeRatesService).fetchExchangeRates();
+    }
+
+    @Test
+    void testUpdateContinuesStoredCountAndRestoredData() {
+        // 10 requests remain after a restart, and the restored exchange rates data is half an hour old
+        when(requestStore.find(YearMonth.of(2024, 11))).thenReturn(990);
+        when(exchangeRatesService.getExchangeRatesTime()).thenReturn(NOW.toEpochMilli() - HOUR / 2);
+        ExchangeRatesUpdateScheduler scheduler = scheduler(1000);
+
+        scheduler.update();
+
+        verify(exchangeRatesService, never()).fetchExchangeRates();
+        assertEquals(10, scheduler.remaining(YearMonth.of(2024, 11)));
+        verify(taskScheduler).schedule(any(Runnable.class), eq(NOW.plusMillis(259200000L - HOUR / 2)));
+    }
+
+    @Test
+    void testBackoffWithJitter() {
+        ExchangeRatesUpdateScheduler scheduler = scheduler(1000);
+
+        for (int failures = 1; failures <= 64; failures++) {
+            long backoff = scheduler.backoff(failures);
+            long exponential = 60000L << Math.min(failures - 1, 20);
+            assertTrue(backoff >= exponential / 2 && backoff <= exponential);
+        }
+    }
+
+    private ExchangeRatesUpdateScheduler scheduler(final int quota) {
+        return new ExchangeRatesUpdateScheduler(exchangeRatesService, cluster, requestStore, taskScheduler,
+                meterRegistry, Clock.fixed(NOW, ZoneOffset.UTC), HOUR, quota, 60000);
+    }
+}
@@ -0,0 +1,50 @@
+package com.local.exchange_service;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExchangeRatesWireCodecTest {
+
+    @Test
+    void testEncodeAndDecode() {
+        var exchangeRates = new ExchangeRates(1731085200L, "USD", Map.of("USD", BigDecimal.ONE,
+                "EUR", new BigDecimal("0.9300000000"), "BTC", new BigDecimal("0.0000112345"),
+                "VND", new BigDecimal("25355.5")));
+
+        byte[] encoded = ExchangeRatesWireCodec.encode(exchangeRates);
+
+        assertEquals(exchangeRates, ExchangeRatesWireCodec.decode(encoded));
+        assertArrayEquals(encoded, ExchangeRatesWireCodec.encode(new ExchangeRates(1731085200L, "USD",
+                Map.of("VND", new BigDecimal("25355.5"), "BTC", new BigDecimal("0.0000112345"),
+                        "EUR", new BigDecimal("0.9300000000"), "USD", BigDecimal.ONE))));
+    }
+
+    @Test
+    void testRoundsRatesOutOfRange() {
+        IExchangeRates decoded = ExchangeRatesWireCodec.decode(ExchangeRatesWireCodec.encode(new ExchangeRates(
+                12345L, "BTC", Map.of("IRR", new BigDecimal("4110000000.1234567891234")))));
+
+        assertEquals(new BigDecimal("4110000000.12345679"), decoded.rates().get("IRR"));
+    }
+
+    @Test
+    void testMalformed() {
+        byte[] encoded = ExchangeRatesWireCodec.encode(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.ONE)));
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ExchangeRatesWireCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        assertEquals("Encoded exchange rates are truncated", e.getMessage());
+
+        encoded[0] = 2;
+        e = assertThrows(RuntimeException.class, () -> ExchangeRatesWireCodec.decode(encoded));
+        assertEquals("Unsupported version of encoded exchange rates", e.getMessage());
+    }
+}
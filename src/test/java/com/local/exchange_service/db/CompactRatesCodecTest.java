@@ -0,0 +1,50 @@
+package com.local.exchange_service.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactRatesCodecTest {
+
+    @Test
+    void testEncodeDecode() {
+        List<String> dictionary = List.of("BTC", "EUR", "UAH", "USD");
+        Map<String, BigDecimal> rates = Map.of("USD", BigDecimal.valueOf(1),
+                "EUR", BigDecimal.valueOf(0.93),
+                "BTC", new BigDecimal("0.00001312345678"));
+
+        byte[] encoded = CompactRatesCodec.encode(dictionary, rates);
+
+        assertEquals(dictionary.size() * Long.BYTES, encoded.length);
+        assertEquals(Map.of("USD", new BigDecimal("1.0000000000"),
+                        "EUR", new BigDecimal("0.9300000000"),
+                        "BTC", new BigDecimal("0.0000131235")),
+                CompactRatesCodec.decode(dictionary, encoded));
+    }
+
+    @Test
+    void testEncodeErrors() {
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> CompactRatesCodec.encode(List.of("USD"), Map.of("EUR", BigDecimal.valueOf(0.93))));
+        assertEquals("Currency code is missing in the dictionary", e.getMessage());
+
+        e = assertThrows(RuntimeException.class,
+                () -> CompactRatesCodec.encode(List.of("XXX"), Map.of("XXX", new BigDecimal("1e9"))));
+        assertEquals("Rate of XXX is out of range of the compact format", e.getMessage());
+    }
+
+    @Test
+    void testExtend() {
+        List<String> dictionary = List.of("USD", "EUR");
+
+        assertSame(dictionary, CompactRatesCodec.extend(dictionary, List.of("EUR")));
+        assertEquals(List.of("USD", "EUR", "BTC", "UAH"),
+                CompactRatesCodec.extend(dictionary, List.of("UAH", "USD", "BTC")));
+        assertEquals(dictionary, CompactRatesCodec.split(CompactRatesCodec.join(dictionary)));
+        assertEquals(List.of(), CompactRatesCodec.split(""));
+    }
+}
@@ -3,17 +3,25 @@ package com.local.exchange_service.db;
 import com.local.exchange_service.db.entities.CurrencyRate;
 import com.local.exchange_service.db.entities.ExchangeRate;
 import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -24,16 +32,43 @@ public class ExchangeLoggingServiceTest {
     @Autowired
     private CurrencyRateRepository currencyRateRepository;
 
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private ExchangeLoggingService exchangeLoggingService;
 
+    private ExchangeLoggingService columnarLoggingService;
+
+    private RateSnapshotStore rateSnapshotStore;
+
     @Autowired
-    public void setExchangeLoggingService(CurrencyRateRepository currencyRateRepository) {
-        this.exchangeLoggingService = new ExchangeLoggingService(currencyRateRepository);
+    public void setExchangeLoggingService(CurrencyRateRepository currencyRateRepository,
+                                          RateSnapshotRepository rateSnapshotRepository,
+                                          CurrencyDictionaryRepository currencyDictionaryRepository,
+                                          DailyRateRollupRepository dailyRateRollupRepository,
+                                          MonthlyRateRollupRepository monthlyRateRollupRepository,
+                                          TrackedCurrencyRepository trackedCurrencyRepository,
+                                          PlatformTransactionManager transactionManager) {
+        this.rateSnapshotStore = new RateSnapshotStore(rateSnapshotRepository, currencyDictionaryRepository);
+        RateRollupStore rateRollupStore = new RateRollupStore(dailyRateRollupRepository,
+                monthlyRateRollupRepository, Set.of("USD"), 10);
+        this.exchangeLoggingService = new ExchangeLoggingService(currencyRateRepository, rateSnapshotStore,
+                ExchangeLoggingService.StorageMode.ROWS, rateRollupStore, trackedCurrencyRepository,
+                new ExchangeRatesNotifier(null, false), transactionManager, meterRegistry, 16, 1000, 8, 10000, false);
+        this.columnarLoggingService = new ExchangeLoggingService(currencyRateRepository, rateSnapshotStore,
+                ExchangeLoggingService.StorageMode.COLUMNAR, rateRollupStore, trackedCurrencyRepository,
+                new ExchangeRatesNotifier(null, false), transactionManager, new SimpleMeterRegistry(), 16, 1000, 8,
+                10000, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        exchangeLoggingService.close();
+        columnarLoggingService.close();
     }
 
     @Test
     @Transactional
-    public void testLogCurrencyRate() {
+    public void testLogCurrencyRate() throws InterruptedException {
         IExchangeRates exchangeRates = mock(IExchangeRates.class);
         when(exchangeRates.timestamp()).thenReturn(12345L);
         when(exchangeRates.baseCurrency()).thenReturn("USD");
@@ -43,15 +78,82 @@ public class ExchangeLoggingServiceTest {
         when(exchangeRates.rates()).thenReturn(rates);
 
         exchangeLoggingService.logCurrencyRate(exchangeRates);
+        assertTrue(exchangeLoggingService.flush(10000));
 
-        CurrencyRate savedCurrencyRate = currencyRateRepository.findAll().stream().findFirst().orElse(null);
+        CurrencyRate savedCurrencyRate = currencyRateRepository.findAll().stream()
+                .filter(currencyRate -> currencyRate.getTimestamp() == 12345L)
+                .findFirst().orElse(null);
         assertNotNull(savedCurrencyRate);
         assertEquals(exchangeRates.timestamp(), savedCurrencyRate.getTimestamp());
         assertEquals(exchangeRates.baseCurrency(), savedCurrencyRate.getBaseCurrency());
 
         Map<String, ExchangeRate> savedRates = savedCurrencyRate.getRates();
-        assertEquals(BigDecimal.valueOf(1), savedRates.get("USD").getRate());
-        assertEquals(BigDecimal.valueOf(0.93), savedRates.get("EUR").getRate());
-        assertEquals(BigDecimal.valueOf(41.15), savedRates.get("UAH").getRate());
+        assertEquals(0, BigDecimal.valueOf(1).compareTo(savedRates.get("USD").getRate()));
+        assertEquals(0, BigDecimal.valueOf(0.93).compareTo(savedRates.get("EUR").getRate()));
+        assertEquals(0, BigDecimal.valueOf(41.15).compareTo(savedRates.get("UAH").getRate()));
+        assertEquals(1, meterRegistry.get("exchange.logging.flush").timer().count());
+    }
+
+    @Test
+    public void testQueuedCurrencyRatesPersistedOnClose() {
+        for (long timestamp = 20000L; timestamp < 20010L; timestamp++) {
+            exchangeLoggingService.logCurrencyRate(new ExchangeRates(timestamp, "USD",
+                    Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.93))));
+        }
+
+        exchangeLoggingService.close();
+
+        assertEquals(10, currencyRateRepository.findAll().stream()
+                .filter(currencyRate -> currencyRate.getTimestamp() >= 20000L && currencyRate.getTimestamp() < 20010L)
+                .count());
+        assertEquals(0, meterRegistry.get("exchange.logging.dropped").counter().count());
+        assertEquals(0, meterRegistry.get("exchange.logging.queue.size").gauge().value());
+    }
+
+    @Test
+    public void testFindLatestExchangeRatesAndCurrencies() throws InterruptedException {
+        exchangeLoggingService.logCurrencyRate(new ExchangeRates(90000L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.93))));
+        assertTrue(exchangeLoggingService.flush(10000));
+        exchangeLoggingService.logCurrencies(Set.of("USD", "EUR"));
+        exchangeLoggingService.logCurrencies(Set.of("EUR"));
+
+        IExchangeRates latest = exchangeLoggingService.findLatestExchangeRates().orElseThrow();
+        assertEquals(90000L, latest.timestamp());
+        assertEquals("USD", latest.baseCurrency());
+        assertEquals(0, BigDecimal.valueOf(0.93).compareTo(latest.rates().get("EUR")));
+        assertEquals(Set.of("USD", "EUR"), exchangeLoggingService.findCurrencies());
+    }
+
+    @Test
+    public void testLogCurrencyRateColumnar() throws InterruptedException {
+        columnarLoggingService.logCurrencyRate(new ExchangeRates(30000L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.93))));
+        columnarLoggingService.logCurrencyRate(new ExchangeRates(30001L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "UAH", BigDecimal.valueOf(41.15))));
+        assertTrue(columnarLoggingService.flush(10000));
+
+        IExchangeRates first = rateSnapshotStore.findByTimestamp(30000L).orElseThrow();
+        assertEquals("USD", first.baseCurrency());
+        assertEquals(Map.of("USD", new BigDecimal("1.0000000000"), "EUR", new BigDecimal("0.9300000000")),
+                first.rates());
+        assertEquals(Map.of("USD", new BigDecimal("1.0000000000"), "UAH", new BigDecimal("41.1500000000")),
+                rateSnapshotStore.findByTimestamp(30001L).orElseThrow().rates());
+    }
+
+    @Test
+    @Transactional
+    public void testSaveRateSnapshotsReplacesStoredTimestamp() {
+        rateSnapshotStore.saveAll(List.of(new ExchangeRates(40000L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.93)))));
+        rateSnapshotStore.saveAll(List.of(new ExchangeRates(40000L, "USD",
+                        Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.94))),
+                new ExchangeRates(40001L, "USD",
+                        Map.of("USD", BigDecimal.valueOf(1), "EUR", BigDecimal.valueOf(0.95)))));
+
+        assertEquals(0, BigDecimal.valueOf(0.94).compareTo(
+                rateSnapshotStore.findByTimestamp(40000L).orElseThrow().rates().get("EUR")));
+        assertEquals(0, BigDecimal.valueOf(0.95).compareTo(
+                rateSnapshotStore.findByTimestamp(40001L).orElseThrow().rates().get("EUR")));
     }
 }
@@ -0,0 +1,91 @@
+package com.local.exchange_service.db;
+
+import com.local.exchange_service.db.entities.CurrencyRate;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+public class HistoryRetentionServiceTest {
+
+    private static final long HOUR = 3600;
+    private static final long DAY = 24 * HOUR;
+
+    private static final long SEPTEMBER_30 = LocalDate.of(2023, 9, 30).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    private static final long OCTOBER_2 = LocalDate.of(2023, 10, 2).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    private static final long NOVEMBER_15 = LocalDate.of(2023, 11, 15).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+    @Autowired
+    private CurrencyRateRepository currencyRateRepository;
+
+    @Autowired
+    private RateSnapshotRepository rateSnapshotRepository;
+
+    @Autowired
+    private CurrencyDictionaryRepository currencyDictionaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @Transactional
+    public void testExpireAndDownsample() {
+        List<Long> timestamps = List.of(SEPTEMBER_30 + HOUR, OCTOBER_2 + HOUR,
+                NOVEMBER_15 + HOUR, NOVEMBER_15 + 2 * HOUR, NOVEMBER_15 + 2 * HOUR,
+                NOVEMBER_15 + DAY + HOUR, NOVEMBER_15 + DAY + 2 * HOUR,
+                NOVEMBER_15 + 5 * DAY + HOUR, NOVEMBER_15 + 5 * DAY + 2 * HOUR);
+        List<IExchangeRates> exchangeRatesList = timestamps.stream()
+                .map(timestamp -> (IExchangeRates) new ExchangeRates(timestamp, "USD",
+                        Map.of("USD", BigDecimal.ONE, "EUR", BigDecimal.valueOf(0.93))))
+                .toList();
+        currencyRateRepository.saveAllAndFlush(exchangeRatesList.stream().map(CurrencyRate::new).toList());
+        new RateSnapshotStore(rateSnapshotRepository, currencyDictionaryRepository).saveAll(exchangeRatesList);
+        rateSnapshotRepository.flush();
+        long lastId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM currency_rate WHERE timestamp = ?",
+                Long.class, NOVEMBER_15 + 2 * HOUR);
+
+        // history before October is expired, and snapshots before November 18 are reduced to one per day
+        HistoryRetentionService historyRetentionService = new HistoryRetentionService(jdbcTemplate,
+                transactionManager, meterRegistry, Clock.systemUTC(), 30, 2, 3, 2, 1000);
+        historyRetentionService.run(Instant.ofEpochSecond(NOVEMBER_15 + 5 * DAY + 10 * HOUR));
+
+        List<Long> remaining = List.of(OCTOBER_2 + HOUR, NOVEMBER_15 + 2 * HOUR, NOVEMBER_15 + DAY + 2 * HOUR,
+                NOVEMBER_15 + 5 * DAY + HOUR, NOVEMBER_15 + 5 * DAY + 2 * HOUR);
+        long until = NOVEMBER_15 + 6 * DAY;
+        assertEquals(remaining, jdbcTemplate.queryForList("SELECT timestamp FROM currency_rate " +
+                "WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp", Long.class, SEPTEMBER_30, until));
+        assertEquals(remaining, jdbcTemplate.queryForList("SELECT timestamp FROM rate_snapshot " +
+                "WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp", Long.class, SEPTEMBER_30, until));
+        assertEquals(List.of(lastId), jdbcTemplate.queryForList("SELECT id FROM currency_rate WHERE timestamp = ?",
+                Long.class, NOVEMBER_15 + 2 * HOUR));
+        long exchangeRates = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM exchange_rate " +
+                "WHERE timestamp >= ? AND timestamp < ?", Long.class, SEPTEMBER_30, until);
+        assertEquals(2L * remaining.size(), exchangeRates);
+        assertEquals(5, meterRegistry.get("exchange.retention.snapshots.deleted").tag("reason", "downsampled")
+                .counter().count());
+    }
+}
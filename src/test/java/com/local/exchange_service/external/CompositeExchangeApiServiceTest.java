@@ -0,0 +1,268 @@
+package com.local.exchange_service.external;
+
+import com.local.exchange_service.external.frankfurter.FrankfurterApiService;
+import com.local.exchange_service.external.frankfurter.FrankfurterProperties;
+import com.local.exchange_service.external.openexchangerates.OpenExchangeRatesApiService;
+import com.local.exchange_service.external.openexchangerates.OpenExchangeRatesProperties;
+import com.local.exchange_service.interfaces.IExchangeApiService;
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.local.exchange_service.model.ExchangeRates;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompositeExchangeApiServiceTest {
+
+    private static final String OPEN_EXCHANGE_RATES_RESPONSE = """
+            {"timestamp": 1730916000, "base": "USD", "rates": {"USD": 1, "EUR": 0.93, "GBP": 0.78, "UAH": 41.5,
+            "BTC": 0.0000131}}
+            """;
+
+    // the European Central Bank publishes neither UAH nor BTC
+    private static final String FRANKFURTER_RESPONSE = """
+            {"amount": 1.0, "base": "USD", "date": "2024-11-06", "rates": {"EUR": 0.95, "GBP": 0.80}}
+            """;
+
+    private static final IExchangeRates PUBLISHED = new ExchangeRates(1730851200L, "USD",
+            Map.of("USD", BigDecimal.ONE, "EUR", new BigDecimal("0.94"), "UAH", new BigDecimal("41.4")));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HttpServer openExchangeRatesServer;
+
+    private HttpServer frankfurterServer;
+
+    private Map<String, IExchangeApiService> exchangeApis;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        openExchangeRatesServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        openExchangeRatesServer.start();
+        frankfurterServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        frankfurterServer.start();
+
+        OpenExchangeRatesProperties openExchangeRatesProperties = new OpenExchangeRatesProperties();
+        openExchangeRatesProperties.setBaseUrl("http://localhost:" + openExchangeRatesServer.getAddress().getPort()
+                + "/");
+        openExchangeRatesProperties.setAppId("testAppId");
+        openExchangeRatesProperties.setBaseCurrency("USD");
+        openExchangeRatesProperties.setClient(OpenExchangeRatesApiService.ClientMode.HTTP_CLIENT);
+        FrankfurterProperties frankfurterProperties = new FrankfurterProperties();
+        frankfurterProperties.setBaseUrl("http://localhost:" + frankfurterServer.getAddress().getPort() + "/");
+        frankfurterProperties.setBaseCurrency("USD");
+
+        exchangeApis = new LinkedHashMap<>();
+        exchangeApis.put("openexchangerates", new OpenExchangeRatesApiService(new RestTemplate(),
+                openExchangeRatesProperties, meterRegistry));
+        exchangeApis.put("frankfurter", new FrankfurterApiService(new RestTemplate(), frankfurterProperties));
+        frankfurterServer.createContext("/latest", respond(FRANKFURTER_RESPONSE, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        openExchangeRatesServer.stop(0);
+        frankfurterServer.stop(0);
+    }
+
+    @Test
+    void testGetExchangeRatesFromPreferredProvider() {
+        openExchangeRatesServer.createContext("/api/latest.json", respond(OPEN_EXCHANGE_RATES_RESPONSE, 0));
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 2000);
+
+        IExchangeRates exchangeRates = service.getExchangeRates();
+
+        assertEquals(1730916000L, exchangeRates.timestamp());
+        assertEquals(0.0, meterRegistry.counter("exchange.provider.hedged").count());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesFailover() {
+        openExchangeRatesServer.createContext("/api/latest.json", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 2000);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1730851200L, service.getExchangeRates().timestamp());
+        }
+
+        // the failing provider is called first only once, then it is ordered after the working one
+        assertEquals(1.0, meterRegistry.counter("exchange.provider.errors", "provider", "openexchangerates")
+                .count());
+        assertEquals("frankfurter", service.orderedProviders().get(0).name());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesHedged() {
+        openExchangeRatesServer.createContext("/api/latest.json", respond(OPEN_EXCHANGE_RATES_RESPONSE, 3000));
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 100);
+
+        long start = System.nanoTime();
+        IExchangeRates exchangeRates = service.getExchangeRates();
+
+        assertEquals(1730851200L, exchangeRates.timestamp());
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+        assertEquals(1.0, meterRegistry.counter("exchange.provider.hedged").count());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesHedgedAwaitsCompleteResponse() {
+        openExchangeRatesServer.createContext("/api/latest.json", respond(OPEN_EXCHANGE_RATES_RESPONSE, 500));
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 100);
+
+        IExchangeRates exchangeRates = service.getExchangeRates(PUBLISHED);
+
+        // the faster response misses the tracked UAH, so the slower complete one is returned
+        assertEquals(1730916000L, exchangeRates.timestamp());
+        assertTrue(exchangeRates.rates().containsKey("UAH"));
+        assertEquals(1.0, meterRegistry.counter("exchange.provider.hedged").count());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesIncompleteFallback() {
+        openExchangeRatesServer.createContext("/api/latest.json", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 2000);
+
+        IExchangeRates exchangeRates = service.getExchangeRates(PUBLISHED);
+
+        // without a complete response the incomplete one is returned, to be rejected by the caller
+        assertEquals(1730851200L, exchangeRates.timestamp());
+        assertFalse(CompositeExchangeApiService.isComplete(exchangeRates, PUBLISHED));
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesOlderThanPublished() {
+        openExchangeRatesServer.createContext("/api/latest.json", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.HEDGED, 2000);
+        IExchangeRates published = new ExchangeRates(1730916000L, "USD", Map.of("USD", BigDecimal.ONE));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.getExchangeRates(published));
+
+        assertTrue(e.getMessage().contains("older than the published exchange rates"));
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesHangingProviderMovesBehind() {
+        exchangeApis.put("hanging", CompositeExchangeApiServiceTest::hang);
+        CompositeExchangeApiService service = new CompositeExchangeApiService(exchangeApis, meterRegistry,
+                List.of("hanging", "frankfurter"), CompositeExchangeApiService.ProviderMode.HEDGED, 100, 5000, false);
+
+        assertEquals(1730851200L, service.getExchangeRates().timestamp());
+
+        // the hedged call never answers, so it is an error once cancelled
+        assertEquals(1.0, meterRegistry.counter("exchange.provider.errors", "provider", "hanging").count());
+        assertEquals(0.0, meterRegistry.counter("exchange.provider.errors", "provider", "frankfurter").count());
+        assertEquals("frankfurter", service.orderedProviders().get(0).name());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesMedianWithHangingProvider() {
+        exchangeApis.put("hanging", CompositeExchangeApiServiceTest::hang);
+        CompositeExchangeApiService service = new CompositeExchangeApiService(exchangeApis, meterRegistry,
+                List.of("hanging", "frankfurter"), CompositeExchangeApiService.ProviderMode.MEDIAN, 100, 500, false);
+
+        assertEquals(1730851200L, service.getExchangeRates().timestamp());
+
+        assertEquals(1.0, meterRegistry.counter("exchange.provider.errors", "provider", "hanging").count());
+        assertEquals("frankfurter", service.orderedProviders().get(0).name());
+        service.shutdown();
+    }
+
+    @Test
+    void testGetExchangeRatesMedian() {
+        openExchangeRatesServer.createContext("/api/latest.json", respond(OPEN_EXCHANGE_RATES_RESPONSE, 0));
+        CompositeExchangeApiService service = service(CompositeExchangeApiService.ProviderMode.MEDIAN, 2000);
+
+        IExchangeRates exchangeRates = service.getExchangeRates();
+
+        assertEquals(1730916000L, exchangeRates.timestamp());
+        assertEquals("USD", exchangeRates.baseCurrency());
+        assertEquals(0, new BigDecimal("0.94").compareTo(exchangeRates.rates().get("EUR")));
+        assertEquals(0, new BigDecimal("0.79").compareTo(exchangeRates.rates().get("GBP")));
+        assertEquals(0, new BigDecimal("41.5").compareTo(exchangeRates.rates().get("UAH")));
+        assertEquals(0, new BigDecimal("0.0000131").compareTo(exchangeRates.rates().get("BTC")));
+        service.shutdown();
+    }
+
+    @Test
+    void testMergeRebasesToFirstBaseCurrency() {
+        IExchangeRates merged = CompositeExchangeApiService.merge(List.of(
+                new ExchangeRates(100L, "USD", Map.of("USD", BigDecimal.ONE, "EUR", new BigDecimal("0.90"))),
+                new ExchangeRates(200L, "EUR", Map.of("EUR", BigDecimal.ONE, "USD", new BigDecimal("1.25"))),
+                new ExchangeRates(150L, "USD", Map.of("USD", BigDecimal.ONE, "EUR", new BigDecimal("0.70")))));
+
+        assertEquals(200L, merged.timestamp());
+        assertEquals("USD", merged.baseCurrency());
+        assertEquals(0, new BigDecimal("0.8").compareTo(merged.rates().get("EUR")));
+        assertEquals(0, BigDecimal.ONE.compareTo(merged.rates().get("USD")));
+    }
+
+    @Test
+    void testProviderNotFound() {
+        assertThrows(IllegalArgumentException.class, () -> new CompositeExchangeApiService(exchangeApis,
+                meterRegistry, List.of("unknown"), CompositeExchangeApiService.ProviderMode.HEDGED, 2000, 5000, false));
+    }
+
+    private CompositeExchangeApiService service(final CompositeExchangeApiService.ProviderMode mode,
+                                                final long hedgeDelay) {
+        return new CompositeExchangeApiService(exchangeApis, meterRegistry,
+                List.of("openexchangerates", "frankfurter"), mode, hedgeDelay, 5000, false);
+    }
+
+    /**
+     * A provider that never answers until its call is cancelled.
+     */
+    private static IExchangeRates hang() {
+        try {
+            Thread.sleep(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new RuntimeException("Exchange rates call is cancelled");
+    }
+
+    private static HttpHandler respond(final String response, final long delay) {
+        return exchange -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        };
+    }
+}
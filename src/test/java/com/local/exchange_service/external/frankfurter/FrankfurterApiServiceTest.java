@@ -0,0 +1,78 @@
+package com.local.exchange_service.external.frankfurter;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FrankfurterApiServiceTest {
+
+    private HttpServer server;
+
+    private FrankfurterApiService frankfurterApiService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+
+        FrankfurterProperties properties = new FrankfurterProperties();
+        properties.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/");
+        properties.setBaseCurrency("USD");
+        frankfurterApiService = new FrankfurterApiService(new RestTemplate(), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGetExchangeRates() {
+        AtomicReference<String> query = new AtomicReference<>();
+        server.createContext("/latest", exchange -> {
+            query.set(exchange.getRequestURI().getQuery());
+            byte[] bytes = """
+                    {"amount": 1.0, "base": "USD", "date": "2024-11-06", "rates": {"EUR": 0.93, "UAH": 41.5}}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        });
+
+        IExchangeRates exchangeRates = frankfurterApiService.getExchangeRates();
+
+        assertEquals("from=USD", query.get());
+        assertEquals(1730851200L, exchangeRates.timestamp());
+        assertEquals("USD", exchangeRates.baseCurrency());
+        assertEquals(Map.of("USD", BigDecimal.ONE,
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.5)),
+                exchangeRates.rates());
+    }
+
+    @Test
+    void testGetExchangeRatesServerError() {
+        server.createContext("/latest", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+
+        assertThrows(RuntimeException.class, () -> frankfurterApiService.getExchangeRates());
+    }
+}
@@ -1,6 +1,8 @@
 package com.local.exchange_service.external.openexchangerates;
 
 import com.local.exchange_service.interfaces.IExchangeRates;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +10,8 @@ import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
@@ -16,9 +20,12 @@ import java.math.BigDecimal;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.headerDoesNotExist;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 
@@ -34,6 +41,9 @@ public class OpenExchangeRatesApiServiceTest {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         server = MockRestServiceServer.createServer(restTemplate);
@@ -74,6 +84,30 @@ public class OpenExchangeRatesApiServiceTest {
         assertThrows(RuntimeException.class, () -> openExchangeRatesApiService.getExchangeRates());
     }
 
+    @Test
+    void testGetExchangeRatesNotModified() {
+        String url = "https://test.openexchangerates.org/api/latest.json?app_id=testAppId&base=USD";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"rates-1\"");
+        headers.set(HttpHeaders.LAST_MODIFIED, "Wed, 06 Nov 2024 18:00:00 GMT");
+
+        this.server.expect(requestTo(url))
+                .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+                .andRespond(withSuccess("""
+                        {"timestamp": 1730916000, "base": "USD", "rates": {"USD": 1, "EUR": 0.93}}
+                        """, MediaType.APPLICATION_JSON).headers(headers));
+        this.server.expect(requestTo(url))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"rates-1\""))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 06 Nov 2024 18:00:00 GMT"))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        IExchangeRates exchangeRates = openExchangeRatesApiService.getExchangeRates();
+
+        assertSame(exchangeRates, openExchangeRatesApiService.getExchangeRates());
+        assertEquals(1.0, meterRegistry.counter("exchange.upstream.not.modified").count());
+        server.verify();
+    }
+
     @TestConfiguration
     static class Config {
         @Bean
@@ -84,5 +118,10 @@ public class OpenExchangeRatesApiServiceTest {
             when(properties.getBaseCurrency()).thenReturn("USD");
             return properties;
         }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
     }
 }
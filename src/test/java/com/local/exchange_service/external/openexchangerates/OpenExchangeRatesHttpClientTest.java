@@ -0,0 +1,189 @@
+package com.local.exchange_service.external.openexchangerates;
+
+import com.local.exchange_service.interfaces.IExchangeRates;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OpenExchangeRatesHttpClientTest {
+
+    private static final String JSON_RESPONSE = """
+            {
+                "disclaimer": "Usage subject to terms",
+                "license": {"url": "https://openexchangerates.org/license"},
+                "timestamp": 1730916000,
+                "base": "USD",
+                "rates": {
+                    "USD": 1,
+                    "EUR": 0.93,
+                    "UAH": 41.5
+                }
+            }
+            """;
+
+    private HttpServer server;
+
+    private OpenExchangeRatesApiService openExchangeRatesApiService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+
+        OpenExchangeRatesProperties properties = new OpenExchangeRatesProperties();
+        properties.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/");
+        properties.setAppId("testAppId");
+        properties.setBaseCurrency("USD");
+        properties.setClient(OpenExchangeRatesApiService.ClientMode.HTTP_CLIENT);
+        properties.setReadTimeout(500);
+        openExchangeRatesApiService = new OpenExchangeRatesApiService(new RestTemplate(), properties,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        openExchangeRatesApiService.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void testGetExchangeRatesGzip() {
+        AtomicReference<String> query = new AtomicReference<>();
+        AtomicReference<String> acceptEncoding = new AtomicReference<>();
+        server.createContext("/api/latest.json", exchange -> {
+            query.set(exchange.getRequestURI().getQuery());
+            acceptEncoding.set(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+
+            var bytes = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(JSON_RESPONSE.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                bytes.writeTo(body);
+            }
+        });
+
+        IExchangeRates exchangeRates = openExchangeRatesApiService.getExchangeRates();
+
+        assertEquals("app_id=testAppId&base=USD", query.get());
+        assertEquals("gzip", acceptEncoding.get());
+        assertEquals(1730916000L, exchangeRates.timestamp());
+        assertEquals("USD", exchangeRates.baseCurrency());
+        assertEquals(Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.5)),
+                exchangeRates.rates());
+    }
+
+    @Test
+    void testGetExchangeRatesNotModifiedWithContentEncoding() {
+        server.createContext("/api/latest.json", exchange -> {
+            // the representation headers are repeated on the empty not modified response
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            var bytes = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(JSON_RESPONSE.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                bytes.writeTo(body);
+            }
+        });
+
+        IExchangeRates exchangeRates = openExchangeRatesApiService.getExchangeRates();
+
+        assertSame(exchangeRates, openExchangeRatesApiService.getExchangeRates());
+    }
+
+    @Test
+    void testGetExchangeRatesServerError() {
+        server.createContext("/api/latest.json", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> openExchangeRatesApiService.getExchangeRates());
+        assertEquals("Unable to get exchange rates from localhost response code: 500", e.getMessage());
+    }
+
+    @Test
+    void testGetExchangeRatesTimeout() {
+        server.createContext("/api/latest.json", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+
+        assertThrows(RuntimeException.class, () -> openExchangeRatesApiService.getExchangeRates());
+    }
+
+    @Test
+    void testGetExchangeRatesBodyTimeout() {
+        server.createContext("/api/latest.json", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            body.write("{\"timestamp\": 1730916000, \"rates\": {".getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+
+        long start = System.nanoTime();
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> openExchangeRatesApiService.getExchangeRates());
+
+        assertEquals("Exchange rates response is not read within 500 ms", e.getMessage());
+        assertTrue(System.nanoTime() - start < 3_000_000_000L);
+    }
+
+    @Test
+    void testGetExchangeRatesInvalidResponse() {
+        server.createContext("/api/latest.json", exchange -> {
+            byte[] bytes = "{\"timestamp\": 1730916000}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(bytes);
+            }
+        });
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> openExchangeRatesApiService.getExchangeRates());
+        assertEquals("java.io.IOException: Exchange rates response is invalid", e.getMessage());
+    }
+}
@@ -0,0 +1,70 @@
+package com.local.exchange_service.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactExchangeRatesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testDictionary() {
+        CompactExchangeRates compactRates = CompactExchangeRates.of(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", new BigDecimal("0.930"),
+                        "UAH", BigDecimal.valueOf(41.15))));
+
+        assertEquals(12345L, compactRates.timestamp());
+        assertEquals("USD", compactRates.baseCurrency());
+        assertEquals(3, compactRates.size());
+        assertEquals("EUR", compactRates.currency(compactRates.indexOf("EUR")));
+        assertEquals(-1, compactRates.indexOf("GBP"));
+        assertEquals(Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", new BigDecimal("0.93"),
+                        "UAH", BigDecimal.valueOf(41.15)),
+                compactRates.rates());
+        assertThrows(IllegalArgumentException.class, () -> compactRates.indicesOf(List.of("USD", "GBP")));
+    }
+
+    @Test
+    void testCrossRate() {
+        CompactExchangeRates compactRates = CompactExchangeRates.of(new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "BTC", new BigDecimal("0.000011834823"))));
+        int usd = compactRates.indexOf("USD");
+        int eur = compactRates.indexOf("EUR");
+        int btc = compactRates.indexOf("BTC");
+
+        assertEquals(new BigDecimal("1.08"), compactRates.crossRate(usd, eur, 2));
+        assertEquals(new BigDecimal("1.0752688172"), compactRates.crossRate(usd, eur, 10));
+        assertEquals(BigDecimal.ONE, compactRates.crossRate(eur, eur, 10));
+        assertEquals(BigDecimal.ZERO, compactRates.crossRate(btc, usd, 2));
+        assertEquals(new BigDecimal("84496.4052271842"), compactRates.crossRate(usd, btc, 10));
+    }
+
+    @Test
+    void testRowSerialization() throws Exception {
+        ExchangeRates exchangeRates = new ExchangeRates(12345L, "USD",
+                Map.of("USD", BigDecimal.valueOf(1),
+                        "EUR", BigDecimal.valueOf(0.93),
+                        "UAH", BigDecimal.valueOf(41.15)));
+        CompactExchangeRates compactRates = CompactExchangeRates.of(exchangeRates);
+        int eur = compactRates.indexOf("EUR");
+        CompactExchangeRates.Row row = compactRates.row(eur, compactRates.indicesOf(Set.of("USD", "EUR")), 2);
+
+        ExchangeRates expected = new ExchangeRates(12345L, "EUR",
+                Map.of("USD", BigDecimal.valueOf(1.08),
+                        "EUR", BigDecimal.valueOf(1)));
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected)),
+                objectMapper.readTree(objectMapper.writeValueAsString(row)));
+        assertEquals(expected.rates(), row.rates());
+    }
+}